@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonConfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Services running and purging the services submitted asynchronously through the REST API.
+ */
+public final class AsyncServiceJobServices {
+
+    private static final String MODULE = AsyncServiceJobServices.class.getName();
+    private static final ObjectMapper MAPPER = JacksonConfig.configure(new ObjectMapper());
+
+    private AsyncServiceJobServices() { }
+
+    /**
+     * Runs the submitted service and stores its result, or its error, in RestServiceJob.
+     * The service result is never returned as an error so the job is not retried.
+     */
+    public static Map<String, Object> runRestAsyncJob(DispatchContext dctx, Map<String, Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        String jobId = (String) context.get("jobId");
+        String serviceName = (String) context.get("serviceName");
+        Map<String, Object> serviceContext = new HashMap<>();
+        if (context.get("serviceContext") != null) {
+            serviceContext.putAll(UtilGenerics.<String, Object>checkMap(context.get("serviceContext")));
+        }
+        serviceContext.put("userLogin", context.get("userLogin"));
+
+        String resultData = null;
+        String errorMessage = null;
+        try {
+            ModelService service = dctx.getModelService(serviceName);
+            Map<String, Object> result = dispatcher.runSync(serviceName, serviceContext);
+            if (ServiceUtil.isSuccess(result)) {
+                resultData = MAPPER.writeValueAsString(ServiceRequestProcessor.getResponseData(service, result));
+            } else {
+                errorMessage = ServiceUtil.getErrorMessage(result);
+            }
+        } catch (GenericServiceException | IOException | RuntimeException e) {
+            Debug.logError(e, "Asynchronous REST invocation of " + serviceName + " in job " + jobId + " failed", MODULE);
+            errorMessage = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        try {
+            GenericValue restJob = EntityQuery.use(delegator).from("RestServiceJob").where("jobId", jobId).queryOne();
+            if (restJob == null) {
+                return ServiceUtil.returnFailure("RestServiceJob " + jobId + " not found");
+            }
+            restJob.set("resultData", resultData);
+            restJob.set("errorMessage", errorMessage);
+            restJob.set("finishedDate", UtilDateTime.nowTimestamp());
+            restJob.store();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Unable to store the result of job " + jobId, MODULE);
+            return ServiceUtil.returnFailure(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Removes the RestServiceJob records finished before the retention window.
+     */
+    public static Map<String, Object> purgeRestServiceJobs(DispatchContext dctx, Map<String, Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        int retentionHours = UtilProperties.getPropertyAsInteger("rest.properties", "rest.async.retentionHours", 24);
+        Timestamp purgeBefore = new Timestamp(System.currentTimeMillis() - retentionHours * 3600000L);
+        try {
+            int removed = delegator.removeByCondition("RestServiceJob",
+                    EntityCondition.makeCondition("finishedDate", EntityOperator.LESS_THAN, purgeBefore));
+            if (removed > 0) {
+                Debug.logInfo("Purged " + removed + " asynchronous REST service results finished before " + purgeBefore, MODULE);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    static Object readResultData(String resultData) throws IOException {
+        return resultData != null ? MAPPER.readValue(resultData, Object.class) : null;
+    }
+}
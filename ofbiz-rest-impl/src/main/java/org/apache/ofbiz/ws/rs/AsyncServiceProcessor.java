@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.ofbiz.base.config.GenericConfigException;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.serialize.SerializeException;
+import org.apache.ofbiz.entity.serialize.XmlSerializer;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.config.ServiceConfigUtil;
+import org.apache.ofbiz.ws.rs.response.Success;
+import org.apache.ofbiz.ws.rs.util.RestApiUtil;
+
+/**
+ * Submits services to the OFBiz job manager on behalf of REST clients and reports on the submitted jobs.
+ * <p>
+ * A submitted service is run by the runRestAsyncJob service from a JobSandbox record, which stores the
+ * result in the RestServiceJob entity. Jobs are only visible to the user who submitted them.
+ */
+public class AsyncServiceProcessor {
+
+    private static final String MODULE = AsyncServiceProcessor.class.getName();
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_FINISHED = "FINISHED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private final LocalDispatcher dispatcher;
+    private final GenericValue userLogin;
+    private final UriBuilder jobsUriBuilder;
+
+    /**
+     * @param dispatcher
+     * @param userLogin the user submitting or looking up the jobs
+     * @param jobsUriBuilder builder of the URI of the jobs collection, the job id is appended to it
+     */
+    public AsyncServiceProcessor(LocalDispatcher dispatcher, GenericValue userLogin, UriBuilder jobsUriBuilder) {
+        this.dispatcher = dispatcher;
+        this.userLogin = userLogin;
+        this.jobsUriBuilder = jobsUriBuilder;
+    }
+
+    /**
+     * Validates the IN parameters of a service and schedules it to run as soon as possible.
+     * @return a 202 Accepted response pointing to the job resource
+     */
+    public Response submit(String serviceName, String httpVerb, Map<String, Object> requestMap) throws GenericServiceException {
+        DispatchContext dispatchContext = dispatcher.getDispatchContext();
+        ModelService service = null;
+        try {
+            service = dispatchContext.getModelService(serviceName);
+        } catch (GenericServiceException gse) {
+            throw new NotFoundException(gse.getMessage());
+        }
+        if (httpVerb != null && UtilValidate.isNotEmpty(service.getAction()) && !service.getAction().equalsIgnoreCase(httpVerb)) {
+            throw new MethodNotAllowedException("HTTP " + httpVerb + " is not allowed on this service.");
+        }
+        Map<String, Object> serviceContext = dispatchContext.makeValidContext(serviceName, ModelService.IN_PARAM, requestMap);
+        // the job runs as the submitting user, see JobSandbox.runAsUser
+        serviceContext.remove("userLogin");
+
+        Delegator delegator = dispatcher.getDelegator();
+        String jobId;
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            GenericValue runtimeData = delegator.createSetNextSeqId(delegator.makeValue("RuntimeData"));
+            Map<String, Object> jobFields = UtilMisc.toMap("jobName", "REST async " + serviceName, "runTime", UtilDateTime.nowTimestamp(),
+                    "serviceName", "runRestAsyncJob", "statusId", "SERVICE_PENDING", "runtimeDataId", runtimeData.get("runtimeDataId"),
+                    "runAsUser", userLogin.get("userLoginId"), "maxRetry", 0L);
+            jobFields.put("poolId", ServiceConfigUtil.getServiceEngine().getThreadPool().getSendToPool());
+            jobFields.put("loaderName", delegator.getDelegatorName());
+            GenericValue jobSandbox = delegator.createSetNextSeqId(delegator.makeValue("JobSandbox", jobFields));
+            jobId = jobSandbox.getString("jobId");
+
+            Map<String, Object> jobContext = new HashMap<>();
+            jobContext.put("jobId", jobId);
+            jobContext.put("serviceName", serviceName);
+            jobContext.put("serviceContext", serviceContext);
+            runtimeData.set("runtimeInfo", XmlSerializer.serialize(jobContext));
+            runtimeData.store();
+
+            delegator.create("RestServiceJob", UtilMisc.toMap("jobId", jobId, "serviceName", serviceName,
+                    "userLoginId", userLogin.get("userLoginId"), "cancelled", "N"));
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException | GenericConfigException | SerializeException | IOException e) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "Unable to schedule the asynchronous invocation of " + serviceName, e);
+            } catch (GenericEntityException e2) {
+                Debug.logError(e2, MODULE);
+            }
+            Debug.logError(e, "Unable to schedule the asynchronous invocation of " + serviceName, MODULE);
+            throw new GenericServiceException(e.getMessage(), e);
+        }
+
+        URI jobUri = jobsUriBuilder.clone().path(jobId).build();
+        Success success = new Success(Response.Status.ACCEPTED.getStatusCode(), Response.Status.ACCEPTED.getReasonPhrase(),
+                "Service " + serviceName + " submitted as job " + jobId, makeJobData(jobId, serviceName, STATUS_PENDING));
+        return Response.status(Response.Status.ACCEPTED).location(jobUri).entity(success).build();
+    }
+
+    /**
+     * @return the status of a job submitted by the current user
+     */
+    public Response getStatus(String jobId) throws GenericEntityException {
+        GenericValue restJob = getRestJob(jobId);
+        Map<String, Object> jobData = makeJobData(jobId, restJob.getString("serviceName"), getJobStatus(restJob));
+        jobData.put("finishedDate", restJob.get("finishedDate"));
+        return RestApiUtil.success(null, jobData);
+    }
+
+    /**
+     * @return the result of a finished job, or its status with 202 Accepted while it is not finished yet
+     */
+    public Response getResult(String jobId) throws GenericEntityException {
+        GenericValue restJob = getRestJob(jobId);
+        String status = getJobStatus(restJob);
+        if (STATUS_PENDING.equals(status) || STATUS_RUNNING.equals(status)) {
+            Success success = new Success(Response.Status.ACCEPTED.getStatusCode(), Response.Status.ACCEPTED.getReasonPhrase(),
+                    "Job " + jobId + " is not finished yet", makeJobData(jobId, restJob.getString("serviceName"), status));
+            return Response.status(Response.Status.ACCEPTED).entity(success).build();
+        }
+        if (STATUS_CANCELLED.equals(status)) {
+            return RestApiUtil.error(Response.Status.GONE.getStatusCode(), Response.Status.GONE.getReasonPhrase(),
+                    "Job " + jobId + " was cancelled.");
+        }
+        if (STATUS_FAILED.equals(status)) {
+            String errorMessage = restJob.getString("errorMessage");
+            return RestApiUtil.error(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase(),
+                    UtilValidate.isNotEmpty(errorMessage) ? errorMessage : "Job " + jobId + " failed.");
+        }
+        Object data;
+        try {
+            data = AsyncServiceJobServices.readResultData(restJob.getString("resultData"));
+        } catch (IOException e) {
+            Debug.logError(e, "Unable to read the result of job " + jobId, MODULE);
+            throw new WebApplicationException(e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        return RestApiUtil.success(null, data);
+    }
+
+    /**
+     * Cancels a job that did not start yet.
+     */
+    public Response cancel(String jobId) throws GenericEntityException {
+        GenericValue restJob = getRestJob(jobId);
+        String status = getJobStatus(restJob);
+        if (!STATUS_PENDING.equals(status)) {
+            throw new ClientErrorException("Job " + jobId + " can not be cancelled, its status is " + status + ".", Response.Status.CONFLICT);
+        }
+        Delegator delegator = dispatcher.getDelegator();
+        // only cancel the job if the job poller did not pick it up in the meantime
+        int updated = delegator.storeByCondition("JobSandbox",
+                UtilMisc.toMap("statusId", "SERVICE_CANCELLED", "cancelDateTime", UtilDateTime.nowTimestamp()),
+                EntityCondition.makeCondition(UtilMisc.toMap("jobId", jobId, "statusId", "SERVICE_PENDING")));
+        if (updated == 0) {
+            throw new ClientErrorException("Job " + jobId + " can not be cancelled, it already started.", Response.Status.CONFLICT);
+        }
+        restJob.set("cancelled", "Y");
+        restJob.set("finishedDate", UtilDateTime.nowTimestamp());
+        restJob.store();
+        return RestApiUtil.success("Job " + jobId + " cancelled", makeJobData(jobId, restJob.getString("serviceName"), STATUS_CANCELLED));
+    }
+
+    private GenericValue getRestJob(String jobId) throws GenericEntityException {
+        GenericValue restJob = EntityQuery.use(dispatcher.getDelegator()).from("RestServiceJob").where("jobId", jobId).queryOne();
+        if (restJob == null || !restJob.getString("userLoginId").equals(userLogin.getString("userLoginId"))) {
+            throw new NotFoundException("Job " + jobId + " not found.");
+        }
+        return restJob;
+    }
+
+    private String getJobStatus(GenericValue restJob) throws GenericEntityException {
+        if ("Y".equals(restJob.getString("cancelled"))) {
+            return STATUS_CANCELLED;
+        }
+        if (restJob.get("finishedDate") != null) {
+            return restJob.get("errorMessage") != null ? STATUS_FAILED : STATUS_FINISHED;
+        }
+        GenericValue jobSandbox = restJob.getRelatedOne("JobSandbox", false);
+        String statusId = jobSandbox != null ? jobSandbox.getString("statusId") : null;
+        if ("SERVICE_PENDING".equals(statusId) || "SERVICE_QUEUED".equals(statusId)) {
+            return STATUS_PENDING;
+        } else if ("SERVICE_RUNNING".equals(statusId)) {
+            return STATUS_RUNNING;
+        } else if ("SERVICE_CANCELLED".equals(statusId)) {
+            return STATUS_CANCELLED;
+        }
+        // finished, failed or crashed without storing its result
+        return STATUS_FAILED;
+    }
+
+    private Map<String, Object> makeJobData(String jobId, String serviceName, String status) {
+        Map<String, Object> links = new LinkedHashMap<>();
+        links.put("self", jobsUriBuilder.clone().path(jobId).build().toString());
+        links.put("result", jobsUriBuilder.clone().path(jobId).path("result").build().toString());
+        Map<String, Object> jobData = new LinkedHashMap<>();
+        jobData.put("jobId", jobId);
+        jobData.put("serviceName", serviceName);
+        jobData.put("status", status);
+        jobData.put("links", links);
+        return jobData;
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.ws.rs.response.Error;
+import org.apache.ofbiz.ws.rs.response.Success;
+import org.apache.ofbiz.ws.rs.util.RestApiUtil;
+
+/**
+ * Runs an ordered list of service invocations through the {@link ServiceRequestProcessor}.
+ * <p>
+ * In the <code>INDEPENDENT</code> transaction mode, the default, every invocation runs in its own transaction
+ * and a failing invocation does not prevent the following ones from running. In the <code>SHARED</code> mode all
+ * invocations join one transaction: the first failure rolls it back and the remaining invocations are skipped.
+ * Services declared with require-new-transaction keep their own transaction in both modes.
+ * <p>
+ * Each invocation gives the <code>httpVerb</code>, GET or POST, it would be called with on its own; an invocation
+ * of a service bound to another HTTP method fails with 405 Method Not Allowed.
+ */
+public class BatchRequestProcessor {
+
+    private static final String MODULE = BatchRequestProcessor.class.getName();
+    private static final int MAX_BATCH_SIZE = UtilProperties.getPropertyAsInteger("rest.properties", "rest.batch.maxSize", 50);
+
+    public static final String TRANSACTION_SHARED = "SHARED";
+    public static final String TRANSACTION_INDEPENDENT = "INDEPENDENT";
+
+    private static final int FAILED_DEPENDENCY = 424;
+
+    /**
+     * @param batchRequest the request body, holding the <code>requests</code> list and the optional <code>transactionMode</code>
+     * @param dispatcher
+     * @param request
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Response process(Map<String, Object> batchRequest, LocalDispatcher dispatcher, HttpServletRequest request) {
+        Object requestsObj = batchRequest.get("requests");
+        if (!(requestsObj instanceof List) || UtilValidate.isEmpty(requestsObj)) {
+            throw new BadRequestException("Missing Parameter: 'requests'");
+        }
+        List<Object> requests = (List<Object>) requestsObj;
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("A batch can not hold more than " + MAX_BATCH_SIZE + " requests, got " + requests.size() + ".");
+        }
+        String transactionMode = UtilValidate.isNotEmpty(batchRequest.get("transactionMode"))
+                ? batchRequest.get("transactionMode").toString().toUpperCase() : TRANSACTION_INDEPENDENT;
+        if (!TRANSACTION_SHARED.equals(transactionMode) && !TRANSACTION_INDEPENDENT.equals(transactionMode)) {
+            throw new BadRequestException("Invalid transactionMode '" + transactionMode + "', expected " + TRANSACTION_SHARED + " or "
+                    + TRANSACTION_INDEPENDENT + ".");
+        }
+        for (Object item : requests) {
+            if (!(item instanceof Map) || UtilValidate.isEmpty(((Map<String, Object>) item).get("serviceName"))) {
+                throw new BadRequestException("Every batch request must be an object with a 'serviceName'.");
+            }
+            Object httpVerb = ((Map<String, Object>) item).get("httpVerb");
+            if (!HttpMethod.GET.equals(httpVerb) && !HttpMethod.POST.equals(httpVerb)) {
+                throw new BadRequestException("Every batch request must have an 'httpVerb', " + HttpMethod.GET + " or " + HttpMethod.POST + ".");
+            }
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(requests.size());
+        boolean committed;
+        if (TRANSACTION_SHARED.equals(transactionMode)) {
+            committed = processShared(requests, dispatcher, request, results);
+        } else {
+            for (Object item : requests) {
+                results.add(processItem(results.size(), (Map<String, Object>) item, dispatcher, request));
+            }
+            committed = true;
+        }
+        Map<String, Object> responseData = new LinkedHashMap<>();
+        responseData.put("transactionMode", transactionMode);
+        responseData.put("committed", committed);
+        responseData.put("results", results);
+        return RestApiUtil.success(null, responseData);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean processShared(List<Object> requests, LocalDispatcher dispatcher, HttpServletRequest request,
+            List<Map<String, Object>> results) {
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+        } catch (GenericTransactionException e) {
+            Debug.logError(e, "Unable to begin the batch transaction", MODULE);
+            throw new WebApplicationException(e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        String failure = null;
+        for (Object item : requests) {
+            Map<String, Object> itemRequest = (Map<String, Object>) item;
+            if (failure != null) {
+                results.add(makeItemResult(results.size(), (String) itemRequest.get("serviceName"),
+                        new Error(FAILED_DEPENDENCY, "Failed Dependency", "Not run, the batch transaction was rolled back: " + failure)));
+                continue;
+            }
+            Map<String, Object> itemResult = processItem(results.size(), itemRequest, dispatcher, request);
+            results.add(itemResult);
+            if (itemResult.containsKey("errorMessage")) {
+                failure = itemResult.get("serviceName") + ": " + itemResult.get("errorMessage");
+            }
+        }
+        try {
+            if (failure == null) {
+                TransactionUtil.commit(beganTransaction);
+                return true;
+            }
+            TransactionUtil.rollback(beganTransaction, "Batch request failed at " + failure, null);
+        } catch (GenericTransactionException e) {
+            Debug.logError(e, "Unable to end the batch transaction", MODULE);
+        }
+        return false;
+    }
+
+    private Map<String, Object> processItem(int index, Map<String, Object> itemRequest, LocalDispatcher dispatcher, HttpServletRequest request) {
+        String serviceName = (String) itemRequest.get("serviceName");
+        Object inParams = itemRequest.get("inParams");
+        Object entity;
+        try {
+            Response response = new ServiceRequestProcessor().process(UtilMisc.toMap("serviceName", serviceName,
+                    "httpVerb", itemRequest.get("httpVerb"), "requestMap", inParams instanceof Map ? inParams : new LinkedHashMap<>(),
+                    "dispatcher", dispatcher, "request", request, "streaming", Boolean.FALSE));
+            entity = response.getEntity();
+        } catch (WebApplicationException e) {
+            Response.StatusType status = e.getResponse().getStatusInfo();
+            entity = new Error(status.getStatusCode(), status.getReasonPhrase(), e.getMessage());
+        } catch (GenericServiceException | RuntimeException e) {
+            Debug.logError(e, "Error running batch request " + index + " (" + serviceName + ")", MODULE);
+            entity = new Error(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase(),
+                    e.getMessage());
+        }
+        return makeItemResult(index, serviceName, entity);
+    }
+
+    private static Map<String, Object> makeItemResult(int index, String serviceName, Object entity) {
+        Map<String, Object> itemResult = new LinkedHashMap<>();
+        itemResult.put("index", index);
+        itemResult.put("serviceName", serviceName);
+        if (entity instanceof Success) {
+            Success success = (Success) entity;
+            itemResult.put("statusCode", success.getStatusCode());
+            itemResult.put("statusDescription", success.getStatusDescription());
+            if (success.getSuccessMessage() != null) {
+                itemResult.put("successMessage", success.getSuccessMessage());
+            }
+            itemResult.put("data", success.getData());
+        } else if (entity instanceof Error) {
+            Error error = (Error) entity;
+            itemResult.put("statusCode", error.getStatusCode());
+            itemResult.put("statusDescription", error.getStatusDescription());
+            itemResult.put("errorMessage", error.getErrorMessage() != null ? error.getErrorMessage() : error.getStatusDescription());
+        }
+        return itemResult;
+    }
+}
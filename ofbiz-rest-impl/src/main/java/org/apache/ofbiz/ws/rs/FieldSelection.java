@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.BadRequestException;
+
+import org.apache.ofbiz.base.util.UtilValidate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+/**
+ * The fields of a response requested with the <code>fields</code> query parameter.
+ * <p>
+ * The parameter is a comma separated list of paths: <code>name</code> selects a whole OUT parameter or map entry,
+ * <code>name.child</code> one entry of a nested map, and <code>name(child1,child2.grandChild)</code> several
+ * entries at once. Paths go through lists transparently, selecting in each of their elements, so
+ * <code>productList(productId,internalName)</code> returns the two fields of every product.
+ * <p>
+ * The selection is applied by Jackson while writing the response: only the selected entries are serialized,
+ * whatever the representation. When a service takes a <code>fieldList</code> parameter, like performFind, and a
+ * single list is selected, the selected fields of its records are passed to the service as select fields.
+ */
+public final class FieldSelection {
+
+    private static final String FIELD_LIST = "fieldList";
+
+    /** The selected entries by name, empty when the whole value is selected. */
+    private final Map<String, FieldSelection> children;
+
+    private FieldSelection(Map<String, FieldSelection> children) {
+        this.children = Collections.unmodifiableMap(children);
+    }
+
+    /**
+     * @return the selection of the fields parameter, or null when it is empty
+     */
+    public static FieldSelection parse(String fields) {
+        if (UtilValidate.isEmpty(fields)) {
+            return null;
+        }
+        Parser parser = new Parser(fields.replaceAll("\\s", ""));
+        Node root = new Node();
+        parser.parseList(root);
+        if (parser.position < parser.fields.length()) {
+            throw parser.error();
+        }
+        return root.build();
+    }
+
+    /**
+     * @return whether the whole value is selected
+     */
+    public boolean isWholeValue() {
+        return children.isEmpty();
+    }
+
+    /**
+     * @return the selection of a child entry, or null when it is not selected
+     */
+    public FieldSelection getChild(String name) {
+        return children.get(name);
+    }
+
+    /**
+     * @return the value to serialize in place of the given one, holding only the selected entries
+     */
+    public Object select(Object value) {
+        return isWholeValue() || value == null ? value : new SelectedValue(value, this);
+    }
+
+    /**
+     * Passes the selected fields of the records of a single selected list to a service taking select fields.
+     * @param requestMap the parameters of the service, updated with the select fields
+     * @param page the requested page, whose sort fields have to be selected too
+     * @return whether the service got the select fields
+     */
+    public boolean pushDown(ServiceBindingPlan plan, Map<String, Object> requestMap, PageRequest page) {
+        if (!plan.hasInParam(FIELD_LIST) || requestMap.containsKey(FIELD_LIST) || children.size() != 1) {
+            return false;
+        }
+        FieldSelection list = children.values().iterator().next();
+        List<String> fieldNames = new ArrayList<>();
+        for (Map.Entry<String, FieldSelection> entry : list.children.entrySet()) {
+            if (!entry.getValue().isWholeValue()) {
+                return false;
+            }
+            fieldNames.add(entry.getKey());
+        }
+        if (fieldNames.isEmpty()) {
+            return false;
+        }
+        if (page != null) {
+            for (String sortField : page.getSort()) {
+                if (!fieldNames.contains(sortField.startsWith("-") ? sortField.substring(1) : sortField)) {
+                    return false;
+                }
+            }
+        }
+        requestMap.put(FIELD_LIST, fieldNames);
+        return true;
+    }
+
+    private void write(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (value == null) {
+            provider.defaultSerializeNull(generator);
+        } else if (isWholeValue()) {
+            provider.defaultSerializeValue(value, generator);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            generator.writeStartObject();
+            for (Map.Entry<String, FieldSelection> child : children.entrySet()) {
+                if (map.containsKey(child.getKey())) {
+                    generator.writeFieldName(child.getKey());
+                    child.getValue().write(map.get(child.getKey()), generator, provider);
+                }
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Iterable || value instanceof Iterator || value instanceof Object[]) {
+            Iterator<?> iterator = value instanceof Iterable ? ((Iterable<?>) value).iterator()
+                    : value instanceof Iterator ? (Iterator<?>) value : Arrays.asList((Object[]) value).iterator();
+            generator.writeStartArray();
+            while (iterator.hasNext()) {
+                write(iterator.next(), generator, provider);
+            }
+            generator.writeEndArray();
+        } else {
+            // no entries to select in a scalar value
+            provider.defaultSerializeValue(value, generator);
+        }
+    }
+
+    private static final class SelectedValue extends JsonSerializable.Base {
+        private final Object value;
+        private final FieldSelection selection;
+
+        private SelectedValue(Object value, FieldSelection selection) {
+            this.value = value;
+            this.selection = selection;
+        }
+
+        @Override
+        public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+            selection.write(value, generator, provider);
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+            serialize(generator, provider);
+        }
+    }
+
+    /**
+     * The selection being parsed; selecting a whole value overrides the selection of some of its entries.
+     */
+    private static final class Node {
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private boolean whole;
+
+        private Node child(String name) {
+            return children.computeIfAbsent(name, k -> new Node());
+        }
+
+        private FieldSelection build() {
+            Map<String, FieldSelection> selections = new LinkedHashMap<>();
+            if (!whole) {
+                children.forEach((name, child) -> selections.put(name, child.build()));
+            }
+            return new FieldSelection(selections);
+        }
+    }
+
+    /**
+     * Parses <code>list := path (',' path)*</code> with <code>path := name ('.' name)* ('(' list ')')?</code>.
+     */
+    private static final class Parser {
+        private final String fields;
+        private int position;
+
+        private Parser(String fields) {
+            this.fields = fields;
+        }
+
+        private void parseList(Node parent) {
+            parsePath(parent);
+            while (position < fields.length() && fields.charAt(position) == ',') {
+                position++;
+                parsePath(parent);
+            }
+        }
+
+        private void parsePath(Node parent) {
+            Node node = parent.child(parseName());
+            while (position < fields.length() && fields.charAt(position) == '.') {
+                position++;
+                node = node.child(parseName());
+            }
+            if (position < fields.length() && fields.charAt(position) == '(') {
+                position++;
+                parseList(node);
+                if (position >= fields.length() || fields.charAt(position) != ')') {
+                    throw error();
+                }
+                position++;
+            } else {
+                node.whole = true;
+            }
+        }
+
+        private String parseName() {
+            int start = position;
+            while (position < fields.length()
+                    && (Character.isLetterOrDigit(fields.charAt(position)) || fields.charAt(position) == '_' || fields.charAt(position) == '-')) {
+                position++;
+            }
+            if (position == start) {
+                throw error();
+            }
+            return fields.substring(start, position);
+        }
+
+        private BadRequestException error() {
+            return new BadRequestException("Invalid fields parameter at position " + position + ": " + fields);
+        }
+    }
+}
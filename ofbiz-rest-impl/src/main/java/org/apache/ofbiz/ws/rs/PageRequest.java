@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * The page of a list result requested with the <code>limit</code>, <code>offset</code>, <code>cursor</code>
+ * and <code>sort</code> query parameters.
+ * <p>
+ * <code>sort</code> is a comma separated list of field names, each prefixed with <code>-</code> for a descending
+ * order. <code>cursor</code> is the opaque value returned as <code>nextCursor</code> by the previous page; it
+ * carries the offset and the sort order of the next page and takes precedence over <code>offset</code> and
+ * <code>sort</code>. The limit defaults to <code>rest.pagination.defaultLimit</code> and is capped by
+ * <code>rest.pagination.maxLimit</code>.
+ */
+public final class PageRequest {
+
+    private static final String REST_CONFIG = "rest.properties";
+    private static final int DEFAULT_LIMIT = UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.pagination.defaultLimit", 100);
+    private static final int MAX_LIMIT = UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.pagination.maxLimit", 1000);
+    private static final Pattern SORT_FIELD = Pattern.compile("-?[A-Za-z_][A-Za-z0-9_]*");
+
+    private final int offset;
+    private final int limit;
+    private final List<String> sort;
+
+    PageRequest(int offset, int limit, List<String> sort) {
+        this.offset = offset;
+        this.limit = limit;
+        this.sort = Collections.unmodifiableList(sort);
+    }
+
+    /**
+     * @return the page requested by the query parameters of a request, or null when no pagination parameter is given
+     */
+    public static PageRequest fromQueryParameters(MultivaluedMap<String, String> queryParameters) {
+        return of(parseInteger(queryParameters, "limit"), parseInteger(queryParameters, "offset"), queryParameters.getFirst("cursor"),
+                queryParameters.getFirst("sort"));
+    }
+
+    /**
+     * @return the requested page, or null when no pagination parameter is given
+     */
+    public static PageRequest of(Integer limit, Integer offset, String cursor, String sort) {
+        if (limit == null && offset == null && UtilValidate.isEmpty(cursor) && UtilValidate.isEmpty(sort)) {
+            return null;
+        }
+        if ((limit != null && limit <= 0) || (offset != null && offset < 0)) {
+            throw new BadRequestException("The limit must be positive and the offset cannot be negative.");
+        }
+        int pageLimit = limit != null ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
+        if (UtilValidate.isNotEmpty(cursor)) {
+            String decoded;
+            try {
+                decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+            int separator = decoded.indexOf(';');
+            try {
+                int cursorOffset = Integer.parseInt(separator < 0 ? decoded : decoded.substring(0, separator));
+                return new PageRequest(Math.max(cursorOffset, 0), pageLimit, parseSort(separator < 0 ? null : decoded.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("Invalid cursor: " + cursor);
+            }
+        }
+        return new PageRequest(offset != null ? offset : 0, pageLimit, parseSort(sort));
+    }
+
+    private static Integer parseInteger(MultivaluedMap<String, String> queryParameters, String name) {
+        String value = queryParameters.getFirst(name);
+        if (UtilValidate.isEmpty(value)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static List<String> parseSort(String sort) {
+        List<String> fields = new ArrayList<>();
+        if (UtilValidate.isEmpty(sort)) {
+            return fields;
+        }
+        for (String field : sort.split(",")) {
+            field = field.trim();
+            if (!SORT_FIELD.matcher(field).matches()) {
+                throw new BadRequestException("Invalid sort field: " + field);
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the sort fields in the EntityQuery orderBy syntax: the field name, prefixed with - for a descending order
+     */
+    public List<String> getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the cursor of the page starting at the given offset, in the same sort order
+     */
+    public String makeCursor(int pageOffset) {
+        String value = pageOffset + (sort.isEmpty() ? "" : ";" + String.join(",", sort));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return "offset=" + offset + "&limit=" + limit + "&sort=" + String.join(",", sort);
+    }
+}
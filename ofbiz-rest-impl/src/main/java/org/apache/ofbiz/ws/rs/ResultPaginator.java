@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.ws.rs.response.Pagination;
+
+/**
+ * Applies a {@link PageRequest} to a service invocation.
+ * <p>
+ * Services taking the <code>viewIndex</code> and <code>viewSize</code> parameters, and <code>orderBy</code> when
+ * a sort order is requested, like performFind and performFindList, get the page pushed down into their query when
+ * they return the <code>listSize</code>, or the <code>viewIndex</code> and <code>viewSize</code>, of the list. An
+ * offset that is not a multiple of the limit is pushed down as the smallest view holding the page, at most twice
+ * the limit. A list returned by such a service is trusted only when these values show that the view was applied,
+ * otherwise it is sorted and cut in memory like the lists of the other services. An EntityListIterator is read
+ * from the page offset with {@link EntityListIterator#getPartialList(int, int)}, the database positioning the
+ * cursor, unless it has to be sorted in memory. The sort fields of an in memory sort are the keys of the listed
+ * records; the values are ordered nulls first, then numbers by value, dates, and the other values by type.
+ */
+public final class ResultPaginator {
+
+    private static final String VIEW_INDEX = "viewIndex";
+    private static final String VIEW_SIZE = "viewSize";
+    private static final String ORDER_BY = "orderBy";
+    private static final String LIST_SIZE = "listSize";
+
+    private ResultPaginator() { }
+
+    /**
+     * Passes the page to the service in its paging parameters, when it has them.
+     * @param requestMap the parameters of the service, updated with the page
+     * @return the view passed to the service, holding the page, or null when the service did not get the page
+     */
+    public static PageRequest pushDown(PageRequest page, ServiceBindingPlan plan, Map<String, Object> requestMap) {
+        if (!plan.hasInParam(VIEW_INDEX) || !plan.hasInParam(VIEW_SIZE) || (!page.getSort().isEmpty() && !plan.hasInParam(ORDER_BY))
+                || !(plan.hasOutParam(LIST_SIZE) || (plan.hasOutParam(VIEW_INDEX) && plan.hasOutParam(VIEW_SIZE)))) {
+            return null;
+        }
+        PageRequest view = getView(page);
+        if (view == null) {
+            return null;
+        }
+        requestMap.put(VIEW_INDEX, view.getOffset() / view.getLimit());
+        requestMap.put(VIEW_SIZE, view.getLimit());
+        if (!page.getSort().isEmpty()) {
+            requestMap.put(ORDER_BY, String.join("|", page.getSort()));
+        }
+        return view;
+    }
+
+    /**
+     * Replaces the first list of the response data by the requested page.
+     * @param view the view passed to the service by {@link #pushDown(PageRequest, ServiceBindingPlan, Map)}, or null
+     * @return the pagination of the list, or null when the response data holds no list
+     */
+    public static Pagination apply(PageRequest page, Map<String, Object> responseData, PageRequest view) throws GenericEntityException {
+        for (Map.Entry<String, Object> entry : responseData.entrySet()) {
+            Object value = entry.getValue();
+            List<?> values;
+            Long total;
+            if (value instanceof EntityListIterator) {
+                try (EntityListIterator listIterator = (EntityListIterator) value) {
+                    if (view != null || page.getSort().isEmpty()) {
+                        values = listIterator.getPartialList(page.getOffset() + 1, page.getLimit());
+                        total = (long) listIterator.getResultsSizeAfterPartialList();
+                    } else {
+                        List<Object> all = sort(new ArrayList<>(listIterator.getCompleteList()), page.getSort());
+                        total = (long) all.size();
+                        values = cut(all, page.getOffset(), page.getLimit());
+                    }
+                }
+            } else if (value instanceof Collection) {
+                List<Object> all = new ArrayList<>((Collection<?>) value);
+                if (view != null && isViewApplied(view, responseData, all.size())) {
+                    Object listSize = responseData.get(LIST_SIZE);
+                    // performFind stops counting at the end of the view, the total is unknown then
+                    total = listSize instanceof Number && ((Number) listSize).longValue() != (long) view.getOffset() + view.getLimit()
+                            ? ((Number) listSize).longValue() : null;
+                    values = cut(all, page.getOffset() - view.getOffset(), page.getLimit());
+                } else {
+                    total = (long) all.size();
+                    values = cut(sort(all, page.getSort()), page.getOffset(), page.getLimit());
+                }
+            } else {
+                continue;
+            }
+            entry.setValue(values);
+            boolean hasNext = total != null ? page.getOffset() + values.size() < total : values.size() == page.getLimit();
+            String nextCursor = hasNext ? page.makeCursor(page.getOffset() + values.size()) : null;
+            String previousCursor = page.getOffset() > 0 ? page.makeCursor(Math.max(0, page.getOffset() - page.getLimit())) : null;
+            return new Pagination(entry.getKey(), page.getOffset(), page.getLimit(), values.size(), total, nextCursor, previousCursor);
+        }
+        return null;
+    }
+
+    /**
+     * Adds the next and prev Link headers of a paginated response, and the X-Total-Count header when the total is known.
+     * @param requestUriBuilder the builder of the request URI, the links replacing its offset, sort and cursor query parameters
+     */
+    public static Response.ResponseBuilder addPaginationLinks(Response.ResponseBuilder builder, Pagination pagination,
+            UriBuilder requestUriBuilder) {
+        if (pagination == null) {
+            return builder;
+        }
+        if (pagination.getNextCursor() != null) {
+            builder.links(makePageLink(requestUriBuilder, pagination.getNextCursor(), "next"));
+        }
+        if (pagination.getPreviousCursor() != null) {
+            builder.links(makePageLink(requestUriBuilder, pagination.getPreviousCursor(), "prev"));
+        }
+        if (pagination.getTotal() != null) {
+            builder.header("X-Total-Count", pagination.getTotal());
+        }
+        return builder;
+    }
+
+    private static Link makePageLink(UriBuilder requestUriBuilder, String cursor, String rel) {
+        return Link.fromUriBuilder(requestUriBuilder.clone().replaceQueryParam("offset").replaceQueryParam("sort")
+                .replaceQueryParam("cursor", cursor)).rel(rel).build();
+    }
+
+    /**
+     * @return the smallest view holding the page, the page itself when its offset is a multiple of its limit,
+     * or null when such a view would hold more than twice the limit
+     */
+    private static PageRequest getView(PageRequest page) {
+        long end = (long) page.getOffset() + page.getLimit();
+        for (int size = page.getLimit(); size <= 2 * page.getLimit(); size++) {
+            int index = page.getOffset() / size;
+            if ((long) (index + 1) * size >= end) {
+                return new PageRequest(index * size, size, page.getSort());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the returned viewIndex and viewSize are those of the view, and the returned listSize is
+     * consistent with the size of the list; a service ignoring the view returns neither
+     */
+    private static boolean isViewApplied(PageRequest view, Map<String, Object> responseData, int count) {
+        Object viewIndex = responseData.get(VIEW_INDEX);
+        Object viewSize = responseData.get(VIEW_SIZE);
+        Object listSize = responseData.get(LIST_SIZE);
+        boolean echoed = viewIndex instanceof Number && viewSize instanceof Number;
+        if (echoed && (((Number) viewIndex).longValue() != view.getOffset() / view.getLimit()
+                || ((Number) viewSize).longValue() != view.getLimit())) {
+            return false;
+        }
+        if (listSize instanceof Number) {
+            return count == Math.max(0, Math.min(view.getLimit(), ((Number) listSize).longValue() - view.getOffset()));
+        }
+        return echoed;
+    }
+
+    private static List<Object> cut(List<Object> values, int offset, int limit) {
+        int fromIndex = Math.min(offset, values.size());
+        return new ArrayList<>(values.subList(fromIndex, Math.min(fromIndex + limit, values.size())));
+    }
+
+    private static List<Object> sort(List<Object> values, List<String> sort) {
+        Comparator<Object> comparator = null;
+        for (String field : sort) {
+            boolean descending = field.startsWith("-");
+            String name = descending ? field.substring(1) : field;
+            Comparator<Object> fieldComparator = (first, second) -> compareValues(getField(first, name), getField(second, name));
+            if (descending) {
+                fieldComparator = fieldComparator.reversed();
+            }
+            comparator = comparator == null ? fieldComparator : comparator.thenComparing(fieldComparator);
+        }
+        if (comparator != null) {
+            values.sort(comparator);
+        }
+        return values;
+    }
+
+    private static Object getField(Object record, String name) {
+        if (!(record instanceof Map)) {
+            throw new BadRequestException("Only lists of records can be sorted.");
+        }
+        return ((Map<?, ?>) record).get(name);
+    }
+
+    /**
+     * Orders the values nulls first, then the numbers by value, then the dates, then the other values by class name and,
+     * within a class, by their natural order or their string representation.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object first, Object second) {
+        if (first == null || second == null) {
+            return first == null ? (second == null ? 0 : -1) : 1;
+        }
+        int kind = Integer.compare(getKind(first), getKind(second));
+        if (kind != 0) {
+            return kind;
+        }
+        if (first instanceof Number) {
+            return compareNumbers((Number) first, (Number) second);
+        }
+        if (first instanceof Date) {
+            int time = Long.compare(((Date) first).getTime(), ((Date) second).getTime());
+            return time != 0 ? time : Integer.compare(getSubMillisecondNanos((Date) first), getSubMillisecondNanos((Date) second));
+        }
+        if (first.getClass() != second.getClass()) {
+            return first.getClass().getName().compareTo(second.getClass().getName());
+        }
+        if (first instanceof Comparable) {
+            return ((Comparable) first).compareTo(second);
+        }
+        return first.toString().compareTo(second.toString());
+    }
+
+    private static int getKind(Object value) {
+        return value instanceof Number ? 0 : (value instanceof Date ? 1 : 2);
+    }
+
+    /**
+     * Compares numbers of any class by value, then by class name, the infinite and NaN floating point values being
+     * ordered like {@link Double#compare(double, double)} does.
+     */
+    private static int compareNumbers(Number first, Number second) {
+        int firstRank = getNonFiniteRank(first);
+        int secondRank = getNonFiniteRank(second);
+        if (firstRank != 0 || secondRank != 0) {
+            return Integer.compare(firstRank, secondRank);
+        }
+        int value = toBigDecimal(first).compareTo(toBigDecimal(second));
+        return value != 0 ? value : first.getClass().getName().compareTo(second.getClass().getName());
+    }
+
+    private static int getNonFiniteRank(Number value) {
+        if (!(value instanceof Double) && !(value instanceof Float)) {
+            return 0;
+        }
+        double doubleValue = value.doubleValue();
+        if (Double.isNaN(doubleValue)) {
+            return 3;
+        }
+        return Double.isInfinite(doubleValue) ? (doubleValue > 0 ? 2 : -1) : 0;
+    }
+
+    private static BigDecimal toBigDecimal(Number value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return new BigDecimal(value.doubleValue());
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(value.longValue());
+        }
+        try {
+            return new BigDecimal(value.toString());
+        } catch (NumberFormatException e) {
+            return new BigDecimal(value.doubleValue());
+        }
+    }
+
+    private static int getSubMillisecondNanos(Date date) {
+        return date instanceof Timestamp ? ((Timestamp) date).getNanos() % 1000000 : 0;
+    }
+}
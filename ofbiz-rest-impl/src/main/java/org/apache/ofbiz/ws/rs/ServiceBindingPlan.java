@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.ModelParam;
+import org.apache.ofbiz.service.ModelService;
+
+/**
+ * Compiled binding of the parameters of a service to REST requests and responses.
+ * <p>
+ * The plan resolves once, for each IN parameter, its name, target type and class, and whether it is required,
+ * and lists the non internal OUT parameters returned to the client. {@link #bindIn(Map)} builds the same
+ * context as {@link DispatchContext#makeValidContext(String, String, Map)} without looking up the service
+ * model and its parameters again, and converts only the values that are not already of the target type.
+ * {@link #bindOut(Map)} builds the same response data as {@link ServiceRequestProcessor#getResponseData(ModelService, Map)}.
+ * Default values are left to the service engine, which applies them before validating the context.
+ * Services having string map prefix or string list suffix parameters are bound by the DispatchContext.
+ */
+public final class ServiceBindingPlan {
+
+    private static final String MODULE = ServiceBindingPlan.class.getName();
+
+    private final ModelService service;
+    private final List<InBinding> inBindings;
+    private final Set<String> inParamNames;
+    private final List<String> outParamNames;
+    private final boolean delegated;
+
+    private ServiceBindingPlan(ModelService service, List<InBinding> inBindings, List<String> outParamNames, boolean delegated) {
+        this.service = service;
+        this.inBindings = Collections.unmodifiableList(inBindings);
+        Set<String> inParamNames = new HashSet<>();
+        for (InBinding binding : inBindings) {
+            inParamNames.add(binding.name);
+        }
+        this.inParamNames = Collections.unmodifiableSet(inParamNames);
+        this.outParamNames = Collections.unmodifiableList(outParamNames);
+        this.delegated = delegated;
+    }
+
+    /**
+     * Compiles the binding plan of a service.
+     */
+    public static ServiceBindingPlan compile(ModelService service) {
+        List<InBinding> inBindings = new ArrayList<>();
+        boolean delegated = false;
+        for (ModelParam param : service.getModelParamList()) {
+            if (param.isIn()) {
+                if (UtilValidate.isNotEmpty(param.getStringMapPrefix()) || UtilValidate.isNotEmpty(param.getStringListSuffix())) {
+                    delegated = true;
+                }
+                inBindings.add(new InBinding(param));
+            }
+        }
+        List<String> outParamNames = new ArrayList<>();
+        for (String outParamName : service.getOutParamNames()) {
+            if (!service.getParam(outParamName).isInternal()) {
+                outParamNames.add(outParamName);
+            }
+        }
+        return new ServiceBindingPlan(service, inBindings, outParamNames, delegated);
+    }
+
+    /**
+     * Returns the plan of an exported service from the {@link ServiceCatalog}, or compiles the plan of another service.
+     */
+    public static ServiceBindingPlan get(DispatchContext dctx, ModelService service) {
+        ServiceCatalog.ExportedService exportedService = ServiceCatalog.get(dctx).getService(service.getName());
+        if (exportedService != null && exportedService.getModelService() == service) {
+            return exportedService.getBindingPlan();
+        }
+        return compile(service);
+    }
+
+    public ModelService getService() {
+        return service;
+    }
+
+    public boolean hasInParam(String name) {
+        return inParamNames.contains(name);
+    }
+
+    /**
+     * @return whether the response data may hold the OUT parameter
+     */
+    public boolean hasOutParam(String name) {
+        return outParamNames.contains(name);
+    }
+
+    /**
+     * @return the IN parameters that must be given by the client: neither optional nor internal
+     */
+    public List<String> getRequiredParamNames() {
+        List<String> required = new ArrayList<>();
+        for (InBinding binding : inBindings) {
+            if (binding.required) {
+                required.add(binding.name);
+            }
+        }
+        return required;
+    }
+
+    /**
+     * Builds the service context from the parameters of a request.
+     */
+    public Map<String, Object> bindIn(Map<String, ? extends Object> source) throws GenericServiceException {
+        if (delegated) {
+            return DispatchContext.makeValidContext(service, ModelService.IN_PARAM, source);
+        }
+        Map<String, Object> context = new HashMap<>();
+        if (source == null) {
+            return context;
+        }
+        Locale locale = source.get("locale") instanceof Locale ? (Locale) source.get("locale") : Locale.getDefault();
+        TimeZone timeZone = source.get("timeZone") instanceof TimeZone ? (TimeZone) source.get("timeZone") : TimeZone.getDefault();
+        for (InBinding binding : inBindings) {
+            if (source.containsKey(binding.name)) {
+                context.put(binding.name, binding.convert(source.get(binding.name), timeZone, locale));
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Builds the response data from a service result: the non internal and non empty OUT parameters.
+     */
+    public Map<String, Object> bindOut(Map<String, Object> result) {
+        Map<String, Object> responseData = new LinkedHashMap<>();
+        for (String outParamName : outParamNames) {
+            Object value = result.get(outParamName);
+            if (UtilValidate.isNotEmpty(value)) {
+                responseData.put(outParamName, value);
+            }
+        }
+        return responseData;
+    }
+
+    private static final class InBinding {
+        private final String name;
+        private final String type;
+        /** The class of the type, null when it cannot be resolved and every value goes through ObjectType. */
+        private final Class<?> targetClass;
+        private final boolean required;
+
+        private InBinding(ModelParam param) {
+            this.name = param.getName();
+            this.type = param.getType();
+            this.required = !param.isOptional() && !param.isInternal();
+            Class<?> targetClass = null;
+            if (UtilValidate.isNotEmpty(type)) {
+                try {
+                    targetClass = ObjectType.loadClass(type);
+                } catch (ClassNotFoundException e) {
+                    Debug.logVerbose("Parameter " + name + " of type " + type + " will be converted by ObjectType", MODULE);
+                }
+            }
+            this.targetClass = targetClass;
+        }
+
+        private Object convert(Object value, TimeZone timeZone, Locale locale) {
+            if (value == null || (targetClass != null && targetClass.isInstance(value))) {
+                return value;
+            }
+            try {
+                return ObjectType.simpleTypeOrObjectConvert(value, type, null, timeZone, locale, false);
+            } catch (GeneralException e) {
+                // like makeValidContext, keep the value and let the service validation report it
+                Debug.logWarning("Type conversion of field [" + name + "] to type [" + type + "] failed for value \"" + value + "\": " + e, MODULE);
+                return value;
+            }
+        }
+    }
+}
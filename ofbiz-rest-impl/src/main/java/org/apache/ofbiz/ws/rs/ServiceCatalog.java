@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.ModelParam;
+import org.apache.ofbiz.service.ModelService;
+
+/**
+ * Immutable index of the services exported through the REST API, that is the services having
+ * <code>export="true"</code> and an HTTP action.
+ * <p>
+ * The index is built on first use and kept until the service definitions are reloaded: reading them again
+ * replaces all the ModelService instances, so the index is rebuilt as soon as one of its services is no
+ * longer the one returned by the DispatchContext. It is also dropped when the Jersey application (re)loads
+ * its resources.
+ */
+public final class ServiceCatalog {
+
+    private static final String MODULE = ServiceCatalog.class.getName();
+    private static volatile ServiceCatalog current;
+
+    private final List<ExportedService> services;
+    private final Map<String, ExportedService> servicesByName;
+    /** Any service of the DispatchContext, checked to notice a reload of the service definitions. */
+    private final ModelService sentinel;
+
+    private ServiceCatalog(List<ExportedService> services, ModelService sentinel) {
+        Map<String, ExportedService> servicesByName = new HashMap<>();
+        for (ExportedService service : services) {
+            servicesByName.put(service.getName(), service);
+        }
+        this.services = Collections.unmodifiableList(services);
+        this.servicesByName = Collections.unmodifiableMap(servicesByName);
+        this.sentinel = sentinel;
+    }
+
+    /**
+     * Returns the catalog of the exported services, building it when it is missing or stale.
+     */
+    public static ServiceCatalog get(DispatchContext dctx) {
+        ServiceCatalog catalog = current;
+        if (catalog != null && catalog.isCurrent(dctx)) {
+            return catalog;
+        }
+        synchronized (ServiceCatalog.class) {
+            catalog = current;
+            if (catalog == null || !catalog.isCurrent(dctx)) {
+                catalog = build(dctx);
+                current = catalog;
+            }
+        }
+        return catalog;
+    }
+
+    public static void clear() {
+        current = null;
+    }
+
+    /**
+     * @return the exported services sorted by name
+     */
+    public List<ExportedService> getServices() {
+        return services;
+    }
+
+    /**
+     * @return the exported service of the given name, or null
+     */
+    public ExportedService getService(String serviceName) {
+        return servicesByName.get(serviceName);
+    }
+
+    /**
+     * Returns the exported services whose name contains the given text, ignoring case, and whose HTTP method
+     * is the given one; null or empty criteria match all the services.
+     */
+    public List<ExportedService> find(String nameFilter, String httpMethod) {
+        if (UtilValidate.isEmpty(nameFilter) && UtilValidate.isEmpty(httpMethod)) {
+            return services;
+        }
+        String lowerCaseFilter = nameFilter != null ? nameFilter.toLowerCase(Locale.ROOT) : null;
+        List<ExportedService> found = new ArrayList<>();
+        for (ExportedService service : services) {
+            if ((UtilValidate.isEmpty(lowerCaseFilter) || service.lowerCaseName.contains(lowerCaseFilter))
+                    && (UtilValidate.isEmpty(httpMethod) || service.getHttpMethod().equalsIgnoreCase(httpMethod))) {
+                found.add(service);
+            }
+        }
+        return found;
+    }
+
+    private boolean isCurrent(DispatchContext dctx) {
+        if (sentinel == null) {
+            return false;
+        }
+        try {
+            return dctx.getModelService(sentinel.getName()) == sentinel;
+        } catch (GenericServiceException e) {
+            return false;
+        }
+    }
+
+    private static ServiceCatalog build(DispatchContext dctx) {
+        List<ExportedService> services = new ArrayList<>();
+        ModelService sentinel = null;
+        // getAllServiceNames returns the names sorted
+        for (String serviceName : dctx.getAllServiceNames()) {
+            try {
+                ModelService service = dctx.getModelService(serviceName);
+                if (sentinel == null) {
+                    sentinel = service;
+                }
+                if (service.isExport() && UtilValidate.isNotEmpty(service.getAction())) {
+                    services.add(new ExportedService(service));
+                }
+            } catch (GenericServiceException e) {
+                Debug.logWarning(e, "Unable to read the definition of service " + serviceName, MODULE);
+            }
+        }
+        Debug.logInfo("Indexed " + services.size() + " services exported through the REST API", MODULE);
+        return new ServiceCatalog(services, sentinel);
+    }
+
+    /**
+     * A service exported through the REST API, along with its non internal parameters and its binding plan.
+     */
+    public static final class ExportedService {
+        private final ModelService modelService;
+        private final String lowerCaseName;
+        private final String httpMethod;
+        private final List<ModelParam> inParams;
+        private final List<ModelParam> outParams;
+        private final ServiceBindingPlan bindingPlan;
+
+        private ExportedService(ModelService modelService) {
+            this.modelService = modelService;
+            this.lowerCaseName = modelService.getName().toLowerCase(Locale.ROOT);
+            this.httpMethod = modelService.getAction().toUpperCase(Locale.ROOT);
+            this.inParams = Collections.unmodifiableList(modelService.getInModelParamList());
+            List<ModelParam> outParams = new ArrayList<>();
+            for (ModelParam param : modelService.getModelParamList()) {
+                if (param.isOut() && !param.isInternal()) {
+                    outParams.add(param);
+                }
+            }
+            this.outParams = Collections.unmodifiableList(outParams);
+            this.bindingPlan = ServiceBindingPlan.compile(modelService);
+        }
+
+        public String getName() {
+            return modelService.getName();
+        }
+
+        public String getDescription() {
+            return modelService.getDescription();
+        }
+
+        public String getHttpMethod() {
+            return httpMethod;
+        }
+
+        public ModelService getModelService() {
+            return modelService;
+        }
+
+        /**
+         * @return the non internal IN parameters
+         */
+        public List<ModelParam> getInParams() {
+            return inParams;
+        }
+
+        /**
+         * @return the non internal OUT parameters
+         */
+        public List<ModelParam> getOutParams() {
+            return outParams;
+        }
+
+        public ServiceBindingPlan getBindingPlan() {
+            return bindingPlan;
+        }
+    }
+}
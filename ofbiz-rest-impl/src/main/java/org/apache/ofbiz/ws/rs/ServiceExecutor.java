@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.ws.rs.util.RestApiUtil;
+
+/**
+ * Runs REST service invocations on virtual threads, when <code>rest.execution.virtualThreads.enabled</code> is set
+ * and the JDK provides them, so that requests waiting on slow services do not hold container threads.
+ * <p>
+ * The invocation is given to {@link #execute(AsyncResponse, Callable)} once everything it needs from the request
+ * (the userLogin, the query parameters, the request URI) has been read on the container thread: the request scoped
+ * Jersey proxies and the servlet request must not be used from the virtual thread. The dispatcher and the delegator
+ * are not bound to threads; the transaction of a service returning an EntityListIterator is begun, and its response
+ * written, on the virtual thread, since the async response is resumed there.
+ * <p>
+ * At most <code>rest.execution.maxInFlight</code> invocations run at once, further requests get a 503 Service
+ * Unavailable with a Retry-After header. When the option is disabled or not supported, invocations run on the
+ * container thread.
+ */
+public final class ServiceExecutor {
+
+    private static final String MODULE = ServiceExecutor.class.getName();
+    private static final String REST_CONFIG = "rest.properties";
+
+    private static final int MAX_IN_FLIGHT = UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.execution.maxInFlight", 1000);
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static final Semaphore IN_FLIGHT = new Semaphore(MAX_IN_FLIGHT);
+    private static final LongAdder REJECTED = new LongAdder();
+
+    private ServiceExecutor() { }
+
+    /**
+     * @return whether invocations run on virtual threads
+     */
+    public static boolean isEnabled() {
+        return EXECUTOR != null;
+    }
+
+    /**
+     * Runs an invocation, on a virtual thread when enabled, and resumes the async response with its response,
+     * or with the exception it has thrown so that it is mapped like the exceptions of synchronous resource methods.
+     */
+    public static void execute(AsyncResponse asyncResponse, Callable<Response> invocation) {
+        if (EXECUTOR == null) {
+            resume(asyncResponse, invocation);
+            return;
+        }
+        if (!IN_FLIGHT.tryAcquire()) {
+            reject(asyncResponse);
+            return;
+        }
+        try {
+            EXECUTOR.execute(() -> {
+                try {
+                    resume(asyncResponse, invocation);
+                } finally {
+                    IN_FLIGHT.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            IN_FLIGHT.release();
+            reject(asyncResponse);
+        }
+    }
+
+    /**
+     * @return the number of invocations running on virtual threads
+     */
+    public static int getInFlight() {
+        return isEnabled() ? MAX_IN_FLIGHT - IN_FLIGHT.availablePermits() : 0;
+    }
+
+    /**
+     * @return the number of requests rejected since startup because too many invocations were in flight
+     */
+    public static long getRejected() {
+        return REJECTED.sum();
+    }
+
+    private static void resume(AsyncResponse asyncResponse, Callable<Response> invocation) {
+        Response response;
+        try {
+            response = invocation.call();
+        } catch (Exception e) {
+            asyncResponse.resume(e);
+            return;
+        }
+        asyncResponse.resume(response);
+    }
+
+    private static void reject(AsyncResponse asyncResponse) {
+        REJECTED.increment();
+        asyncResponse.resume(RestApiUtil.errorBuilder(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                Response.Status.SERVICE_UNAVAILABLE.getReasonPhrase(), "Too many requests in progress, please retry later.")
+                .header(HttpHeaders.RETRY_AFTER, 1).build());
+    }
+
+    private static ExecutorService createExecutor() {
+        if (!UtilProperties.getPropertyAsBoolean(REST_CONFIG, "rest.execution.virtualThreads.enabled", false)) {
+            return null;
+        }
+        try {
+            // looked up by reflection, virtual threads are only available from Java 21
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            Debug.logInfo("REST service invocations run on virtual threads, at most " + MAX_IN_FLIGHT + " at once", MODULE);
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            Debug.logWarning("Virtual threads are not supported by this JVM, REST service invocations run on container threads", MODULE);
+            return null;
+        }
+    }
+}
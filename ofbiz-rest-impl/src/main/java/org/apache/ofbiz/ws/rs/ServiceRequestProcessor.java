@@ -18,27 +18,44 @@
  *******************************************************************************/
 package org.apache.ofbiz.ws.rs;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ModelParam;
 import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.ws.rs.metrics.RestMetrics;
+import org.apache.ofbiz.ws.rs.response.Pagination;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonConfig;
 import org.apache.ofbiz.ws.rs.util.RestApiUtil;
 
 public class ServiceRequestProcessor {
 
+    private static final String MODULE = ServiceRequestProcessor.class.getName();
+    private static final Set<String> ITERATOR_TYPES = UtilMisc.toSet("EntityListIterator",
+            "org.apache.ofbiz.entity.util.EntityListIterator");
+
     /**
+     * The request context holds the serviceName, httpVerb, requestMap and dispatcher, the servlet request, or the
+     * userLogin and pretty entries read from it when the invocation is run by the {@link ServiceExecutor}, and the
+     * optional page, fields, streaming and mediaType entries; streamed results are written in the mediaType, JSON by default.
      * @param requestContext
      * @return
      * @throws GenericServiceException
@@ -50,7 +67,9 @@ public class ServiceRequestProcessor {
         Map<String, Object> requestMap = (Map<String, Object>) requestContext.get("requestMap");
         LocalDispatcher dispatcher = (LocalDispatcher) requestContext.get("dispatcher");
         HttpServletRequest request = (HttpServletRequest) requestContext.get("request");
-        GenericValue userLogin = (GenericValue) request.getAttribute("userLogin");
+        // requests run on another thread than the container's give the userLogin and the pretty flag instead of the request
+        GenericValue userLogin = requestContext.containsKey("userLogin") ? (GenericValue) requestContext.get("userLogin")
+                : (GenericValue) request.getAttribute("userLogin");
         DispatchContext dispatchContext = dispatcher.getDispatchContext();
         ModelService service = null;
         try {
@@ -58,28 +77,130 @@ public class ServiceRequestProcessor {
         } catch (GenericServiceException gse) {
             throw new NotFoundException(gse.getMessage());
         }
-        if (UtilValidate.isNotEmpty(service.getAction()) && !service.getAction().equalsIgnoreCase(httpVerb)) {
+        if (httpVerb != null && UtilValidate.isNotEmpty(service.getAction()) && !service.getAction().equalsIgnoreCase(httpVerb)) {
             throw new MethodNotAllowedException("HTTP " + httpVerb + " is not allowed on this service.");
         }
-        Map<String, Object> serviceContext = dispatchContext.makeValidContext(serviceName, ModelService.IN_PARAM, requestMap);
+        ServiceBindingPlan bindingPlan = ServiceBindingPlan.get(dispatchContext, service);
+        PageRequest page = (PageRequest) requestContext.get("page");
+        FieldSelection fields = (FieldSelection) requestContext.get("fields");
+        PageRequest pushedView = null;
+        if (page != null || fields != null) {
+            requestMap = requestMap != null ? new HashMap<>(requestMap) : new HashMap<>();
+            pushedView = page != null ? ResultPaginator.pushDown(page, bindingPlan, requestMap) : null;
+            if (fields != null) {
+                fields.pushDown(bindingPlan, requestMap, page);
+            }
+        }
+        Map<String, Object> serviceContext = bindingPlan.bindIn(requestMap);
         serviceContext.put("userLogin", userLogin);
-        Map<String, Object> result = dispatcher.runSync(serviceName, serviceContext);
-        Map<String, Object> responseData = new LinkedHashMap<>();
-        if (ServiceUtil.isSuccess(result)) {
-            Set<String> outParams = service.getOutParamNames();
-            for (String outParamName : outParams) {
-                ModelParam outParam = service.getParam(outParamName);
-                if (!outParam.isInternal()) {
-                    Object value = result.get(outParamName);
-                    if (UtilValidate.isNotEmpty(value)) {
-                        responseData.put(outParamName, value);
+        boolean streaming = !Boolean.FALSE.equals(requestContext.get("streaming"));
+
+        // an EntityListIterator is only readable within the transaction it was opened in
+        boolean iteratorOut = hasIteratorOutParam(service);
+        boolean beganTransaction = false;
+        Map<String, Object> responseData = null;
+        boolean streamed = false;
+        try {
+            if (iteratorOut) {
+                beganTransaction = TransactionUtil.begin();
+            }
+            long start = System.nanoTime();
+            Map<String, Object> result;
+            try {
+                result = dispatcher.runSync(serviceName, serviceContext);
+            } catch (GenericServiceException e) {
+                RestMetrics.recordServiceExecution(serviceName, "exception", System.nanoTime() - start);
+                throw e;
+            }
+            RestMetrics.recordServiceExecution(serviceName, ServiceUtil.isSuccess(result) ? "success" : "error", System.nanoTime() - start);
+            if (ServiceUtil.isSuccess(result)) {
+                String successMessage = (String) result.get(ModelService.SUCCESS_MESSAGE);
+                responseData = bindingPlan.bindOut(result);
+                Pagination pagination = page != null ? ResultPaginator.apply(page, responseData, pushedView) : null;
+                if (streaming && pagination == null && StreamingServiceResponse.isStreamable(responseData)) {
+                    streamed = true;
+                    MediaType mediaType = requestContext.get("mediaType") != null ? (MediaType) requestContext.get("mediaType")
+                            : MediaType.APPLICATION_JSON_TYPE;
+                    return Response.status(Response.Status.OK).type(mediaType)
+                            .entity(new StreamingServiceResponse(successMessage, responseData, fields, beganTransaction,
+                                    isPrettyRequested(requestContext, request), mediaType)).build();
+                }
+                if (iteratorOut) {
+                    readIterators(responseData);
+                }
+                return RestApiUtil.success(successMessage, fields != null ? fields.select(responseData) : responseData, pagination);
+            } else {
+                return RestApiUtil.error(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                        Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase(), (String) result.get(ModelService.ERROR_MESSAGE));
+            }
+        } catch (GenericEntityException e) {
+            throw new GenericServiceException(e.getMessage(), e);
+        } finally {
+            // a streamed response closes its iterators and commits once written
+            if (!streamed && iteratorOut) {
+                if (responseData != null) {
+                    StreamingServiceResponse.closeIterators(responseData);
+                }
+                try {
+                    if (responseData != null) {
+                        TransactionUtil.commit(beganTransaction);
+                    } else {
+                        TransactionUtil.rollback(beganTransaction, "Service " + serviceName + " failed", null);
                     }
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, "Unable to end the transaction of service " + serviceName, MODULE);
+                }
+            }
+        }
+    }
+
+    private static boolean hasIteratorOutParam(ModelService service) {
+        for (ModelParam param : service.getModelParamList()) {
+            if (param.isOut() && ITERATOR_TYPES.contains(param.getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPrettyRequested(Map<String, Object> requestContext, HttpServletRequest request) {
+        if (requestContext.containsKey("pretty")) {
+            return Boolean.TRUE.equals(requestContext.get("pretty"));
+        }
+        return JacksonConfig.isPrettyRequested(request.getParameter(JacksonConfig.PRETTY_PARAM));
+    }
+
+    /**
+     * Replaces the EntityListIterators of the response data by the list of their values.
+     */
+    private static void readIterators(Map<String, Object> responseData) throws GenericEntityException {
+        for (Map.Entry<String, Object> entry : responseData.entrySet()) {
+            if (entry.getValue() instanceof EntityListIterator) {
+                try (EntityListIterator listIterator = (EntityListIterator) entry.getValue()) {
+                    entry.setValue(listIterator.getCompleteList());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the non internal and non empty OUT parameters of a service result.
+     * @param service
+     * @param result
+     * @return
+     */
+    public static Map<String, Object> getResponseData(ModelService service, Map<String, Object> result) {
+        Map<String, Object> responseData = new LinkedHashMap<>();
+        Set<String> outParams = service.getOutParamNames();
+        for (String outParamName : outParams) {
+            ModelParam outParam = service.getParam(outParamName);
+            if (!outParam.isInternal()) {
+                Object value = result.get(outParamName);
+                if (UtilValidate.isNotEmpty(value)) {
+                    responseData.put(outParamName, value);
                 }
             }
-            return RestApiUtil.success((String) result.get(ModelService.SUCCESS_MESSAGE), responseData);
-        } else {
-            return RestApiUtil.error(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), Response.Status.INTERNAL_SERVER_ERROR.getReasonPhrase(),
-                    (String) result.get(ModelService.ERROR_MESSAGE));
         }
+        return responseData;
     }
 }
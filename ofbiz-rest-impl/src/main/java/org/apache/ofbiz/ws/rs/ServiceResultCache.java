@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.ws.rs.response.Success;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonConfig;
+import org.apache.ofbiz.ws.rs.util.DigestUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * HTTP caching of the results of read-only services invoked with GET.
+ * <p>
+ * Services are made cacheable in rest.properties with a <code>rest.cache.maxAge.&lt;serviceName&gt;</code> entry;
+ * service definitions have no place for such a setting. Cacheable results are tagged with the SHA-256 digest
+ * of their JSON serialization and, when <code>rest.cache.server.enabled</code> is set, kept on the server per
+ * user and IN parameters for the max-age of the service.
+ * <p>
+ * The tag is weak, as it is shared by the JSON, Smile and CBOR representations of a result, compressed or not,
+ * and the responses vary on Accept and Accept-Encoding.
+ */
+public final class ServiceResultCache {
+
+    private static final String MODULE = ServiceResultCache.class.getName();
+    private static final String REST_CONFIG = "rest.properties";
+    private static final String MAX_AGE_PREFIX = "rest.cache.maxAge.";
+
+    private static final ObjectMapper MAPPER = JacksonConfig.configure(new ObjectMapper());
+    private static final Map<String, Integer> MAX_AGES = loadMaxAges();
+    private static final boolean SERVER_CACHE_ENABLED = UtilProperties.getPropertyAsBoolean(REST_CONFIG, "rest.cache.server.enabled", false);
+    private static final UtilCache<String, CachedResult> RESULT_CACHE = UtilCache.createUtilCache("rest.ServiceResult",
+            UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.cache.server.maxSize", 1000), 0);
+
+    private ServiceResultCache() { }
+
+    /**
+     * @return the max-age in seconds of a cacheable service, or null if the service is not cacheable
+     */
+    public static Integer getMaxAge(String serviceName) {
+        return MAX_AGES.get(serviceName);
+    }
+
+    public static CacheControl getCacheControl(int maxAge) {
+        CacheControl cacheControl = new CacheControl();
+        // results depend on the user permissions
+        cacheControl.setPrivate(true);
+        cacheControl.setMaxAge(maxAge);
+        return cacheControl;
+    }
+
+    /**
+     * @return the weak entity tag of a service response, the same for all its representations
+     */
+    public static EntityTag getEntityTag(Success success) throws JsonProcessingException {
+        return new EntityTag(DigestUtil.sha256Hex(MAPPER.writeValueAsString(success)), true);
+    }
+
+    /**
+     * @return the result cached on the server for this user and these IN parameters, if still fresh
+     */
+    public static CachedResult get(String serviceName, String userLoginId, Map<String, Object> inParams) {
+        if (!SERVER_CACHE_ENABLED) {
+            return null;
+        }
+        String key = makeKey(serviceName, userLoginId, inParams);
+        CachedResult cached = key != null ? RESULT_CACHE.get(key) : null;
+        if (cached != null && cached.expiresAt <= System.currentTimeMillis()) {
+            RESULT_CACHE.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    public static void put(String serviceName, String userLoginId, Map<String, Object> inParams, Success success, EntityTag entityTag) {
+        Integer maxAge = getMaxAge(serviceName);
+        if (!SERVER_CACHE_ENABLED || maxAge == null) {
+            return;
+        }
+        String key = makeKey(serviceName, userLoginId, inParams);
+        if (key != null) {
+            RESULT_CACHE.put(key, new CachedResult(success, entityTag, System.currentTimeMillis() + maxAge * 1000L));
+        }
+    }
+
+    public static void clear() {
+        RESULT_CACHE.clear();
+    }
+
+    private static String makeKey(String serviceName, String userLoginId, Map<String, Object> inParams) {
+        try {
+            // sorted so that the order of the parameters in the request does not matter
+            String params = MAPPER.writeValueAsString(inParams != null ? new TreeMap<>(inParams) : Collections.emptyMap());
+            return serviceName + "::" + userLoginId + "::" + DigestUtil.sha256Hex(params);
+        } catch (JsonProcessingException e) {
+            Debug.logWarning(e, "Not caching the result of " + serviceName, MODULE);
+            return null;
+        }
+    }
+
+    private static Map<String, Integer> loadMaxAges() {
+        Map<String, Integer> maxAges = new HashMap<>();
+        Properties properties = UtilProperties.getProperties(REST_CONFIG);
+        if (properties != null) {
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(MAX_AGE_PREFIX)) {
+                    try {
+                        maxAges.put(name.substring(MAX_AGE_PREFIX.length()), Integer.valueOf(properties.getProperty(name).trim()));
+                    } catch (NumberFormatException e) {
+                        Debug.logWarning("Ignoring invalid max-age of " + name + ": " + properties.getProperty(name), MODULE);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(maxAges);
+    }
+
+    /**
+     * A service response cached on the server along with its entity tag.
+     */
+    public static final class CachedResult {
+        private final Success success;
+        private final EntityTag entityTag;
+        private final long expiresAt;
+
+        private CachedResult(Success success, EntityTag entityTag, long expiresAt) {
+            this.success = success;
+            this.entityTag = entityTag;
+            this.expiresAt = expiresAt;
+        }
+
+        public Success getSuccess() {
+            return success;
+        }
+
+        public EntityTag getEntityTag() {
+            return entityTag;
+        }
+
+        /**
+         * @return the seconds left before the cached result expires
+         */
+        public int getRemainingMaxAge() {
+            return (int) Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.ws.rs.common.ApiMediaType;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonConfig;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Writes a successful service response as JSON, Smile or CBOR with Jackson's streaming generator, element by element for
+ * the iterators and collections of its data, instead of serializing it as a whole.
+ * <p>
+ * The output is flushed every <code>rest.streaming.flushSize</code> elements, so large responses are sent with
+ * chunked transfer encoding. EntityListIterators are closed, and the transaction they were read in is committed,
+ * once the response has been written or has failed.
+ */
+public class StreamingServiceResponse implements StreamingOutput {
+
+    private static final String MODULE = StreamingServiceResponse.class.getName();
+    private static final ObjectMapper JSON_MAPPER = JacksonConfig.configure(new ObjectMapper());
+    private static final ObjectMapper SMILE_MAPPER = JacksonConfig.configure(new ObjectMapper(new SmileFactory()));
+    private static final ObjectMapper CBOR_MAPPER = JacksonConfig.configure(new ObjectMapper(new CBORFactory()));
+    private static final int FLUSH_SIZE = UtilProperties.getPropertyAsInteger("rest.properties", "rest.streaming.flushSize", 100);
+    private static final int MIN_COLLECTION_SIZE = UtilProperties.getPropertyAsInteger("rest.properties",
+            "rest.streaming.minCollectionSize", 1000);
+
+    private final String successMessage;
+    private final Map<String, Object> data;
+    private final FieldSelection fields;
+    private final boolean beganTransaction;
+    private final boolean pretty;
+    private final MediaType mediaType;
+
+    /**
+     * @param successMessage
+     * @param data the response data, its iterators are closed once written
+     * @param fields the selected fields of the data, null for all
+     * @param beganTransaction whether the transaction the iterators are read in has to be committed once written
+     * @param pretty whether to indent the output, when written as JSON
+     * @param mediaType the representation of the output, JSON, Smile or CBOR
+     */
+    public StreamingServiceResponse(String successMessage, Map<String, Object> data, FieldSelection fields, boolean beganTransaction,
+            boolean pretty, MediaType mediaType) {
+        this.successMessage = successMessage;
+        this.data = data;
+        this.fields = fields;
+        this.beganTransaction = beganTransaction;
+        this.pretty = pretty;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Returns whether the response data holds an iterator, or a collection large enough to be worth streaming.
+     */
+    public static boolean isStreamable(Map<String, Object> data) {
+        for (Object value : data.values()) {
+            if (value instanceof Iterator || (value instanceof Collection && ((Collection<?>) value).size() >= MIN_COLLECTION_SIZE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the EntityListIterators held by the response data.
+     */
+    public static void closeIterators(Map<String, Object> data) {
+        for (Object value : data.values()) {
+            if (value instanceof EntityListIterator) {
+                try {
+                    ((EntityListIterator) value).close();
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, "Unable to close an EntityListIterator of a REST response", MODULE);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        ObjectMapper mapper = getMapper(mediaType);
+        ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (pretty && mapper == JSON_MAPPER) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartObject();
+            generator.writeNumberField("statusCode", Response.Status.OK.getStatusCode());
+            generator.writeStringField("statusDescription", Response.Status.OK.getReasonPhrase());
+            if (successMessage != null) {
+                generator.writeStringField("successMessage", successMessage);
+            }
+            generator.writeObjectFieldStart("data");
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                FieldSelection selection = fields != null ? fields.getChild(entry.getKey()) : null;
+                if (fields == null || selection != null) {
+                    generator.writeFieldName(entry.getKey());
+                    writeValue(generator, writer, entry.getValue(), selection);
+                }
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        } finally {
+            closeIterators(data);
+            try {
+                TransactionUtil.commit(beganTransaction);
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Unable to commit the transaction of a streamed REST response", MODULE);
+            }
+        }
+    }
+
+    private static ObjectMapper getMapper(MediaType mediaType) {
+        if (ApiMediaType.APPLICATION_SMILE_TYPE.isCompatible(mediaType)) {
+            return SMILE_MAPPER;
+        }
+        if (ApiMediaType.APPLICATION_CBOR_TYPE.isCompatible(mediaType)) {
+            return CBOR_MAPPER;
+        }
+        return JSON_MAPPER;
+    }
+
+    private static void writeValue(JsonGenerator generator, ObjectWriter writer, Object value, FieldSelection selection) throws IOException {
+        if (value instanceof EntityListIterator) {
+            // EntityListIterator.hasNext() is costly, read until next() returns null instead
+            EntityListIterator listIterator = (EntityListIterator) value;
+            generator.writeStartArray();
+            int count = 0;
+            GenericValue element;
+            while ((element = listIterator.next()) != null) {
+                writer.writeValue(generator, selection != null ? selection.select(element) : element);
+                if (++count % FLUSH_SIZE == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Iterator || value instanceof Collection) {
+            Iterator<?> iterator = value instanceof Iterator ? (Iterator<?>) value : ((Collection<?>) value).iterator();
+            generator.writeStartArray();
+            int count = 0;
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, selection != null ? selection.select(iterator.next()) : iterator.next());
+                if (++count % FLUSH_SIZE == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+        } else {
+            writer.writeValue(generator, selection != null ? selection.select(value) : value);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Stub services called by the {@link RestLoadBenchmark}: they do no database work, so that the benchmark
+ * measures the REST stack rather than the services.
+ * <p>
+ * Service definitions are loaded whatever the loader, and the REST API can call services which are not exported,
+ * so the stubs refuse to run unless a {@link RestBenchmarkServer} is running in the JVM, that is during the benchmark.
+ */
+public final class BenchmarkServices {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final String NOT_RUNNING = "Only available while the REST load benchmark runs";
+
+    private BenchmarkServices() { }
+
+    /**
+     * Returns the message along with a list of size generated records.
+     */
+    public static Map<String, Object> restBenchmarkEcho(DispatchContext dctx, Map<String, Object> context) {
+        if (!RestBenchmarkServer.isRunning()) {
+            return ServiceUtil.returnError(NOT_RUNNING);
+        }
+        Integer size = (Integer) context.get("size");
+        List<Map<String, Object>> items = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < (size != null ? size : 0); i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("itemId", "BENCH" + i);
+            item.put("name", "Benchmark item " + i);
+            item.put("amount", BigDecimal.valueOf(i * 100 + 99, 2));
+            item.put("createdDate", now);
+            items.add(item);
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("message", context.get("message"));
+        result.put("items", items);
+        return result;
+    }
+
+    /**
+     * Pretends to store the given item and returns a new identifier.
+     */
+    public static Map<String, Object> restBenchmarkStore(DispatchContext dctx, Map<String, Object> context) {
+        if (!RestBenchmarkServer.isRunning()) {
+            return ServiceUtil.returnError(NOT_RUNNING);
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess("Item stored");
+        result.put("itemId", "BENCH" + SEQUENCE.incrementAndGet());
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.commons.io.FileUtils;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.ws.rs.core.OFBizApiConfig;
+import org.apache.ofbiz.ws.rs.listener.ApiContextListener;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.glassfish.jersey.servlet.ServletContainer;
+
+/**
+ * Embedded Tomcat serving the REST API like the ofbiz-rest-jersey webapp does, on a free local port,
+ * with the given delegator.
+ */
+public final class RestBenchmarkServer implements AutoCloseable {
+
+    private static final String MODULE = RestBenchmarkServer.class.getName();
+    private static final String CONTEXT_PATH = "/rest";
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
+    private final Tomcat tomcat;
+    private final File baseDir;
+
+    private RestBenchmarkServer(Tomcat tomcat, File baseDir) {
+        this.tomcat = tomcat;
+        this.baseDir = baseDir;
+    }
+
+    /**
+     * Starts the REST API with the Jersey filter and the context listener of the webapp descriptor.
+     */
+    public static RestBenchmarkServer start(Delegator delegator) throws IOException, LifecycleException {
+        File baseDir = Files.createTempDirectory("rest-benchmark").toFile();
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.getAbsolutePath());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+
+        Context context = tomcat.addContext(CONTEXT_PATH, baseDir.getAbsolutePath());
+        context.addParameter("localDispatcherName", "rest-benchmark");
+        context.addParameter("entityDelegatorName", delegator.getDelegatorName());
+        context.addApplicationListener(ApiContextListener.class.getName());
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName("Jersey REST Filter");
+        filterDef.setFilterClass(ServletContainer.class.getName());
+        filterDef.addInitParameter("javax.ws.rs.Application", OFBizApiConfig.class.getName());
+        filterDef.setAsyncSupported("true");
+        context.addFilterDef(filterDef);
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterDef.getFilterName());
+        filterMap.addURLPattern("/*");
+        context.addFilterMap(filterMap);
+
+        tomcat.start();
+        RUNNING.incrementAndGet();
+        RestBenchmarkServer server = new RestBenchmarkServer(tomcat, baseDir);
+        Debug.logInfo("REST benchmark server started on " + server.getBaseUrl(), MODULE);
+        return server;
+    }
+
+    /**
+     * @return whether a benchmark server is running in this JVM
+     */
+    public static boolean isRunning() {
+        return RUNNING.get() > 0;
+    }
+
+    /**
+     * @return the URL of the REST API, without trailing slash
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + tomcat.getConnector().getLocalPort() + CONTEXT_PATH;
+    }
+
+    @Override
+    public void close() throws LifecycleException {
+        try {
+            tomcat.stop();
+            tomcat.destroy();
+        } finally {
+            RUNNING.decrementAndGet();
+            FileUtils.deleteQuietly(baseDir);
+        }
+    }
+}
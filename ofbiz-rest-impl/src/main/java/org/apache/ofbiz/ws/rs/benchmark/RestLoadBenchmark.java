@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.ws.rs.security.limit.RateLimiter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Load benchmark of the REST API running in a {@link RestBenchmarkServer}.
+ * <p>
+ * Each workload is run by <code>rest.benchmark.threads</code> concurrent clients for a warm up period, then for
+ * the measured period, all settings being read from restBenchmark.properties:
+ * <ul>
+ * <li>GET_JWT: GET of the restBenchmarkEcho stub service returning <code>rest.benchmark.listSize</code> records,
+ * with a bearer token</li>
+ * <li>POST_JWT: POST of the restBenchmarkStore stub service, with a bearer token</li>
+ * <li>TOKEN_BASIC: POST to /auth/token with Basic authentication</li>
+ * </ul>
+ * The report gives, per workload, the throughput, the latency percentiles, the errors and the calls rejected
+ * by the rate limits (HTTP 429), and the bytes allocated per request by the whole JVM and by the server
+ * threads only, the client threads allocations being measured apart. The calls rejected by the rate limits are
+ * left out of the other figures, which measure the service path only.
+ * <p>
+ * The benchmark takes a minute or more, it is only run when <code>rest.benchmark.enabled</code> is set.
+ */
+public final class RestLoadBenchmark {
+
+    private static final String MODULE = RestLoadBenchmark.class.getName();
+    private static final String CONFIG = "restBenchmark.properties";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String baseUrl;
+    private final int threads;
+    private final long warmupMillis;
+    private final long durationMillis;
+    private final String username;
+    private final String password;
+    private final int listSize;
+
+    public RestLoadBenchmark(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.threads = UtilProperties.getPropertyAsInteger(CONFIG, "rest.benchmark.threads", 8);
+        this.warmupMillis = TimeUnit.SECONDS.toMillis(UtilProperties.getPropertyAsInteger(CONFIG, "rest.benchmark.warmupSeconds", 5));
+        this.durationMillis = TimeUnit.SECONDS.toMillis(UtilProperties.getPropertyAsInteger(CONFIG, "rest.benchmark.durationSeconds", 20));
+        this.username = UtilProperties.getPropertyValue(CONFIG, "rest.benchmark.username", "admin");
+        this.password = UtilProperties.getPropertyValue(CONFIG, "rest.benchmark.password", "ofbiz");
+        this.listSize = UtilProperties.getPropertyAsInteger(CONFIG, "rest.benchmark.listSize", 100);
+    }
+
+    /**
+     * @return whether the benchmark is enabled, by <code>rest.benchmark.enabled</code> in restBenchmark.properties
+     * or as a system property
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("rest.benchmark.enabled") || UtilProperties.getPropertyAsBoolean(CONFIG, "rest.benchmark.enabled", false);
+    }
+
+    /**
+     * Runs the workloads listed by <code>rest.benchmark.workloads</code>.
+     * @return the report of each workload, by name
+     */
+    public Map<String, Map<String, Object>> run() throws Exception {
+        if (RateLimiter.isEnabled()) {
+            Debug.logWarning("The REST rate limits are enabled, set rest.limit.enabled=false to measure the throughput", MODULE);
+        }
+        String token = requestToken();
+        Map<String, Map<String, Object>> reports = new LinkedHashMap<>();
+        String workloads = UtilProperties.getPropertyValue(CONFIG, "rest.benchmark.workloads", "GET_JWT,POST_JWT,TOKEN_BASIC");
+        for (String workloadName : workloads.split(",")) {
+            Workload workload = Workload.valueOf(workloadName.trim());
+            run(workload, token, warmupMillis);
+            Map<String, Object> report = run(workload, token, durationMillis);
+            Debug.logInfo("REST benchmark " + workload + ": " + report, MODULE);
+            reports.put(workload.name(), report);
+        }
+        return reports;
+    }
+
+    private Map<String, Object> run(Workload workload, String token, long millis) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = getAllocatedBytes(threadBean);
+        long deadline = System.currentTimeMillis() + millis;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Client>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> new Client(workload, token).run(deadline, threadBean)));
+            }
+            List<Client> clients = new ArrayList<>();
+            for (Future<Client> future : futures) {
+                clients.add(future.get());
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            long allocated = getAllocatedBytes(threadBean) - allocatedBefore;
+            return report(clients, elapsedNanos, allocated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, Object> report(List<Client> clients, long elapsedNanos, long allocated) {
+        int count = 0;
+        int errors = 0;
+        int throttled = 0;
+        long clientAllocated = 0;
+        for (Client client : clients) {
+            count += client.count;
+            errors += client.errors;
+            throttled += client.throttled;
+            clientAllocated += client.allocatedBytes;
+        }
+        long[] latencies = new long[count];
+        int position = 0;
+        for (Client client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, position, client.count);
+            position += client.count;
+        }
+        Arrays.sort(latencies);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", count);
+        report.put("errors", errors);
+        report.put("throttled", throttled);
+        report.put("throttledRatio", count + throttled > 0 ? (double) throttled / (count + throttled) : 0.0);
+        report.put("requestsPerSecond", count / (elapsedNanos / 1e9));
+        for (double percentile : PERCENTILES) {
+            int index = (int) Math.max(0, Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1));
+            report.put("p" + percentile + "Millis", count > 0 ? latencies[index] / 1e6 : 0);
+        }
+        report.put("maxMillis", count > 0 ? latencies[count - 1] / 1e6 : 0);
+        report.put("allocatedBytesPerRequest", count > 0 ? allocated / count : 0);
+        report.put("serverAllocatedBytesPerRequest", count > 0 ? (allocated - clientAllocated) / count : 0);
+        return report;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the live threads; threads ended in between are not counted.
+     */
+    private static long getAllocatedBytes(com.sun.management.ThreadMXBean threadBean) {
+        long total = 0;
+        for (long allocated : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private String requestToken() throws IOException {
+        HttpURLConnection connection = open(baseUrl + "/auth/token", "POST");
+        connection.setRequestProperty("Authorization", basicAuthorization());
+        connection.setDoOutput(true);
+        connection.getOutputStream().close();
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unable to get a token for " + username + ": HTTP " + connection.getResponseCode());
+        }
+        try (InputStream input = connection.getInputStream()) {
+            Map<String, Object> response = MAPPER.readValue(input, new TypeReference<Map<String, Object>>() { });
+            return (String) ((Map<?, ?>) response.get("data")).get("access_token");
+        }
+    }
+
+    private String basicAuthorization() {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        return connection;
+    }
+
+    private enum Workload {
+        GET_JWT, POST_JWT, TOKEN_BASIC
+    }
+
+    /**
+     * A client thread sending requests of a workload until the deadline, recording their latencies.
+     */
+    private final class Client {
+        private final Workload workload;
+        private final String token;
+        private final byte[] buffer = new byte[8192];
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+        private int throttled;
+        private long allocatedBytes;
+
+        private Client(Workload workload, String token) {
+            this.workload = workload;
+            this.token = token;
+        }
+
+        private Client run(long deadline, com.sun.management.ThreadMXBean threadBean) {
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            String getUrl = baseUrl + "/services/restBenchmarkEcho?inParams="
+                    + urlEncode("{\"message\":\"benchmark\",\"size\":" + listSize + "}");
+            byte[] postBody = "{\"item\":{\"name\":\"benchmark\",\"amount\":10.5}}".getBytes(StandardCharsets.UTF_8);
+            while (System.currentTimeMillis() < deadline) {
+                long start = System.nanoTime();
+                int status;
+                try {
+                    switch (workload) {
+                    case GET_JWT:
+                        status = send(open(getUrl, "GET"), "Bearer " + token, null);
+                        break;
+                    case POST_JWT:
+                        status = send(open(baseUrl + "/services/restBenchmarkStore", "POST"), "Bearer " + token, postBody);
+                        break;
+                    default:
+                        status = send(open(baseUrl + "/auth/token", "POST"), basicAuthorization(), new byte[0]);
+                        break;
+                    }
+                } catch (IOException e) {
+                    status = -1;
+                }
+                record(System.nanoTime() - start, status);
+            }
+            allocatedBytes = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            return this;
+        }
+
+        private int send(HttpURLConnection connection, String authorization, byte[] body) throws IOException {
+            connection.setRequestProperty("Authorization", authorization);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream output = connection.getOutputStream()) {
+                    output.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            // read the whole response so that the connection is kept alive and reused
+            try (InputStream input = status < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream()) {
+                if (input != null) {
+                    while (input.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+            }
+            return status;
+        }
+
+        private void record(long nanos, int status) {
+            if (status == 429) {
+                // the rejections of the rate limits would measure the limiter rather than the service path
+                throttled++;
+                return;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
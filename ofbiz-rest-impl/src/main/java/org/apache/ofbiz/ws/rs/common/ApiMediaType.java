@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.common;
+
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Media types of the binary representations offered next to JSON.
+ */
+public final class ApiMediaType {
+
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+    public static final String APPLICATION_CBOR = "application/cbor";
+    public static final MediaType APPLICATION_SMILE_TYPE = MediaType.valueOf(APPLICATION_SMILE);
+    public static final MediaType APPLICATION_CBOR_TYPE = MediaType.valueOf(APPLICATION_CBOR);
+
+    private static final MediaType[] RESPONSE_TYPES = {MediaType.APPLICATION_JSON_TYPE, APPLICATION_SMILE_TYPE, APPLICATION_CBOR_TYPE};
+
+    private ApiMediaType() {
+
+    }
+
+    /**
+     * Selects the representation of a response, JSON, Smile or CBOR, as the resources producing them all do.
+     * @param acceptableMediaTypes the acceptable media types of the request, by decreasing preference
+     * @return the first representation accepted, JSON if none is
+     */
+    public static MediaType select(List<MediaType> acceptableMediaTypes) {
+        for (MediaType acceptable : acceptableMediaTypes) {
+            for (MediaType type : RESPONSE_TYPES) {
+                if (acceptable.isCompatible(type)) {
+                    return type;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON_TYPE;
+    }
+}
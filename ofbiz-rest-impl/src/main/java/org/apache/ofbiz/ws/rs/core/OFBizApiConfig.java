@@ -22,10 +22,21 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.ws.rs.metrics.MetricsFilter;
+import org.apache.ofbiz.ws.rs.metrics.MetricsReleaseListener;
+import org.apache.ofbiz.ws.rs.openapi.OpenApiReloadListener;
+import org.apache.ofbiz.ws.rs.security.limit.RateLimitFilter;
+import org.apache.ofbiz.ws.rs.security.limit.RateLimitReleaseListener;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.glassfish.jersey.logging.LoggingFeature;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.filter.EncodingFilter;
+
+import com.fasterxml.jackson.jaxrs.cbor.JacksonCBORProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
 
 public class OFBizApiConfig extends ResourceConfig {
     public OFBizApiConfig() {
@@ -35,6 +46,14 @@ public class OFBizApiConfig extends ResourceConfig {
         //packages("io.swagger.v3.jaxrs2.integration.resources"); //commenting it out to generate customized OpenApi Spec
         register(JacksonFeature.class);
         register(MultiPartFeature.class);
+        register(JacksonSmileProvider.class);
+        register(JacksonCBORProvider.class);
+        EncodingFilter.enableFor(this, GZipEncoder.class, DeflateEncoder.class);
+        register(OpenApiReloadListener.class);
+        register(RateLimitFilter.class);
+        register(RateLimitReleaseListener.class);
+        register(MetricsFilter.class);
+        register(MetricsReleaseListener.class);
         if (Debug.verboseOn()) {
             register(new LoggingFeature(Logger.getLogger(LoggingFeature.DEFAULT_LOGGER_NAME), Level.INFO,
                     LoggingFeature.Verbosity.PAYLOAD_ANY, 10000));
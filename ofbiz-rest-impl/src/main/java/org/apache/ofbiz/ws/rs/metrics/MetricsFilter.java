@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.metrics;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.servlet.ServletContext;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.ws.rs.ServiceCatalog;
+
+/**
+ * Records the {@link RestMetrics} of the {@link Monitored} resources.
+ * <p>
+ * Runs before the authentication filters so that rejected calls are counted too. The processing time ends
+ * when the response filters run, the entity serialization being timed by the writer interceptor. The call stays in
+ * progress until the {@link MetricsReleaseListener} sees it finished, whatever the outcome. The service
+ * label is the name of the invoked service when such a service is defined, <code>unknown</code> otherwise, so that
+ * calls to made-up service names, rejected or not, cannot add series.
+ */
+@Monitored
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String START_PROPERTY = MetricsFilter.class.getName() + ".start";
+    private static final String LABELS_PROPERTY = MetricsFilter.class.getName() + ".labels";
+    static final String IN_PROGRESS_PROPERTY = MetricsFilter.class.getName() + ".inProgress";
+    private static final String UNKNOWN_SERVICE = "unknown";
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Context
+    private ServletContext servletContext;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+        RestMetrics.incrementInProgress(requestContext.getMethod());
+        requestContext.setProperty(IN_PROGRESS_PROPERTY, requestContext.getMethod());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        Object start = requestContext.getProperty(START_PROPERTY);
+        if (!(start instanceof Long)) {
+            return;
+        }
+        String method = requestContext.getMethod();
+        String resource = resourceInfo.getResourceMethod() != null ? resourceInfo.getResourceMethod().getName() : "";
+        String service = getServiceLabel(requestContext.getUriInfo().getPathParameters().getFirst("serviceName"));
+        RestMetrics.recordRequest(resource, service, method, responseContext.getStatus(), System.nanoTime() - (Long) start);
+        requestContext.setProperty(LABELS_PROPERTY, new String[] {resource, service, method});
+    }
+
+    /**
+     * @return the service name if the service is defined, {@link #UNKNOWN_SERVICE} otherwise, and an empty label
+     * for the resources not invoking a service
+     */
+    private String getServiceLabel(String serviceName) {
+        if (serviceName == null) {
+            return "";
+        }
+        LocalDispatcher dispatcher = (LocalDispatcher) servletContext.getAttribute("dispatcher");
+        if (dispatcher == null) {
+            return UNKNOWN_SERVICE;
+        }
+        DispatchContext dctx = dispatcher.getDispatchContext();
+        if (ServiceCatalog.get(dctx).getService(serviceName) != null) {
+            return serviceName;
+        }
+        try {
+            dctx.getModelService(serviceName);
+            return serviceName;
+        } catch (GenericServiceException e) {
+            return UNKNOWN_SERVICE;
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            Object labels = context.getProperty(LABELS_PROPERTY);
+            if (labels instanceof String[]) {
+                String[] values = (String[]) labels;
+                RestMetrics.recordSerialization(values[0], values[1], values[2], System.nanoTime() - start);
+            }
+        }
+    }
+}
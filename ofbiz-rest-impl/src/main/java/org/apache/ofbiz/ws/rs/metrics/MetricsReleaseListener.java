@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.metrics;
+
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * Ends the calls in progress counted by the {@link MetricsFilter} when Jersey has finished processing them,
+ * including the calls ending with an unmapped exception or a client disconnection.
+ */
+public class MetricsReleaseListener implements ApplicationEventListener {
+
+    private static final RequestEventListener DECREMENT_ON_FINISH = MetricsReleaseListener::decrementInProgress;
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return DECREMENT_ON_FINISH;
+    }
+
+    private static void decrementInProgress(RequestEvent event) {
+        if (event.getType() == RequestEvent.Type.FINISHED) {
+            ContainerRequest request = event.getContainerRequest();
+            Object method = request.getProperty(MetricsFilter.IN_PROGRESS_PROPERTY);
+            if (method instanceof String) {
+                request.removeProperty(MetricsFilter.IN_PROGRESS_PROPERTY);
+                RestMetrics.decrementInProgress((String) method);
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.ws.rs.ServiceExecutor;
+
+/**
+ * Counters and latency histograms of the REST API calls, written in the Prometheus text exposition format.
+ * <p>
+ * Calls are labelled by resource method, service name, HTTP method and status. The time spent writing the
+ * response entity (JSON or binary serialization, streamed results included) is recorded apart from the time
+ * spent processing the request, and the service execution time is recorded per service and outcome by the
+ * {@link org.apache.ofbiz.ws.rs.ServiceRequestProcessor}.
+ */
+public final class RestMetrics {
+
+    /** Upper bounds, in seconds, of the histogram buckets; the +Inf bucket counts all observations. */
+    private static final double[] BUCKET_BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final Map<List<String>, LongAdder> REQUESTS = new ConcurrentSkipListMap<>(RestMetrics::compareLabels);
+    private static final Map<List<String>, Histogram> REQUEST_DURATIONS = new ConcurrentSkipListMap<>(RestMetrics::compareLabels);
+    private static final Map<List<String>, Histogram> SERIALIZATION_DURATIONS = new ConcurrentSkipListMap<>(RestMetrics::compareLabels);
+    private static final Map<List<String>, Histogram> SERVICE_DURATIONS = new ConcurrentSkipListMap<>(RestMetrics::compareLabels);
+    private static final Map<String, LongAdder> IN_PROGRESS = new ConcurrentHashMap<>();
+
+    private static final String[] REQUEST_LABELS = {"resource", "service", "method", "status"};
+    private static final String[] DURATION_LABELS = {"resource", "service", "method"};
+    private static final String[] SERVICE_LABELS = {"service", "outcome"};
+
+    private RestMetrics() { }
+
+    /**
+     * Records a call once its response is ready to be written, with its processing time.
+     */
+    public static void recordRequest(String resource, String service, String method, int status, long nanos) {
+        REQUESTS.computeIfAbsent(Arrays.asList(resource, service, method, String.valueOf(status)), k -> new LongAdder()).increment();
+        REQUEST_DURATIONS.computeIfAbsent(Arrays.asList(resource, service, method), k -> new Histogram()).observe(nanos);
+    }
+
+    public static void recordSerialization(String resource, String service, String method, long nanos) {
+        SERIALIZATION_DURATIONS.computeIfAbsent(Arrays.asList(resource, service, method), k -> new Histogram()).observe(nanos);
+    }
+
+    /**
+     * Records the execution of a service, the outcome being success, error or exception.
+     */
+    public static void recordServiceExecution(String service, String outcome, long nanos) {
+        SERVICE_DURATIONS.computeIfAbsent(Arrays.asList(service, outcome), k -> new Histogram()).observe(nanos);
+    }
+
+    public static void incrementInProgress(String method) {
+        IN_PROGRESS.computeIfAbsent(method, k -> new LongAdder()).increment();
+    }
+
+    public static void decrementInProgress(String method) {
+        IN_PROGRESS.computeIfAbsent(method, k -> new LongAdder()).decrement();
+    }
+
+    public static void reset() {
+        REQUESTS.clear();
+        REQUEST_DURATIONS.clear();
+        SERIALIZATION_DURATIONS.clear();
+        SERVICE_DURATIONS.clear();
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text exposition format, version 0.0.4.
+     */
+    public static void write(Writer writer) throws IOException {
+        writer.write("# HELP ofbiz_rest_requests_total Number of REST API calls.\n");
+        writer.write("# TYPE ofbiz_rest_requests_total counter\n");
+        for (Map.Entry<List<String>, LongAdder> entry : REQUESTS.entrySet()) {
+            writer.write("ofbiz_rest_requests_total" + formatLabels(REQUEST_LABELS, entry.getKey(), null) + " " + entry.getValue().sum() + "\n");
+        }
+        writer.write("# HELP ofbiz_rest_requests_in_progress Number of REST API calls in progress.\n");
+        writer.write("# TYPE ofbiz_rest_requests_in_progress gauge\n");
+        for (Map.Entry<String, LongAdder> entry : IN_PROGRESS.entrySet()) {
+            writer.write("ofbiz_rest_requests_in_progress{method=\"" + escape(entry.getKey()) + "\"} " + entry.getValue().sum() + "\n");
+        }
+        if (ServiceExecutor.isEnabled()) {
+            writer.write("# HELP ofbiz_rest_executor_in_flight Number of service invocations running on virtual threads.\n");
+            writer.write("# TYPE ofbiz_rest_executor_in_flight gauge\n");
+            writer.write("ofbiz_rest_executor_in_flight " + ServiceExecutor.getInFlight() + "\n");
+            writer.write("# HELP ofbiz_rest_executor_rejected_total Number of REST API calls rejected because too many were in flight.\n");
+            writer.write("# TYPE ofbiz_rest_executor_rejected_total counter\n");
+            writer.write("ofbiz_rest_executor_rejected_total " + ServiceExecutor.getRejected() + "\n");
+        }
+        writeHistograms(writer, "ofbiz_rest_request_duration_seconds",
+                "Time spent processing REST API calls, response serialization excluded.", DURATION_LABELS, REQUEST_DURATIONS);
+        writeHistograms(writer, "ofbiz_rest_serialization_duration_seconds",
+                "Time spent writing the REST API response entities.", DURATION_LABELS, SERIALIZATION_DURATIONS);
+        writeHistograms(writer, "ofbiz_rest_service_duration_seconds",
+                "Execution time of the services invoked through the REST API.", SERVICE_LABELS, SERVICE_DURATIONS);
+    }
+
+    private static void writeHistograms(Writer writer, String name, String help, String[] labelNames, Map<List<String>, Histogram> histograms)
+            throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " histogram\n");
+        for (Map.Entry<List<String>, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                String le = Double.toString(BUCKET_BOUNDS[i]);
+                writer.write(name + "_bucket" + formatLabels(labelNames, entry.getKey(), le) + " " + cumulative + "\n");
+            }
+            cumulative += histogram.buckets[BUCKET_BOUNDS.length].sum();
+            writer.write(name + "_bucket" + formatLabels(labelNames, entry.getKey(), "+Inf") + " " + cumulative + "\n");
+            writer.write(name + "_sum" + formatLabels(labelNames, entry.getKey(), null) + " " + histogram.sumSeconds.sum() + "\n");
+            writer.write(name + "_count" + formatLabels(labelNames, entry.getKey(), null) + " " + cumulative + "\n");
+        }
+    }
+
+    private static String formatLabels(String[] names, List<String> values, String le) {
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(names[i]).append("=\"").append(escape(values.get(i))).append('"');
+        }
+        if (le != null) {
+            labels.append(",le=\"").append(le).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static int compareLabels(List<String> first, List<String> second) {
+        for (int i = 0; i < first.size(); i++) {
+            int comparison = String.valueOf(first.get(i)).compareTo(String.valueOf(second.get(i)));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+        private final DoubleAdder sumSeconds = new DoubleAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void observe(long nanos) {
+            double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && seconds > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sumSeconds.add(seconds);
+        }
+    }
+}
@@ -28,12 +28,10 @@ import javax.servlet.ServletContext;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Response;
 
-import org.apache.ofbiz.base.util.UtilValidate;
-import org.apache.ofbiz.service.DispatchContext;
-import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.webapp.WebAppUtil;
+import org.apache.ofbiz.ws.rs.ServiceCatalog;
 import org.apache.ofbiz.ws.rs.listener.ApiContextListener;
 import org.apache.ofbiz.ws.rs.util.OpenApiUtil;
 
@@ -101,46 +99,35 @@ public final class OFBizOpenApiReader extends Reader implements OpenApiReader {
         addPredefinedSchemas();
         ServletContext servletContext = ApiContextListener.getApplicationCntx();
         LocalDispatcher dispatcher = WebAppUtil.getDispatcher(servletContext);
-        DispatchContext context = dispatcher.getDispatchContext();
-        Set<String> serviceNames = context.getAllServiceNames();
-
-        for (String serviceName : serviceNames) {
-            ModelService service = null;
-            try {
-                service = context.getModelService(serviceName);
-            } catch (GenericServiceException e) {
-                e.printStackTrace();
-            }
-            if (service != null && service.isExport() && UtilValidate.isNotEmpty(service.getAction())) {
-                SecurityRequirement security = new SecurityRequirement();
-                security.addList("jwtToken");
-                final Operation operation = new Operation().summary(service.getDescription())
-                        .description(service.getDescription()).addTagsItem("Exported Services").operationId(service.getName())
-                        .deprecated(false).addSecurityItem(security);
-
-                PathItem pathItemObject = new PathItem();
-
-                if (service.getAction().equalsIgnoreCase(HttpMethod.GET)) {
-                    final QueryParameter serviceInParam = (QueryParameter) new QueryParameter().required(true)
-                            .description("Service In Parameters in JSON").name("inParams");
-                    Schema<?> refSchema = new Schema<>();
-                    refSchema.$ref("#/components/schemas/" + "api.request." + service.getName());
-                    serviceInParam.schema(refSchema);
-                    operation.addParametersItem(serviceInParam);
-
-                } else if (service.getAction().equalsIgnoreCase(HttpMethod.POST)) {
-                    RequestBody request = new RequestBody().description("Request Body for service " + service.getName())
-                            .content(new Content().addMediaType(javax.ws.rs.core.MediaType.APPLICATION_JSON,
-                                    new MediaType().schema(new Schema<>().$ref("#/components/schemas/" + "api.request." + service.getName()))));
-                    operation.setRequestBody(request);
-                }
-                addServiceOutSchema(service);
-                addServiceInSchema(service);
-                addServiceOperationApiResponses(service, operation);
-                setPathItemOperation(pathItemObject, service.getAction().toUpperCase(), operation);
-                paths.addPathItem("/services/" + service.getName(), pathItemObject);
-
+        for (ServiceCatalog.ExportedService exportedService : ServiceCatalog.get(dispatcher.getDispatchContext()).getServices()) {
+            ModelService service = exportedService.getModelService();
+            SecurityRequirement security = new SecurityRequirement();
+            security.addList("jwtToken");
+            final Operation operation = new Operation().summary(service.getDescription())
+                    .description(service.getDescription()).addTagsItem("Exported Services").operationId(service.getName())
+                    .deprecated(false).addSecurityItem(security);
+
+            PathItem pathItemObject = new PathItem();
+
+            if (service.getAction().equalsIgnoreCase(HttpMethod.GET)) {
+                final QueryParameter serviceInParam = (QueryParameter) new QueryParameter().required(true)
+                        .description("Service In Parameters in JSON").name("inParams");
+                Schema<?> refSchema = new Schema<>();
+                refSchema.$ref("#/components/schemas/" + "api.request." + service.getName());
+                serviceInParam.schema(refSchema);
+                operation.addParametersItem(serviceInParam);
+
+            } else if (service.getAction().equalsIgnoreCase(HttpMethod.POST)) {
+                RequestBody request = new RequestBody().description("Request Body for service " + service.getName())
+                        .content(new Content().addMediaType(javax.ws.rs.core.MediaType.APPLICATION_JSON,
+                                new MediaType().schema(new Schema<>().$ref("#/components/schemas/" + "api.request." + service.getName()))));
+                operation.setRequestBody(request);
             }
+            addServiceOutSchema(service);
+            addServiceInSchema(service);
+            addServiceOperationApiResponses(service, operation);
+            setPathItemOperation(pathItemObject, service.getAction().toUpperCase(), operation);
+            paths.addPathItem("/services/" + service.getName(), pathItemObject);
         }
 
         openApi.setPaths(paths);
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.openapi;
+
+import org.apache.ofbiz.ws.rs.ServiceCatalog;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+
+/**
+ * Drops the cached OpenAPI specifications and the catalog of the exported services whenever the REST resources are (re)loaded.
+ */
+public class OpenApiReloadListener implements ContainerLifecycleListener {
+
+    @Override
+    public void onStartup(Container container) {
+        OpenApiSpecCache.clear();
+        ServiceCatalog.clear();
+    }
+
+    @Override
+    public void onReload(Container container) {
+        OpenApiSpecCache.clear();
+        ServiceCatalog.clear();
+    }
+
+    @Override
+    public void onShutdown(Container container) {
+        OpenApiSpecCache.clear();
+        ServiceCatalog.clear();
+    }
+}
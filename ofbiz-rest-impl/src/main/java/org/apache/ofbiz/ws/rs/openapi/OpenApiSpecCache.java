@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.openapi;
+
+import java.util.concurrent.Callable;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.ws.rs.ServiceCatalog;
+import org.apache.ofbiz.ws.rs.util.DigestUtil;
+
+/**
+ * Cache of the serialized OpenAPI specification, per format and server URL.
+ * <p>
+ * Each entry remembers the {@link ServiceCatalog} of the exported services it was built from, and is
+ * rebuilt as soon as the catalog is, that is when the service definitions are reloaded. Entries are also
+ * dropped when the Jersey application (re)loads its resources, see {@link OpenApiReloadListener}, and when
+ * the <code>rest.OpenApiSpec</code> cache is cleared.
+ */
+public final class OpenApiSpecCache {
+
+    private static final String MODULE = OpenApiSpecCache.class.getName();
+    private static final UtilCache<String, OpenApiSpec> SPEC_CACHE = UtilCache.createUtilCache("rest.OpenApiSpec", 0, 0);
+
+    private OpenApiSpecCache() { }
+
+    /**
+     * Returns the cached specification for the given format and server URL, building it when it is
+     * missing or stale. Concurrent requests may build it more than once but always get a consistent entry.
+     */
+    public static OpenApiSpec getSpec(String type, String serverUrl, DispatchContext dctx, Callable<String> builder) throws Exception {
+        String key = type + "::" + serverUrl;
+        OpenApiSpec spec = SPEC_CACHE.get(key);
+        ServiceCatalog catalog = ServiceCatalog.get(dctx);
+        if (spec != null && spec.catalog == catalog) {
+            return spec;
+        }
+        spec = new OpenApiSpec(builder.call(), catalog);
+        SPEC_CACHE.put(key, spec);
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Built OpenAPI specification " + key + " with ETag " + spec.getEntityTag(), MODULE);
+        }
+        return spec;
+    }
+
+    public static void clear() {
+        SPEC_CACHE.clear();
+    }
+
+    /**
+     * A serialized OpenAPI specification along with its entity tag.
+     * <p>
+     * The tag is weak: the specification may be sent gzip or deflate encoded by the EncodingFilter, and those
+     * representations are not byte for byte the same.
+     */
+    public static final class OpenApiSpec {
+        private final String content;
+        private final EntityTag entityTag;
+        private final ServiceCatalog catalog;
+
+        private OpenApiSpec(String content, ServiceCatalog catalog) {
+            this.content = content;
+            this.entityTag = new EntityTag(DigestUtil.sha256Hex(content), true);
+            this.catalog = catalog;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public EntityTag getEntityTag() {
+            return entityTag;
+        }
+    }
+}
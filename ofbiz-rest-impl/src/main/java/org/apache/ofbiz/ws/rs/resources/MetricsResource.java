@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.resources;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.security.Security;
+import org.apache.ofbiz.ws.rs.listener.ApiContextListener;
+import org.apache.ofbiz.ws.rs.metrics.RestMetrics;
+import org.apache.ofbiz.ws.rs.security.Secured;
+
+/**
+ * Exposes the {@link RestMetrics} in the Prometheus text format to the users having the OFBTOOLS_VIEW permission.
+ */
+@Secured
+@Path("/metrics")
+@Provider
+public class MetricsResource extends OFBizResource {
+
+    private static final String PROMETHEUS_TEXT_FORMAT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    /**
+     * @return the metrics of the REST API calls
+     */
+    @GET
+    @Produces(PROMETHEUS_TEXT_FORMAT)
+    public Response getMetrics() {
+        GenericValue userLogin = (GenericValue) httpRequest.getAttribute("userLogin");
+        Security security = (Security) ApiContextListener.getApplicationCntx().getAttribute("security");
+        if (security == null || !security.hasEntityPermission("OFBTOOLS", "_VIEW", userLogin)) {
+            throw new ForbiddenException("You do not have permission to view the REST API metrics.");
+        }
+        StreamingOutput metrics = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            RestMetrics.write(writer);
+            writer.flush();
+        };
+        return Response.ok(metrics, PROMETHEUS_TEXT_FORMAT).build();
+    }
+}
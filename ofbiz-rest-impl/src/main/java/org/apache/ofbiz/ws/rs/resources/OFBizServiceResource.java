@@ -24,10 +24,11 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.POST;
@@ -35,105 +36,281 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.Provider;
 
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.GenericEntityException;
-import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.service.GenericServiceException;
-import org.apache.ofbiz.service.LocalDispatcher;
-import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.ws.rs.ApiServiceRequest;
+import org.apache.ofbiz.ws.rs.AsyncServiceProcessor;
+import org.apache.ofbiz.ws.rs.BatchRequestProcessor;
+import org.apache.ofbiz.ws.rs.FieldSelection;
+import org.apache.ofbiz.ws.rs.PageRequest;
+import org.apache.ofbiz.ws.rs.ResultPaginator;
+import org.apache.ofbiz.ws.rs.ServiceCatalog;
+import org.apache.ofbiz.ws.rs.ServiceExecutor;
 import org.apache.ofbiz.ws.rs.ServiceRequestProcessor;
+import org.apache.ofbiz.ws.rs.ServiceResultCache;
+import org.apache.ofbiz.ws.rs.common.ApiMediaType;
+import org.apache.ofbiz.ws.rs.metrics.Monitored;
 import org.apache.ofbiz.ws.rs.response.Success;
 import org.apache.ofbiz.ws.rs.security.Secured;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonConfig;
 
 @Secured
+@Monitored
 @Path("/services")
 @Provider
 public class OFBizServiceResource extends OFBizResource {
 
+    /** The cacheable responses are negotiated on their media type and their encoding. */
+    private static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
     @Context
     private UriInfo uriInfo;
 
     @Context
     private HttpServletRequest httpRequest;
 
+    @Context
+    private HttpHeaders httpHeaders;
+
     /**
+     * Lists the exported services from the {@link ServiceCatalog}, optionally filtered by name and HTTP method
+     * and paginated; the total number of matching services is returned in the X-Total-Count header.
+     * @param nameFilter case insensitive text contained in the service names
+     * @param httpMethod
+     * @param offset
+     * @param limit maximum number of services returned, 0 for all
      * @return
-     * @throws GenericServiceException
      */
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response serviceList() throws GenericServiceException {
-        LocalDispatcher dispatcher = getDispatcher();
-        DispatchContext context = dispatcher.getDispatchContext();
-        Set<String> serviceNames = context.getAllServiceNames();
-        List<Map<String, Object>> serviceList = new ArrayList<>();
-        for (String serviceName : serviceNames) {
-            ModelService service = context.getModelService(serviceName);
-            if (service != null && service.isExport() && UtilValidate.isNotEmpty(service.getAction())) {
-                Map<String, Object> serviceMap = new LinkedHashMap<String, Object>();
-                serviceMap.put("name", service.getName());
-                serviceMap.put("description", service.getDescription());
-                Link selfLink = Link.fromUriBuilder(uriInfo.getAbsolutePathBuilder().path(service.getName()))
-                        .type(service.getAction()).rel("self").build();
-                serviceMap.put("link", selfLink);
-                serviceList.add(serviceMap);
-            }
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
+    public Response serviceList(@QueryParam(value = "filter") String nameFilter, @QueryParam(value = "httpMethod") String httpMethod,
+            @QueryParam(value = "offset") @DefaultValue("0") int offset, @QueryParam(value = "limit") @DefaultValue("0") int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new BadRequestException("The offset and the limit cannot be negative.");
+        }
+        List<ServiceCatalog.ExportedService> services = ServiceCatalog.get(getDispatcher().getDispatchContext()).find(nameFilter, httpMethod);
+        int fromIndex = Math.min(offset, services.size());
+        int toIndex = limit > 0 ? Math.min(fromIndex + limit, services.size()) : services.size();
+        List<Map<String, Object>> serviceList = new ArrayList<>(toIndex - fromIndex);
+        for (ServiceCatalog.ExportedService service : services.subList(fromIndex, toIndex)) {
+            Map<String, Object> serviceMap = new LinkedHashMap<String, Object>();
+            serviceMap.put("name", service.getName());
+            serviceMap.put("description", service.getDescription());
+            Link selfLink = Link.fromUriBuilder(uriInfo.getAbsolutePathBuilder().path(service.getName()))
+                    .type(service.getHttpMethod()).rel("self").build();
+            serviceMap.put("link", selfLink);
+            serviceList.add(serviceMap);
         }
         Success success = new Success(Response.Status.OK.getStatusCode(), Response.Status.OK.getReasonPhrase(), Response.Status.OK.getReasonPhrase(),
                 serviceList);
-        return Response.status(Response.Status.OK).type(MediaType.APPLICATION_JSON).entity(success).build();
+        Response.ResponseBuilder builder = Response.status(Response.Status.OK).entity(success).header("X-Total-Count", services.size());
+        if (limit > 0 && toIndex < services.size()) {
+            builder.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder().replaceQueryParam("offset", toIndex)).rel("next").build());
+        }
+        if (limit > 0 && fromIndex > 0) {
+            builder.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder().replaceQueryParam("offset", Math.max(0, fromIndex - limit)))
+                    .rel("prev").build());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Runs an ordered list of service invocations, see {@link BatchRequestProcessor}.
+     * @param batchRequest
+     * @return
+     */
+    @POST
+    @Path("/_batch")
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
+    public Response invokeServiceBatch(HashMap<String, Object> batchRequest) {
+        if (UtilValidate.isEmpty(batchRequest)) {
+            throw new BadRequestException("The request body is missing.");
+        }
+        BatchRequestProcessor processor = new BatchRequestProcessor();
+        return processor.process(batchRequest, getDispatcher(), httpRequest);
     }
 
     /**
+     * Responses of the services declared cacheable in rest.properties carry an ETag and a Cache-Control max-age,
+     * see {@link ServiceResultCache}; a request whose If-None-Match matches the ETag gets a 304 Not Modified.
+     * The limit, offset, cursor and sort query parameters return a page of the list of the result, see {@link ResultPaginator},
+     * and the fields query parameter selects the returned fields, see {@link FieldSelection}.
+     * The services that are not cacheable run on a virtual thread when enabled, see {@link ServiceExecutor}.
      * @param serviceRequest
      * @param serviceName
-     * @return
+     * @param request
+     * @param asyncResponse
      * @throws IOException
      * @throws GenericServiceException
      */
     @GET
     @Path("/{serviceName}")
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
     @Secured
-    public Response invokeServiceByGet(@QueryParam(value = "inParams") ApiServiceRequest serviceRequest,
-                                       @PathParam(value = "serviceName") String serviceName) throws IOException, GenericServiceException {
+    public void invokeServiceByGet(@QueryParam(value = "inParams") ApiServiceRequest serviceRequest,
+                                   @PathParam(value = "serviceName") String serviceName,
+                                   @Context Request request, @Suspended AsyncResponse asyncResponse) throws IOException, GenericServiceException {
         if (UtilValidate.isEmpty(serviceRequest) || UtilValidate.isEmpty(serviceRequest.getInParams())) {
             throw new BadRequestException("Missing Parameter: 'inParams'");
         }
+        PageRequest page = PageRequest.fromQueryParameters(uriInfo.getQueryParameters());
+        Integer maxAge = ServiceResultCache.getMaxAge(serviceName);
+        if (maxAge == null) {
+            executeService(asyncResponse, serviceName, HttpMethod.GET, serviceRequest.getInParams(), page);
+            return;
+        }
+        asyncResponse.resume(invokeCacheableService(serviceName, serviceRequest.getInParams(), page, maxAge, request));
+    }
+
+    private Response invokeCacheableService(String serviceName, Map<String, Object> inParams, PageRequest page, int maxAge, Request request)
+            throws GenericServiceException {
+        GenericValue userLogin = (GenericValue) httpRequest.getAttribute("userLogin");
+        String userLoginId = userLogin != null ? userLogin.getString("userLoginId") : null;
+        Map<String, Object> cacheKeyParams = inParams;
+        String fields = uriInfo.getQueryParameters().getFirst("fields");
+        if (page != null || fields != null) {
+            cacheKeyParams = new HashMap<>(cacheKeyParams);
+            cacheKeyParams.put("_page", page != null ? page.toString() : null);
+            cacheKeyParams.put("_fields", fields);
+        }
+        ServiceResultCache.CachedResult cached = ServiceResultCache.get(serviceName, userLoginId, cacheKeyParams);
+        if (cached != null) {
+            return conditionalResponse(request, cached.getSuccess(), cached.getEntityTag(), cached.getRemainingMaxAge());
+        }
+        Response response = invokeService(makeRequestContext(serviceName, HttpMethod.GET, inParams, page), uriInfo.getRequestUriBuilder());
+        if (response.getStatus() != Response.Status.OK.getStatusCode() || !(response.getEntity() instanceof Success)) {
+            // errors and streamed results are not cached
+            return response;
+        }
+        Success success = (Success) response.getEntity();
+        EntityTag entityTag = ServiceResultCache.getEntityTag(success);
+        ServiceResultCache.put(serviceName, userLoginId, cacheKeyParams, success, entityTag);
+        return conditionalResponse(request, success, entityTag, maxAge);
+    }
+
+    /**
+     * Runs a service with the {@link ServiceExecutor}; what the invocation needs from the request is read beforehand,
+     * on the container thread.
+     */
+    private void executeService(AsyncResponse asyncResponse, String serviceName, String httpVerb, Map<String, Object> inParams,
+            PageRequest page) {
+        Map<String, Object> requestContext = makeRequestContext(serviceName, httpVerb, inParams, page);
+        UriBuilder requestUriBuilder = uriInfo.getRequestUriBuilder();
+        ServiceExecutor.execute(asyncResponse, () -> invokeService(requestContext, requestUriBuilder));
+    }
+
+    private Map<String, Object> makeRequestContext(String serviceName, String httpVerb, Map<String, Object> inParams, PageRequest page) {
+        return UtilMisc.toMap("serviceName", serviceName, "httpVerb", httpVerb, "requestMap", inParams, "dispatcher", getDispatcher(),
+                "userLogin", httpRequest.getAttribute("userLogin"), "page", page,
+                "fields", FieldSelection.parse(uriInfo.getQueryParameters().getFirst("fields")),
+                "pretty", JacksonConfig.isPrettyRequested(uriInfo.getQueryParameters().getFirst(JacksonConfig.PRETTY_PARAM)),
+                "mediaType", ApiMediaType.select(httpHeaders.getAcceptableMediaTypes()));
+    }
+
+    private static Response invokeService(Map<String, Object> requestContext, UriBuilder requestUriBuilder) throws GenericServiceException {
         ServiceRequestProcessor processor = new ServiceRequestProcessor();
-        return processor.process(
-                UtilMisc.toMap("serviceName", serviceName, "httpVerb", HttpMethod.GET, "requestMap", serviceRequest.getInParams(), "dispatcher",
-                        getDispatcher(), "request", httpRequest));
+        Response response = processor.process(requestContext);
+        if (response.getEntity() instanceof Success && ((Success) response.getEntity()).getPagination() != null) {
+            return ResultPaginator.addPaginationLinks(Response.fromResponse(response), ((Success) response.getEntity()).getPagination(),
+                    requestUriBuilder).build();
+        }
+        return response;
+    }
+
+    private Response conditionalResponse(Request request, Success success, EntityTag entityTag, int maxAge) {
+        CacheControl cacheControl = ServiceResultCache.getCacheControl(maxAge);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).header(HttpHeaders.VARY, VARY).build();
+        }
+        Response.ResponseBuilder builder = Response.status(Response.Status.OK).entity(success).tag(entityTag).cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, VARY);
+        return ResultPaginator.addPaginationLinks(builder, success.getPagination(), uriInfo.getRequestUriBuilder()).build();
     }
 
     /**
+     * The limit, offset, cursor and sort query parameters return a page of the list of the result, see {@link ResultPaginator},
+     * and the fields query parameter selects the returned fields, see {@link FieldSelection}.
+     * The service runs on a virtual thread when enabled, see {@link ServiceExecutor}.
      * @param serviceInParams
      * @param serviceName
-     * @return
+     * @param async when true, the service is run by the job manager and a 202 Accepted response points to the job
+     * @param asyncResponse
      * @throws IOException
      * @throws GenericEntityException
      * @throws GenericServiceException
      */
     @POST
     @Path("/{serviceName}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response invokeServiceByPost(HashMap<String, Object> serviceInParams, @PathParam(value = "serviceName") String serviceName)
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
+    public void invokeServiceByPost(HashMap<String, Object> serviceInParams, @PathParam(value = "serviceName") String serviceName,
+            @QueryParam(value = "async") boolean async, @Suspended AsyncResponse asyncResponse)
             throws IOException, GenericEntityException, GenericServiceException {
         if (UtilValidate.isEmpty(serviceInParams)) {
             throw new BadRequestException("The request body is missing.");
         }
-        ServiceRequestProcessor processor = new ServiceRequestProcessor();
-        return processor.process(
-                UtilMisc.toMap("serviceName", serviceName, "httpVerb", HttpMethod.POST, "requestMap", serviceInParams, "dispatcher", getDispatcher(),
-                        "request", httpRequest));
+        if (async) {
+            asyncResponse.resume(getAsyncServiceProcessor().submit(serviceName, HttpMethod.POST, serviceInParams));
+            return;
+        }
+        executeService(asyncResponse, serviceName, HttpMethod.POST, serviceInParams, PageRequest.fromQueryParameters(uriInfo.getQueryParameters()));
+    }
+
+    /**
+     * @param jobId
+     * @return the status of a job submitted with async=true
+     * @throws GenericEntityException
+     */
+    @GET
+    @Path("/_jobs/{jobId}")
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
+    public Response getJobStatus(@PathParam(value = "jobId") String jobId) throws GenericEntityException {
+        return getAsyncServiceProcessor().getStatus(jobId);
+    }
+
+    /**
+     * @param jobId
+     * @return the result of a job submitted with async=true once it is finished
+     * @throws GenericEntityException
+     */
+    @GET
+    @Path("/_jobs/{jobId}/result")
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
+    public Response getJobResult(@PathParam(value = "jobId") String jobId) throws GenericEntityException {
+        return getAsyncServiceProcessor().getResult(jobId);
+    }
+
+    /**
+     * @param jobId
+     * @return
+     * @throws GenericEntityException
+     */
+    @DELETE
+    @Path("/_jobs/{jobId}")
+    @Produces({MediaType.APPLICATION_JSON, ApiMediaType.APPLICATION_SMILE, ApiMediaType.APPLICATION_CBOR})
+    public Response cancelJob(@PathParam(value = "jobId") String jobId) throws GenericEntityException {
+        return getAsyncServiceProcessor().cancel(jobId);
+    }
+
+    private AsyncServiceProcessor getAsyncServiceProcessor() {
+        return new AsyncServiceProcessor(getDispatcher(), (GenericValue) httpRequest.getAttribute("userLogin"),
+                uriInfo.getBaseUriBuilder().path(OFBizServiceResource.class).path("_jobs"));
     }
 }
@@ -29,15 +29,24 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.webapp.WebAppUtil;
 import org.apache.ofbiz.ws.rs.openapi.OFBizOpenApiReader;
 import org.apache.ofbiz.ws.rs.openapi.OFBizResourceScanner;
+import org.apache.ofbiz.ws.rs.openapi.OpenApiSpecCache;
+import org.apache.ofbiz.ws.rs.openapi.OpenApiSpecCache.OpenApiSpec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import io.swagger.v3.core.util.Json;
 import io.swagger.v3.core.util.Yaml;
@@ -69,11 +78,27 @@ public final class OpenApiResource {
     @GET
     @Produces({MediaType.APPLICATION_JSON, "application/yaml"})
     @Operation(hidden = true)
-    public Response getOpenApi(@Context HttpHeaders headers, @Context UriInfo uriInfo, @PathParam("type") String type)
+    public Response getOpenApi(@Context HttpHeaders headers, @Context UriInfo uriInfo, @Context Request req, @PathParam("type") String type)
             throws Exception {
+        boolean yaml = UtilValidate.isNotEmpty(type) && type.trim().equalsIgnoreCase("yaml");
+        Server server = buildOpenApiServer();
+        DispatchContext dctx = WebAppUtil.getDispatcher(context).getDispatchContext();
+        OpenApiSpec spec = OpenApiSpecCache.getSpec(yaml ? "yaml" : "json", server.getUrl(), dctx, () -> buildOpenApi(server, yaml));
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        ResponseBuilder builder = req.evaluatePreconditions(spec.getEntityTag());
+        if (builder == null) {
+            builder = Response.status(Response.Status.OK).entity(spec.getContent())
+                    .type(yaml ? MediaType.valueOf("application/yaml") : MediaType.APPLICATION_JSON_TYPE);
+        }
+        return builder.tag(spec.getEntityTag()).cacheControl(cacheControl).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    private String buildOpenApi(Server server, boolean yaml) throws JsonProcessingException {
         boolean pretty = false;
         OpenAPI openApi = new OpenAPI();
-        openApi.addServersItem(buildOpenApiServer());
+        openApi.addServersItem(server);
 
         SecurityScheme securitySchemeBearer = new SecurityScheme();
         securitySchemeBearer.setName("jwtToken");
@@ -92,7 +117,8 @@ public final class OpenApiResource {
         SwaggerConfiguration config = new SwaggerConfiguration().openAPI(openApi.info(buildOpenApiInfo()))
                 .readerClass(OFBizOpenApiReader.class.getName())
                 .resourcePackages(Stream.of("org.apache.ofbiz.ws.rs.resources").collect(Collectors.toSet()))
-                .scannerClass(OFBizResourceScanner.class.getName());
+                .scannerClass(OFBizResourceScanner.class.getName())
+                .cacheTTL(0L); // cached by OpenApiSpecCache, which knows when the services are reloaded
 
 
         OpenApiContext ctx = new GenericOpenApiContextBuilder<>().openApiConfiguration(config)
@@ -100,14 +126,10 @@ public final class OpenApiResource {
 
         openApi = ctx.read();
 
-        if (UtilValidate.isNotEmpty(type) && type.trim().equalsIgnoreCase("yaml")) {
-            return Response.status(Response.Status.OK)
-                    .entity(pretty ? Yaml.pretty(openApi) : Yaml.mapper().writeValueAsString(openApi))
-                    .type("application/yaml").build();
+        if (yaml) {
+            return pretty ? Yaml.pretty(openApi) : Yaml.mapper().writeValueAsString(openApi);
         } else {
-            return Response.status(Response.Status.OK)
-                    .entity(pretty ? Json.pretty(openApi) : Json.mapper().writeValueAsString(openApi))
-                    .type(MediaType.APPLICATION_JSON_TYPE).build();
+            return pretty ? Json.pretty(openApi) : Json.mapper().writeValueAsString(openApi);
         }
     }
 
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+@JsonInclude(Include.NON_NULL)
+public class Pagination {
+    private String field;
+    private int offset;
+    private int limit;
+    private int count;
+    private Long total;
+    private String nextCursor;
+    private String previousCursor;
+
+    public Pagination(String field, int offset, int limit, int count, Long total, String nextCursor, String previousCursor) {
+        this.field = field;
+        this.offset = offset;
+        this.limit = limit;
+        this.count = count;
+        this.total = total;
+        this.nextCursor = nextCursor;
+        this.previousCursor = previousCursor;
+    }
+
+    /**
+     * @return the name of the paginated OUT parameter
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return the offset of the first element of the page
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the maximum number of elements of the page
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of elements of the page
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the total number of elements, null when unknown
+     */
+    public Long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the cursor of the next page, null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the cursor of the previous page, null on the first page
+     */
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+}
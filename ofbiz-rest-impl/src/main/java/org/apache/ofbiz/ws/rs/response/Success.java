@@ -29,6 +29,7 @@ public class Success {
     private String statusDescription;
     private String successMessage;
     private Object data;
+    private Pagination pagination;
 
     public Success(int statusCode, String statusDescription, String successMessage, Object data) {
         this.statusCode = statusCode;
@@ -93,4 +94,18 @@ public class Success {
         this.data = data;
     }
 
+    /**
+     * @return the pagination of a list of the data, null when no page was requested
+     */
+    public Pagination getPagination() {
+        return pagination;
+    }
+
+    /**
+     * @param pagination the pagination to set
+     */
+    public void setPagination(Pagination pagination) {
+        this.pagination = pagination;
+    }
+
 }
@@ -72,11 +72,21 @@ public class APIAuthFilter implements ContainerRequestFilter {
             return;
         }
         String jwtToken = JWTManager.getHeaderAuthBearerToken(httpRequest);
+        if (JwtUserLoginCache.isEnabled() && UtilValidate.isNotEmpty(jwtToken)) {
+            GenericValue userLogin = JwtUserLoginCache.get(jwtToken);
+            if (userLogin != null) {
+                httpRequest.setAttribute("userLogin", userLogin);
+                return;
+            }
+        }
         Map<String, Object> claims = JWTManager.validateToken(jwtToken, JWTManager.getJWTKey(delegator));
         if (claims.containsKey(ModelService.ERROR_MESSAGE)) {
             abortWithUnauthorized(requestContext, true, "Unauthorized: " + (String) claims.get(ModelService.ERROR_MESSAGE));
         } else {
             GenericValue userLogin = extractUserLoginFromJwtClaim(delegator, claims);
+            if (userLogin != null && JwtUserLoginCache.isEnabled()) {
+                JwtUserLoginCache.put(jwtToken, userLogin);
+            }
             httpRequest.setAttribute("userLogin", userLogin);
         }
     }
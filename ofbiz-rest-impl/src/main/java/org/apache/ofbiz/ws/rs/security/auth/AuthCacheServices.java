@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.security.auth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Services administering the caches of the REST authentication filters.
+ */
+public final class AuthCacheServices {
+
+    private AuthCacheServices() { }
+
+    /**
+     * Removes the cached authentications of a user, or of all users if no userLoginId is given - intended for use with ECAs.
+     */
+    public static Map<String, Object> clearRestAuthCache(DispatchContext dctx, Map<String, Object> context) {
+        String userLoginId = (String) context.get("userLoginId");
+        if (UtilValidate.isNotEmpty(userLoginId)) {
+            JwtUserLoginCache.remove(userLoginId);
+            BasicAuthCredentialCache.remove(userLoginId);
+        } else {
+            JwtUserLoginCache.clear();
+            BasicAuthCredentialCache.clear();
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    public static Map<String, Object> getRestAuthCacheStatistics(DispatchContext dctx, Map<String, Object> context) {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("jwt", JwtUserLoginCache.getStatistics());
+        statistics.put("basic", BasicAuthCredentialCache.getStatistics());
+        if (Boolean.TRUE.equals(context.get("resetStatistics"))) {
+            JwtUserLoginCache.resetStatistics();
+            BasicAuthCredentialCache.resetStatistics();
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", statistics);
+        return result;
+    }
+}
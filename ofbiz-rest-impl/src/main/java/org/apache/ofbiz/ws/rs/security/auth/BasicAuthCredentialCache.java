@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.security.auth;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.ws.rs.util.DigestUtil;
+
+/**
+ * Short lived cache of successful Basic authentication credential checks.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of a random salt, drawn when the class is loaded, followed by the
+ * username and the password; neither the plain credentials nor an unsalted hash of them are held in memory.
+ * Only successful checks are cached. Entries of a user are removed whenever its UserLogin is updated or
+ * removed (password changed, disabled, locked out after failed logins), see the clearRestAuthCache service,
+ * and expire after <code>rest.auth.basic.cache.expireTime</code>.
+ */
+public final class BasicAuthCredentialCache {
+
+    private static final String REST_CONFIG = "rest.properties";
+
+    private static final boolean ENABLED = UtilProperties.getPropertyAsBoolean(REST_CONFIG, "rest.auth.basic.cache.enabled", true);
+    private static final UtilCache<String, GenericValue> CREDENTIAL_CACHE = UtilCache.createUtilCache("rest.BasicAuthCredential",
+            UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.auth.basic.cache.maxSize", 1000),
+            UtilProperties.getPropertyAsLong(REST_CONFIG, "rest.auth.basic.cache.expireTime", 60000));
+    private static final String SALT = createSalt();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private BasicAuthCredentialCache() { }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns a copy of the UserLogin of credentials that were successfully checked recently, or null.
+     */
+    public static GenericValue get(String username, String password) {
+        GenericValue userLogin = CREDENTIAL_CACHE.get(makeKey(username, password));
+        if (userLogin == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+        return (GenericValue) userLogin.clone();
+    }
+
+    public static void put(String username, String password, GenericValue userLogin) {
+        CREDENTIAL_CACHE.put(makeKey(username, password), (GenericValue) userLogin.clone());
+    }
+
+    /**
+     * Removes the cached credential checks of a user.
+     */
+    public static void remove(String userLoginId) {
+        List<String> staleKeys = new ArrayList<>();
+        for (String key : CREDENTIAL_CACHE.getCacheLineKeys()) {
+            GenericValue userLogin = CREDENTIAL_CACHE.get(key);
+            if (userLogin != null && userLoginId.equals(userLogin.getString("userLoginId"))) {
+                staleKeys.add(key);
+            }
+        }
+        for (String key : staleKeys) {
+            CREDENTIAL_CACHE.remove(key);
+        }
+    }
+
+    public static void clear() {
+        CREDENTIAL_CACHE.clear();
+    }
+
+    public static Map<String, Object> getStatistics() {
+        long hits = HITS.sum();
+        long misses = MISSES.sum();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", ENABLED);
+        statistics.put("size", CREDENTIAL_CACHE.size());
+        statistics.put("maxSize", CREDENTIAL_CACHE.getSizeLimit());
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return statistics;
+    }
+
+    public static void resetStatistics() {
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    private static String makeKey(String username, String password) {
+        // the separator can not be part of a username since Basic credentials are split on the first colon
+        return DigestUtil.sha256Hex(SALT, username, ":", password);
+    }
+
+    private static String createSalt() {
+        byte[] salt = new byte[32];
+        new SecureRandom().nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+}
@@ -108,6 +108,13 @@ public class HttpBasicAuthFilter implements ContainerRequestFilter {
     }
 
     private void authenticate(String userName, String password) throws ForbiddenException {
+        if (BasicAuthCredentialCache.isEnabled()) {
+            GenericValue userLogin = BasicAuthCredentialCache.get(userName, password);
+            if (userLogin != null) {
+                httpRequest.setAttribute("userLogin", userLogin);
+                return;
+            }
+        }
         Map<String, Object> result = null;
         LocalDispatcher dispatcher = (LocalDispatcher) servletContext.getAttribute("dispatcher");
         try {
@@ -123,6 +130,9 @@ public class HttpBasicAuthFilter implements ContainerRequestFilter {
         }
 
         GenericValue userLogin = (GenericValue) result.get("userLogin");
+        if (userLogin != null && BasicAuthCredentialCache.isEnabled()) {
+            BasicAuthCredentialCache.put(userName, password, userLogin);
+        }
         httpRequest.setAttribute("userLogin", userLogin);
     }
 
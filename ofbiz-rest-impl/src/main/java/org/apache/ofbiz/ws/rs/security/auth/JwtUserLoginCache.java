@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.security.auth;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.ws.rs.util.DigestUtil;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+
+/**
+ * Bounded cache of verified JWT tokens mapped to the UserLogin they resolved to.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the token, so tokens are never held in memory by the cache.
+ * An entry is not used past the expiry of its token, nor past the <code>rest.auth.jwt.cache.expireTime</code>
+ * setting. Entries of a user are removed whenever its UserLogin is updated or removed (disabled, logged out,
+ * password changed), see the clearRestAuthCache service.
+ */
+public final class JwtUserLoginCache {
+
+    private static final String MODULE = JwtUserLoginCache.class.getName();
+    private static final String REST_CONFIG = "rest.properties";
+
+    private static final boolean ENABLED = UtilProperties.getPropertyAsBoolean(REST_CONFIG, "rest.auth.jwt.cache.enabled", true);
+    private static final UtilCache<String, CachedUserLogin> USER_LOGIN_CACHE = UtilCache.createUtilCache("rest.JwtUserLogin",
+            UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.auth.jwt.cache.maxSize", 10000),
+            UtilProperties.getPropertyAsLong(REST_CONFIG, "rest.auth.jwt.cache.expireTime", 300000));
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private JwtUserLoginCache() { }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns a copy of the UserLogin resolved for an already verified token, or null if the token is not
+     * cached or has expired since.
+     */
+    public static GenericValue get(String jwtToken) {
+        String key = DigestUtil.sha256Hex(jwtToken);
+        CachedUserLogin cached = USER_LOGIN_CACHE.get(key);
+        if (cached != null && cached.expiresAt > 0 && System.currentTimeMillis() >= cached.expiresAt) {
+            USER_LOGIN_CACHE.remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+        return (GenericValue) cached.userLogin.clone();
+    }
+
+    /**
+     * Caches the UserLogin resolved for a token whose signature and claims have just been verified.
+     */
+    public static void put(String jwtToken, GenericValue userLogin) {
+        long expiresAt = 0;
+        try {
+            Date expiresAtDate = JWT.decode(jwtToken).getExpiresAt();
+            if (expiresAtDate != null) {
+                expiresAt = expiresAtDate.getTime();
+            }
+        } catch (JWTDecodeException e) {
+            Debug.logWarning(e, "Not caching the UserLogin of an undecodable JWT token", MODULE);
+            return;
+        }
+        if (expiresAt > 0 && System.currentTimeMillis() >= expiresAt) {
+            return;
+        }
+        USER_LOGIN_CACHE.put(DigestUtil.sha256Hex(jwtToken), new CachedUserLogin((GenericValue) userLogin.clone(), expiresAt));
+    }
+
+    /**
+     * Removes the cached tokens of a user.
+     */
+    public static void remove(String userLoginId) {
+        List<String> staleKeys = new ArrayList<>();
+        for (String key : USER_LOGIN_CACHE.getCacheLineKeys()) {
+            CachedUserLogin cached = USER_LOGIN_CACHE.get(key);
+            if (cached != null && userLoginId.equals(cached.userLogin.getString("userLoginId"))) {
+                staleKeys.add(key);
+            }
+        }
+        for (String key : staleKeys) {
+            USER_LOGIN_CACHE.remove(key);
+        }
+    }
+
+    public static void clear() {
+        USER_LOGIN_CACHE.clear();
+    }
+
+    public static Map<String, Object> getStatistics() {
+        long hits = HITS.sum();
+        long misses = MISSES.sum();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", ENABLED);
+        statistics.put("size", USER_LOGIN_CACHE.size());
+        statistics.put("maxSize", USER_LOGIN_CACHE.getSizeLimit());
+        statistics.put("hits", hits);
+        statistics.put("misses", misses);
+        statistics.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return statistics;
+    }
+
+    public static void resetStatistics() {
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    private static final class CachedUserLogin {
+        private final GenericValue userLogin;
+        private final long expiresAt;
+
+        private CachedUserLogin(GenericValue userLogin, long expiresAt) {
+            this.userLogin = userLogin;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.security.limit;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.ws.rs.ServiceCatalog;
+import org.apache.ofbiz.ws.rs.security.Secured;
+import org.apache.ofbiz.ws.rs.util.RestApiUtil;
+
+/**
+ * Enforces the {@link RateLimiter} limits on the secured resources, once the user is authenticated.
+ * Rejected calls get a 429 Too Many Requests response with a Retry-After header. The permit of an admitted
+ * call is released by the {@link RateLimitReleaseListener} when the response is fully written. The calls to services
+ * not exported by the {@link ServiceCatalog} are limited together as {@link RateLimiter#UNKNOWN_SERVICE}.
+ */
+@Secured
+@Provider
+@Priority(Priorities.USER + 100)
+public class RateLimitFilter implements ContainerRequestFilter {
+
+    private static final String MODULE = RateLimitFilter.class.getName();
+    public static final String PERMIT_PROPERTY = RateLimitFilter.class.getName() + ".permit";
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    @Context
+    private ServletContext servletContext;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!RateLimiter.isEnabled()) {
+            return;
+        }
+        GenericValue userLogin = (GenericValue) httpRequest.getAttribute("userLogin");
+        String userLoginId = userLogin != null ? userLogin.getString("userLoginId") : null;
+        String serviceName = resolveServiceName(requestContext.getUriInfo().getPathParameters().getFirst("serviceName"));
+        RateLimiter.Permit permit = RateLimiter.getInstance().acquire(userLoginId, serviceName);
+        if (!permit.isGranted()) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Rejected call of " + userLoginId + " to " + requestContext.getUriInfo().getPath(), MODULE);
+            }
+            requestContext.abortWith(tooManyRequests(permit.getRetryAfter()));
+            return;
+        }
+        requestContext.setProperty(PERMIT_PROPERTY, permit);
+    }
+
+    /**
+     * Returns the 429 Too Many Requests response of a rejected call.
+     * @param retryAfter the seconds to wait before retrying
+     */
+    public static Response tooManyRequests(long retryAfter) {
+        return RestApiUtil.errorBuilder(Response.Status.TOO_MANY_REQUESTS.getStatusCode(),
+                Response.Status.TOO_MANY_REQUESTS.getReasonPhrase(), "Too many requests, retry in " + retryAfter + " seconds")
+                .header(HttpHeaders.RETRY_AFTER, retryAfter).build();
+    }
+
+    /**
+     * @return the service name if the service is exported, {@link RateLimiter#UNKNOWN_SERVICE} otherwise, and null
+     * for the resources not invoking a service
+     */
+    private String resolveServiceName(String serviceName) {
+        if (serviceName == null) {
+            return null;
+        }
+        LocalDispatcher dispatcher = (LocalDispatcher) servletContext.getAttribute("dispatcher");
+        if (dispatcher != null && ServiceCatalog.get(dispatcher.getDispatchContext()).getService(serviceName) != null) {
+            return serviceName;
+        }
+        return RateLimiter.UNKNOWN_SERVICE;
+    }
+}
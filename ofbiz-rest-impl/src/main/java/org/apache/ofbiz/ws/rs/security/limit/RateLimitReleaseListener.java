@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.security.limit;
+
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * Releases the {@link RateLimiter} permit of a call when Jersey has finished processing it, including
+ * the writing of streamed responses and the calls ending with an exception.
+ */
+public class RateLimitReleaseListener implements ApplicationEventListener {
+
+    private static final RequestEventListener RELEASE_ON_FINISH = RateLimitReleaseListener::releasePermit;
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return RateLimiter.isEnabled() ? RELEASE_ON_FINISH : null;
+    }
+
+    /**
+     * Releases the permit set by the {@link RateLimitFilter} on the request once the event is {@link RequestEvent.Type#FINISHED}.
+     */
+    public static void releasePermit(RequestEvent event) {
+        if (event.getType() == RequestEvent.Type.FINISHED) {
+            Object permit = event.getContainerRequest().getProperty(RateLimitFilter.PERMIT_PROPERTY);
+            if (permit instanceof RateLimiter.Permit) {
+                ((RateLimiter.Permit) permit).release();
+            }
+        }
+    }
+}
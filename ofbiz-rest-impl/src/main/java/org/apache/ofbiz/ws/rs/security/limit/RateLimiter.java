@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.security.limit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * In-process concurrency and rate limits of the REST API calls, per user and per service.
+ * <p>
+ * Each user and each service may have at most <code>maxConcurrent</code> calls in progress, and calls are
+ * admitted by a token bucket refilled at <code>rate</code> tokens per second holding at most <code>burst</code>
+ * tokens. The service limits default to <code>rest.limit.service.*</code> and can be set per service with a
+ * <code>.&lt;serviceName&gt;</code> suffix. A limit of 0 disables it. Rejected calls are counted per limit and
+ * per user or service, see the getRestRateLimitStatistics service. The limits apply only once
+ * <code>rest.limit.enabled</code> is set.
+ * <p>
+ * The service names are expected to be resolved by the caller, the names of the services not exported being
+ * replaced by {@link #UNKNOWN_SERVICE}, so that made-up names cannot add entries.
+ */
+public final class RateLimiter {
+
+    public static final String UNKNOWN_SERVICE = "unknown";
+
+    private static final String REST_CONFIG = "rest.properties";
+
+    private static final boolean ENABLED = UtilProperties.getPropertyAsBoolean(REST_CONFIG, "rest.limit.enabled", false);
+    private static final Limit DEFAULT_SERVICE_LIMIT = new Limit(
+            UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.limit.service.maxConcurrent", 0),
+            getDouble("rest.limit.service.rate", 0), getDouble("rest.limit.service.burst", 0));
+    private static final RateLimiter INSTANCE = new RateLimiter(new Limit(
+            UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.limit.user.maxConcurrent", 0),
+            getDouble("rest.limit.user.rate", 0), getDouble("rest.limit.user.burst", 0)),
+            RateLimiter::getConfiguredServiceLimit, System::nanoTime);
+
+    private final Limit userLimit;
+    private final Function<String, Limit> serviceLimitLookup;
+    private final LongSupplier nanoClock;
+    private final Map<String, Limit> serviceLimits = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> userCalls = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> serviceCalls = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> serviceBuckets = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a limiter, the REST API using the one configured in rest.properties, see {@link #getInstance()}.
+     * @param userLimit the limit of each user
+     * @param serviceLimitLookup the limit of a service by name
+     * @param nanoClock the clock refilling the token buckets, in nanoseconds
+     */
+    public RateLimiter(Limit userLimit, Function<String, Limit> serviceLimitLookup, LongSupplier nanoClock) {
+        this.userLimit = userLimit;
+        this.serviceLimitLookup = serviceLimitLookup;
+        this.nanoClock = nanoClock;
+    }
+
+    public static RateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Admits a call of a user to a service, either of them may be null.
+     * @return the permit to release once the call is over, holding the seconds to wait before retrying when the call is rejected
+     */
+    public Permit acquire(String userLoginId, String serviceName) {
+        Limit serviceLimit = serviceName != null ? getServiceLimit(serviceName) : null;
+        if (userLoginId != null && !tryIncrement(userCalls, userLoginId, userLimit.maxConcurrent)) {
+            return reject("user.concurrency", userLoginId, 1);
+        }
+        if (serviceLimit != null && !tryIncrement(serviceCalls, serviceName, serviceLimit.maxConcurrent)) {
+            new Permit(userLoginId, null, 0).release();
+            return reject("service.concurrency", serviceName, 1);
+        }
+        Permit permit = new Permit(userLoginId, serviceName, 0);
+        if (userLoginId != null && userLimit.isRateLimited()) {
+            long waitNanos = userBuckets.computeIfAbsent(userLoginId, k -> new TokenBucket(userLimit)).tryConsume();
+            if (waitNanos > 0) {
+                permit.release();
+                return reject("user.rate", userLoginId, toSeconds(waitNanos));
+            }
+        }
+        if (serviceLimit != null && serviceLimit.isRateLimited()) {
+            long waitNanos = serviceBuckets.computeIfAbsent(serviceName, k -> new TokenBucket(serviceLimit)).tryConsume();
+            if (waitNanos > 0) {
+                permit.release();
+                return reject("service.rate", serviceName, toSeconds(waitNanos));
+            }
+        }
+        return permit;
+    }
+
+    /**
+     * Returns the number of rejected calls per limit and per user or service, and the calls in progress.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Long> rejectionCounts = new TreeMap<>();
+        rejections.forEach((key, count) -> rejectionCounts.put(key, count.sum()));
+        Map<String, Integer> userCallCounts = new TreeMap<>();
+        userCalls.forEach((key, count) -> userCallCounts.put(key, count.get()));
+        Map<String, Integer> serviceCallCounts = new TreeMap<>();
+        serviceCalls.forEach((key, count) -> serviceCallCounts.put(key, count.get()));
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", ENABLED);
+        statistics.put("rejections", rejectionCounts);
+        statistics.put("userCallsInProgress", userCallCounts);
+        statistics.put("serviceCallsInProgress", serviceCallCounts);
+        return statistics;
+    }
+
+    public void resetStatistics() {
+        rejections.clear();
+    }
+
+    /**
+     * Returns the rate limiting statistics, see {@link #getStatistics()}.
+     */
+    public static Map<String, Object> getRestRateLimitStatistics(DispatchContext dctx, Map<String, Object> context) {
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", INSTANCE.getStatistics());
+        if (Boolean.TRUE.equals(context.get("resetStatistics"))) {
+            INSTANCE.resetStatistics();
+        }
+        return result;
+    }
+
+    private Permit reject(String limit, String key, long retryAfter) {
+        rejections.computeIfAbsent(limit, k -> new LongAdder()).increment();
+        rejections.computeIfAbsent(limit + "." + key, k -> new LongAdder()).increment();
+        return new Permit(null, null, Math.max(1, retryAfter));
+    }
+
+    private Limit getServiceLimit(String serviceName) {
+        return serviceLimits.computeIfAbsent(serviceName, serviceLimitLookup);
+    }
+
+    private static Limit getConfiguredServiceLimit(String serviceName) {
+        return new Limit(UtilProperties.getPropertyAsInteger(REST_CONFIG, "rest.limit.service.maxConcurrent." + serviceName,
+                DEFAULT_SERVICE_LIMIT.maxConcurrent),
+                getDouble("rest.limit.service.rate." + serviceName, DEFAULT_SERVICE_LIMIT.rate),
+                getDouble("rest.limit.service.burst." + serviceName, DEFAULT_SERVICE_LIMIT.burst));
+    }
+
+    private static boolean tryIncrement(Map<String, AtomicInteger> calls, String key, int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            return true;
+        }
+        AtomicInteger count = calls.computeIfAbsent(key, k -> new AtomicInteger());
+        if (count.incrementAndGet() > maxConcurrent) {
+            count.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static void decrement(Map<String, AtomicInteger> calls, String key) {
+        if (key != null) {
+            AtomicInteger count = calls.get(key);
+            if (count != null) {
+                count.decrementAndGet();
+            }
+        }
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static double getDouble(String name, double defaultValue) {
+        return UtilProperties.getPropertyAsDouble(REST_CONFIG, name, defaultValue);
+    }
+
+    /**
+     * The admission of a call, to be released when the call is over.
+     */
+    public final class Permit {
+        private final String userLoginId;
+        private final String serviceName;
+        private final long retryAfter;
+        private boolean released;
+
+        private Permit(String userLoginId, String serviceName, long retryAfter) {
+            this.userLoginId = userLoginId;
+            this.serviceName = serviceName;
+            this.retryAfter = retryAfter;
+        }
+
+        public boolean isGranted() {
+            return retryAfter == 0;
+        }
+
+        /**
+         * @return the seconds to wait before retrying a rejected call
+         */
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+
+        public synchronized void release() {
+            if (released || !isGranted()) {
+                return;
+            }
+            released = true;
+            if (userLimit.maxConcurrent > 0) {
+                decrement(userCalls, userLoginId);
+            }
+            if (serviceName != null && getServiceLimit(serviceName).maxConcurrent > 0) {
+                decrement(serviceCalls, serviceName);
+            }
+        }
+    }
+
+    /**
+     * The concurrency and rate limit of a user or a service.
+     */
+    public static final class Limit {
+        private final int maxConcurrent;
+        private final double rate;
+        private final double burst;
+
+        /**
+         * @param maxConcurrent the maximum number of calls in progress, 0 for no limit
+         * @param rate the calls admitted per second, 0 for no limit
+         * @param burst the calls admitted at once after an idle period
+         */
+        public Limit(int maxConcurrent, double rate, double burst) {
+            this.maxConcurrent = maxConcurrent;
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        private boolean isRateLimited() {
+            return rate > 0;
+        }
+    }
+
+    private final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        private TokenBucket(Limit limit) {
+            this.ratePerNano = limit.rate / TimeUnit.SECONDS.toNanos(1);
+            // a burst lower than one token would never admit a call
+            this.capacity = Math.max(limit.burst, 1);
+            this.tokens = capacity;
+            this.lastRefill = nanoClock.getAsLong();
+        }
+
+        /**
+         * @return 0 when a token was consumed, otherwise the nanoseconds until the next token
+         */
+        private synchronized long tryConsume() {
+            long now = nanoClock.getAsLong();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+    }
+}
@@ -18,7 +18,11 @@
  *******************************************************************************/
 package org.apache.ofbiz.ws.rs.spi.impl;
 
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Link;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.ext.ContextResolver;
 import javax.ws.rs.ext.Provider;
 
@@ -30,21 +34,49 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
+/**
+ * Provides the ObjectMapper of the JSON responses: compact by default, indented when the request has the
+ * <code>pretty=true</code> query parameter.
+ */
 @Provider
+@Produces(MediaType.APPLICATION_JSON)
 public class JacksonConfig implements ContextResolver<ObjectMapper> {
 
+    public static final String PRETTY_PARAM = "pretty";
+
     private final ObjectMapper objectMapper;
+    private final ObjectMapper prettyObjectMapper;
+
+    @Context
+    private UriInfo uriInfo;
 
     public JacksonConfig() {
-        objectMapper = new ObjectMapper();
-        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
-        objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        objectMapper = configure(new ObjectMapper());
+        prettyObjectMapper = configure(new ObjectMapper()).enable(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * Applies the serialization settings shared by all the representations of the REST responses.
+     * @param mapper the mapper to configure, whatever its format
+     * @return the mapper
+     */
+    public static ObjectMapper configure(ObjectMapper mapper) {
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
         SimpleModule simpleModule = new SimpleModule();
         simpleModule.addSerializer(Link.class, new LinkSerializer());
-        objectMapper.registerModule(simpleModule);
+        mapper.registerModule(simpleModule);
+        return mapper;
+    }
+
+    /**
+     * @param prettyParam the value of the pretty query parameter
+     * @return whether indented output is requested
+     */
+    public static boolean isPrettyRequested(String prettyParam) {
+        return "true".equalsIgnoreCase(prettyParam);
     }
 
     /**
@@ -54,7 +86,19 @@ public class JacksonConfig implements ContextResolver<ObjectMapper> {
      */
     @Override
     public ObjectMapper getContext(Class<?> type) {
-        return objectMapper;
+        return isPrettyRequested() ? prettyObjectMapper : objectMapper;
+    }
+
+    private boolean isPrettyRequested() {
+        if (uriInfo == null) {
+            return false;
+        }
+        try {
+            return isPrettyRequested(uriInfo.getQueryParameters().getFirst(PRETTY_PARAM));
+        } catch (IllegalStateException e) {
+            // not called while processing a request
+            return false;
+        }
     }
 
 }
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.test;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.ws.rs.security.limit.RateLimitFilter;
+import org.apache.ofbiz.ws.rs.security.limit.RateLimitReleaseListener;
+import org.apache.ofbiz.ws.rs.security.limit.RateLimiter;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+
+/**
+ * Checks the token buckets and the concurrency limits of the {@link RateLimiter}, the release of the permits
+ * when Jersey has finished a call, and the response of the rejected calls.
+ */
+public class RateLimiterTests extends OFBizTestCase {
+
+    private static final RateLimiter.Limit NO_LIMIT = new RateLimiter.Limit(0, 0, 0);
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    public RateLimiterTests(String name) {
+        super(name);
+    }
+
+    public void testTokenBucket() throws Exception {
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(0, 1, 2), name -> NO_LIMIT, nanoTime::get);
+        assertTrue("the burst is admitted", limiter.acquire("user", null).isGranted());
+        assertTrue("the burst is admitted", limiter.acquire("user", null).isGranted());
+        RateLimiter.Permit rejected = limiter.acquire("user", null);
+        assertFalse("the call after the burst is rejected", rejected.isGranted());
+        assertEquals("the next token is a second away", 1, rejected.getRetryAfter());
+        assertTrue("the other users have their own bucket", limiter.acquire("other", null).isGranted());
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertFalse("half a token does not admit a call", limiter.acquire("user", null).isGranted());
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertTrue("the refilled token admits a call", limiter.acquire("user", null).isGranted());
+        assertFalse("a single token was refilled", limiter.acquire("user", null).isGranted());
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue("the bucket holds the burst at most", limiter.acquire("user", null).isGranted());
+        assertTrue("the bucket holds the burst at most", limiter.acquire("user", null).isGranted());
+        assertFalse("the bucket holds the burst at most", limiter.acquire("user", null).isGranted());
+
+        Map<?, ?> rejections = (Map<?, ?>) limiter.getStatistics().get("rejections");
+        assertEquals(4L, rejections.get("user.rate"));
+        assertEquals(4L, rejections.get("user.rate.user"));
+    }
+
+    public void testServiceRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(NO_LIMIT, name -> new RateLimiter.Limit(0, 2, 1), nanoTime::get);
+        assertTrue(limiter.acquire("user", "service").isGranted());
+        RateLimiter.Permit rejected = limiter.acquire("other", "service");
+        assertFalse("the service bucket is shared by the users", rejected.isGranted());
+        assertEquals("the retry delay is rounded up to a second", 1, rejected.getRetryAfter());
+        assertTrue("the other services have their own bucket", limiter.acquire("user", RateLimiter.UNKNOWN_SERVICE).isGranted());
+    }
+
+    public void testConcurrencyReleasedOnFinish() throws Exception {
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(1, 0, 0), name -> new RateLimiter.Limit(2, 0, 0), nanoTime::get);
+        RateLimiter.Permit permit = limiter.acquire("user", "service");
+        assertTrue(permit.isGranted());
+        RateLimiter.Permit rejected = limiter.acquire("user", "service");
+        assertFalse("a single call of the user may be in progress", rejected.isGranted());
+        assertEquals(1, rejected.getRetryAfter());
+        RateLimiter.Permit other = limiter.acquire("other", "service");
+        assertTrue("the service admits two calls", other.isGranted());
+        assertFalse("the service admits two calls", limiter.acquire("third", "service").isGranted());
+
+        ContainerRequest request = makeRequest(permit);
+        RateLimitReleaseListener.releasePermit(makeEvent(RequestEvent.Type.RESP_FILTERS_FINISHED, request));
+        assertFalse("the permit is held until the call is finished", limiter.acquire("user", "service").isGranted());
+        RateLimitReleaseListener.releasePermit(makeEvent(RequestEvent.Type.FINISHED, request));
+        RateLimitReleaseListener.releasePermit(makeEvent(RequestEvent.Type.FINISHED, request));
+        assertTrue("the finished call released the user", limiter.acquire("user", "service").isGranted());
+        assertFalse("a permit is released once", limiter.acquire("third", "service").isGranted());
+
+        rejected.release();
+        assertFalse("a rejected permit releases nothing", limiter.acquire("third", "service").isGranted());
+        RateLimitReleaseListener.releasePermit(makeEvent(RequestEvent.Type.FINISHED, makeRequest(other)));
+        assertTrue("the finished call released the service", limiter.acquire("third", "service").isGranted());
+    }
+
+    public void testTooManyRequestsResponse() throws Exception {
+        Response response = RateLimitFilter.tooManyRequests(3);
+        assertEquals(429, response.getStatus());
+        assertEquals("3", response.getHeaderString(HttpHeaders.RETRY_AFTER));
+        assertNotNull(response.getEntity());
+    }
+
+    private static ContainerRequest makeRequest(RateLimiter.Permit permit) {
+        ContainerRequest request = new ContainerRequest(URI.create("http://localhost/rest/"), URI.create("http://localhost/rest/services/service"),
+                "GET", null, new MapPropertiesDelegate(), new ResourceConfig());
+        request.setProperty(RateLimitFilter.PERMIT_PROPERTY, permit);
+        return request;
+    }
+
+    private static RequestEvent makeEvent(RequestEvent.Type type, ContainerRequest request) {
+        return (RequestEvent) Proxy.newProxyInstance(RequestEvent.class.getClassLoader(), new Class<?>[] {RequestEvent.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getType":
+                        return type;
+                    case "getContainerRequest":
+                        return request;
+                    default:
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.ws.rs.response.Success;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonCborConfig;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonConfig;
+import org.apache.ofbiz.ws.rs.spi.impl.JacksonSmileConfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Compares the size and the serialization time of the representations of a REST response:
+ * indented and compact JSON, gzip and deflate compressed JSON, Smile and CBOR.
+ */
+public class ResponseEncodingTests extends OFBizTestCase {
+
+    private static final String MODULE = ResponseEncodingTests.class.getName();
+    private static final int ITERATIONS = 50;
+
+    public ResponseEncodingTests(String name) {
+        super(name);
+    }
+
+    public void testRepresentationSizes() throws Exception {
+        Success response = makeResponse();
+        ObjectMapper compactMapper = new JacksonConfig().getContext(Object.class);
+        ObjectMapper prettyMapper = JacksonConfig.configure(new ObjectMapper()).enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectMapper smileMapper = new JacksonSmileConfig().getContext(Object.class);
+        ObjectMapper cborMapper = new JacksonCborConfig().getContext(Object.class);
+
+        byte[] compact = compactMapper.writeValueAsBytes(response);
+        byte[] pretty = prettyMapper.writeValueAsBytes(response);
+        byte[] smile = smileMapper.writeValueAsBytes(response);
+        byte[] cbor = cborMapper.writeValueAsBytes(response);
+        byte[] gzip = gzip(compact);
+        byte[] deflate = deflate(compact);
+
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        sizes.put("pretty", pretty.length);
+        sizes.put("compact", compact.length);
+        sizes.put("gzip", gzip.length);
+        sizes.put("deflate", deflate.length);
+        sizes.put("smile", smile.length);
+        sizes.put("cbor", cbor.length);
+        Debug.logInfo("REST response sizes in bytes: " + sizes, MODULE);
+
+        Map<String, Object> timings = new LinkedHashMap<>();
+        timings.put("pretty", averageMicros(prettyMapper, response, false));
+        timings.put("compact", averageMicros(compactMapper, response, false));
+        timings.put("gzip", averageMicros(compactMapper, response, true));
+        timings.put("smile", averageMicros(smileMapper, response, false));
+        timings.put("cbor", averageMicros(cborMapper, response, false));
+        Debug.logInfo("REST response serialization times in microseconds: " + timings, MODULE);
+
+        assertTrue("Compact JSON should be smaller than indented JSON", compact.length < pretty.length);
+        assertTrue("gzip should be smaller than compact JSON", gzip.length < compact.length);
+        assertTrue("deflate should be smaller than compact JSON", deflate.length < compact.length);
+        assertTrue("Smile should be smaller than compact JSON", smile.length < compact.length);
+        assertTrue("CBOR should be smaller than compact JSON", cbor.length < compact.length);
+
+        // the binary representations carry the same content
+        Object json = compactMapper.readValue(compact, Object.class);
+        assertEquals(json, smileMapper.readValue(smile, Object.class));
+        assertEquals(json, cborMapper.readValue(cbor, Object.class));
+    }
+
+    private Success makeResponse() throws Exception {
+        List<GenericValue> statusItems = EntityQuery.use(getDelegator()).from("StatusItem").orderBy("statusId").queryList();
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (GenericValue statusItem : statusItems) {
+            data.add(new LinkedHashMap<>(statusItem));
+        }
+        assertFalse("No StatusItem found to build the test response", data.isEmpty());
+        Map<String, Object> responseData = new LinkedHashMap<>();
+        responseData.put("statusItems", data);
+        return new Success(200, "OK", null, responseData);
+    }
+
+    private static double averageMicros(ObjectMapper mapper, Object value, boolean gzip) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            byte[] bytes = mapper.writeValueAsBytes(value);
+            if (gzip) {
+                gzip(bytes);
+            }
+        }
+        return (System.nanoTime() - start) / (ITERATIONS * 1000.0);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
+            gzipOutput.write(bytes);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflateOutput = new DeflaterOutputStream(output)) {
+            deflateOutput.write(bytes);
+        }
+        return output.toByteArray();
+    }
+}
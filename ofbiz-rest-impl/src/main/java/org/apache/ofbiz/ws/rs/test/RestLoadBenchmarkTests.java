@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.test;
+
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.ws.rs.benchmark.RestBenchmarkServer;
+import org.apache.ofbiz.ws.rs.benchmark.RestLoadBenchmark;
+
+/**
+ * Runs the {@link RestLoadBenchmark} against the REST API served by an embedded Tomcat on the test delegator,
+ * when enabled by <code>rest.benchmark.enabled</code>. The reports are logged; the test fails when a request fails
+ * for another reason than the rate limits, or when most requests are rejected by the rate limits.
+ */
+public class RestLoadBenchmarkTests extends OFBizTestCase {
+
+    private static final String MODULE = RestLoadBenchmarkTests.class.getName();
+
+    public RestLoadBenchmarkTests(String name) {
+        super(name);
+    }
+
+    public void testLoadBenchmark() throws Exception {
+        if (!RestLoadBenchmark.isEnabled()) {
+            Debug.logInfo("REST load benchmark skipped, set rest.benchmark.enabled=true to run it", MODULE);
+            return;
+        }
+        try (RestBenchmarkServer server = RestBenchmarkServer.start(getDelegator())) {
+            Map<String, Map<String, Object>> reports = new RestLoadBenchmark(server.getBaseUrl()).run();
+            assertFalse("No workload run", reports.isEmpty());
+            for (Map.Entry<String, Map<String, Object>> report : reports.entrySet()) {
+                assertTrue("No request sent by " + report.getKey(), (Integer) report.getValue().get("requests") > 0);
+                assertEquals("Failed requests of " + report.getKey(), 0, report.getValue().get("errors"));
+                assertTrue("Most requests of " + report.getKey() + " were rejected by the rate limits, set rest.limit.enabled=false",
+                        (Double) report.getValue().get("throttledRatio") < 0.5);
+            }
+        }
+    }
+}
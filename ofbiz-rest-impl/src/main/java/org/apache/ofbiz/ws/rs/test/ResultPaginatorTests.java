@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.ws.rs.PageRequest;
+import org.apache.ofbiz.ws.rs.ResultPaginator;
+import org.apache.ofbiz.ws.rs.ServiceBindingPlan;
+import org.apache.ofbiz.ws.rs.response.Pagination;
+
+/**
+ * Checks the parsing of the page requests, the pages pushed down to the services or cut in memory,
+ * the in memory sort order, and the pagination headers.
+ */
+public class ResultPaginatorTests extends OFBizTestCase {
+
+    public ResultPaginatorTests(String name) {
+        super(name);
+    }
+
+    public void testPageRequest() throws Exception {
+        assertNull("no pagination parameter", PageRequest.of(null, null, null, null));
+        assertBadRequest(0, null, null, null);
+        assertBadRequest(10, -1, null, null);
+        assertBadRequest(10, null, null, "name;drop");
+        assertBadRequest(10, null, "not a cursor!", null);
+        assertBadRequest(10, null, Base64.getUrlEncoder().encodeToString("abc".getBytes(StandardCharsets.UTF_8)), null);
+
+        PageRequest page = PageRequest.of(null, null, null, "-name, id");
+        assertEquals(0, page.getOffset());
+        assertEquals("the default limit", 100, page.getLimit());
+        assertEquals(Arrays.asList("-name", "id"), page.getSort());
+        assertEquals("the limit is capped", 1000, PageRequest.of(5000, 20, null, null).getLimit());
+
+        PageRequest next = PageRequest.of(10, 0, page.makeCursor(30), "other");
+        assertEquals("the cursor takes precedence over the offset", 30, next.getOffset());
+        assertEquals("the cursor takes precedence over the sort", page.getSort(), next.getSort());
+        assertEquals(10, next.getLimit());
+        assertEquals(Collections.emptyList(), PageRequest.of(10, null, PageRequest.of(10, 0, null, null).makeCursor(10), "id").getSort());
+    }
+
+    public void testInMemoryPage() throws Exception {
+        PageRequest page = PageRequest.of(10, 20, null, null);
+        Map<String, Object> responseData = makeResponseData(makeRecords(0, 25), null);
+        Pagination pagination = ResultPaginator.apply(page, responseData, null);
+        assertEquals("list", pagination.getField());
+        assertEquals(Arrays.asList(20, 21, 22, 23, 24), getIds(responseData));
+        assertEquals(5, pagination.getCount());
+        assertEquals(Long.valueOf(25), pagination.getTotal());
+        assertNull("the last page has no next page", pagination.getNextCursor());
+        assertEquals(10, PageRequest.of(10, null, pagination.getPreviousCursor(), null).getOffset());
+
+        responseData = makeResponseData(makeRecords(0, 25), null);
+        pagination = ResultPaginator.apply(PageRequest.of(10, 0, null, "-id"), responseData, null);
+        assertEquals(Arrays.asList(24, 23, 22, 21, 20, 19, 18, 17, 16, 15), getIds(responseData));
+        assertNull("the first page has no previous page", pagination.getPreviousCursor());
+        PageRequest next = PageRequest.of(10, null, pagination.getNextCursor(), null);
+        assertEquals(10, next.getOffset());
+        assertEquals("the next page keeps the sort order", Collections.singletonList("-id"), next.getSort());
+
+        responseData = makeResponseData(makeRecords(0, 25), null);
+        pagination = ResultPaginator.apply(PageRequest.of(10, 40, null, null), responseData, null);
+        assertEquals("a page after the end is empty", Collections.emptyList(), getIds(responseData));
+        assertNull(pagination.getNextCursor());
+        assertEquals(30, PageRequest.of(10, null, pagination.getPreviousCursor(), null).getOffset());
+
+        assertNull("no list to paginate", ResultPaginator.apply(page, UtilMisc.toMap("message", "none"), null));
+        try {
+            ResultPaginator.apply(PageRequest.of(10, 0, null, "id"), makeResponseData(Arrays.asList("b", "a"), null), null);
+            fail("Only records can be sorted");
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    public void testMixedTypeSort() throws Exception {
+        Timestamp timestamp = new Timestamp(1000L);
+        timestamp.setNanos(500);
+        List<Object> values = Arrays.asList("b", 2, null, 1.5d, new BigDecimal("1.25"), 3L, Double.NaN, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, new Date(1000L), timestamp, new Date(500L), Boolean.TRUE, "a", new BigDecimal("2.00"));
+        List<Object> expected = null;
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            List<Object> shuffled = new ArrayList<>(values);
+            Collections.shuffle(shuffled, random);
+            List<Map<String, Object>> records = new ArrayList<>();
+            for (Object value : shuffled) {
+                Map<String, Object> record = new HashMap<>();
+                record.put("value", value);
+                records.add(record);
+            }
+            Map<String, Object> responseData = makeResponseData(records, null);
+            ResultPaginator.apply(PageRequest.of(100, 0, null, "value"), responseData, null);
+            List<Object> sorted = new ArrayList<>();
+            for (Object record : (List<?>) responseData.get("list")) {
+                sorted.add(((Map<?, ?>) record).get("value"));
+            }
+            if (expected == null) {
+                expected = sorted;
+            } else {
+                assertEquals("the order does not depend on the order of the records", expected, sorted);
+            }
+        }
+        assertNull("nulls first", expected.get(0));
+        assertEquals(Double.NEGATIVE_INFINITY, expected.get(1));
+        assertEquals(new BigDecimal("1.25"), expected.get(2));
+        assertEquals(1.5d, expected.get(3));
+        assertEquals("equal numbers are ordered by class name", 2, expected.get(4));
+        assertEquals(new BigDecimal("2.00"), expected.get(5));
+        assertEquals(3L, expected.get(6));
+        assertEquals(Double.POSITIVE_INFINITY, expected.get(7));
+        assertEquals(Double.NaN, expected.get(8));
+        assertEquals("dates by time", new Date(500L), expected.get(9));
+        assertEquals(new Date(1000L), expected.get(10));
+        assertSame("the nanoseconds of a timestamp come after the date", timestamp, expected.get(11));
+        assertEquals("then the other values by class name", Boolean.TRUE, expected.get(12));
+        assertEquals("a", expected.get(13));
+        assertEquals("b", expected.get(14));
+    }
+
+    public void testPushDown() throws Exception {
+        DispatchContext dctx = getDispatcher().getDispatchContext();
+        ServiceBindingPlan plan = ServiceBindingPlan.compile(dctx.getModelService("performFindList"));
+        assertTrue(plan.hasInParam("viewIndex") && plan.hasInParam("viewSize") && plan.hasInParam("orderBy") && plan.hasOutParam("listSize"));
+
+        Map<String, Object> requestMap = new HashMap<>();
+        PageRequest view = ResultPaginator.pushDown(PageRequest.of(10, 20, null, "-enumId"), plan, requestMap);
+        assertEquals("an aligned page is pushed down as is", 20, view.getOffset());
+        assertEquals(10, view.getLimit());
+        assertEquals(UtilMisc.toMap("viewIndex", 2, "viewSize", 10, "orderBy", "-enumId"), requestMap);
+
+        requestMap.clear();
+        view = ResultPaginator.pushDown(PageRequest.of(10, 15, null, null), plan, requestMap);
+        assertEquals("the smallest view holding rows 15 to 24", 13, view.getOffset());
+        assertEquals(13, view.getLimit());
+        assertEquals(UtilMisc.toMap("viewIndex", 1, "viewSize", 13), requestMap);
+
+        requestMap.clear();
+        view = ResultPaginator.pushDown(PageRequest.of(10, 5, null, null), plan, requestMap);
+        assertEquals(0, view.getOffset());
+        assertEquals(15, view.getLimit());
+
+        requestMap.clear();
+        assertNull("no view of at most twice the limit holds rows 713 to 722",
+                ResultPaginator.pushDown(PageRequest.of(10, 713, null, null), plan, requestMap));
+        assertTrue(requestMap.isEmpty());
+
+        ServiceBindingPlan unpagedPlan = ServiceBindingPlan.compile(dctx.getModelService("restBenchmarkEcho"));
+        assertNull("a service without paging parameters", ResultPaginator.pushDown(PageRequest.of(10, 20, null, null), unpagedPlan, requestMap));
+        assertTrue(requestMap.isEmpty());
+    }
+
+    public void testPushedDownPage() throws Exception {
+        DispatchContext dctx = getDispatcher().getDispatchContext();
+        ServiceBindingPlan plan = ServiceBindingPlan.compile(dctx.getModelService("performFindList"));
+        PageRequest page = PageRequest.of(10, 15, null, null);
+        PageRequest view = ResultPaginator.pushDown(page, plan, new HashMap<>());
+
+        // the service returned the view, rows 13 to 25
+        Map<String, Object> responseData = makeResponseData(makeRecords(13, 26), 40);
+        Pagination pagination = ResultPaginator.apply(page, responseData, view);
+        assertEquals(Arrays.asList(15, 16, 17, 18, 19, 20, 21, 22, 23, 24), getIds(responseData));
+        assertEquals(Long.valueOf(40), pagination.getTotal());
+        assertEquals(25, PageRequest.of(10, null, pagination.getNextCursor(), null).getOffset());
+
+        // the service returned the last rows of the list
+        responseData = makeResponseData(makeRecords(13, 20), 20);
+        pagination = ResultPaginator.apply(page, responseData, view);
+        assertEquals(Arrays.asList(15, 16, 17, 18, 19), getIds(responseData));
+        assertNull(pagination.getNextCursor());
+
+        // the service ignored the view and returned the whole list
+        responseData = makeResponseData(makeRecords(0, 40), 40);
+        pagination = ResultPaginator.apply(page, responseData, view);
+        assertEquals(Arrays.asList(15, 16, 17, 18, 19, 20, 21, 22, 23, 24), getIds(responseData));
+        assertEquals(Long.valueOf(40), pagination.getTotal());
+
+        // the service ignored the view and returned a short list, which is not mistaken for the view
+        responseData = makeResponseData(makeRecords(0, 13), 13);
+        pagination = ResultPaginator.apply(page, responseData, view);
+        assertEquals(Collections.emptyList(), getIds(responseData));
+        assertEquals(Long.valueOf(13), pagination.getTotal());
+
+        // the service echoed another view
+        responseData = makeResponseData(makeRecords(0, 13), null);
+        responseData.put("viewIndex", 0);
+        responseData.put("viewSize", 13);
+        ResultPaginator.apply(page, responseData, view);
+        assertEquals(Collections.emptyList(), getIds(responseData));
+
+        // no list size nor view to check the list against
+        responseData = makeResponseData(makeRecords(0, 20), null);
+        pagination = ResultPaginator.apply(page, responseData, view);
+        assertEquals(Arrays.asList(15, 16, 17, 18, 19), getIds(responseData));
+        assertEquals(Long.valueOf(20), pagination.getTotal());
+    }
+
+    public void testPerformFindListPages() throws Exception {
+        DispatchContext dctx = getDispatcher().getDispatchContext();
+        ServiceBindingPlan plan = ServiceBindingPlan.compile(dctx.getModelService("performFindList"));
+        List<GenericValue> all = EntityQuery.use(getDelegator()).from("Enumeration").orderBy("enumId").queryList();
+        assertTrue("Enumeration seed data is needed", all.size() > 30);
+
+        for (int offset : new int[] {0, 5, 15, 20, all.size() - 3}) {
+            PageRequest page = PageRequest.of(10, offset, null, "enumId");
+            Map<String, Object> requestMap = UtilMisc.toMap("entityName", "Enumeration", "inputFields", new HashMap<>(), "noConditionFind", "Y");
+            PageRequest view = ResultPaginator.pushDown(page, plan, requestMap);
+            assertNotNull("page at " + offset + " pushed down", view);
+            Map<String, Object> result = getDispatcher().runSync("performFindList", plan.bindIn(requestMap));
+            assertTrue(ServiceUtil.isSuccess(result));
+            Map<String, Object> responseData = plan.bindOut(result);
+            Pagination pagination = ResultPaginator.apply(page, responseData, view);
+            assertEquals("page at " + offset, all.subList(offset, Math.min(offset + 10, all.size())), responseData.get("list"));
+            assertTrue("total at " + offset, pagination.getTotal() == null || pagination.getTotal() == all.size());
+            assertEquals("next page after " + offset, offset + 10 < all.size(), pagination.getNextCursor() != null);
+        }
+    }
+
+    public void testPaginationHeaders() throws Exception {
+        PageRequest page = PageRequest.of(10, 10, null, "id");
+        Pagination pagination = new Pagination("list", 10, 10, 10, 25L, page.makeCursor(20), page.makeCursor(0));
+        UriBuilder requestUriBuilder = UriBuilder.fromUri("http://localhost/rest/services/findItems?limit=10&offset=10&sort=id&name=a");
+        Response response = ResultPaginator.addPaginationLinks(Response.ok(), pagination, requestUriBuilder).build();
+        assertEquals("25", response.getHeaderString("X-Total-Count"));
+        Link next = response.getLink("next");
+        assertNotNull(next);
+        String query = next.getUri().getRawQuery();
+        assertTrue(query, query.contains("limit=10") && query.contains("name=a") && query.contains("cursor=" + page.makeCursor(20)));
+        assertFalse("the cursor replaces the offset and the sort", query.contains("offset=") || query.contains("sort="));
+        assertTrue(response.getLink("prev").getUri().getRawQuery().contains("cursor=" + page.makeCursor(0)));
+        assertEquals("the request URI is left unchanged", "http://localhost/rest/services/findItems?limit=10&offset=10&sort=id&name=a",
+                requestUriBuilder.build().toString());
+
+        response = ResultPaginator.addPaginationLinks(Response.ok(), new Pagination("list", 0, 10, 3, null, null, null), requestUriBuilder)
+                .build();
+        assertNull("no total", response.getHeaderString("X-Total-Count"));
+        assertNull(response.getLink("next"));
+        assertNull(response.getLink("prev"));
+        assertNull(ResultPaginator.addPaginationLinks(Response.ok(), null, requestUriBuilder).build().getHeaderString("X-Total-Count"));
+    }
+
+    private static void assertBadRequest(Integer limit, Integer offset, String cursor, String sort) {
+        try {
+            PageRequest.of(limit, offset, cursor, sort);
+            fail("Bad request: limit=" + limit + " offset=" + offset + " cursor=" + cursor + " sort=" + sort);
+        } catch (BadRequestException e) {
+            // expected
+        }
+    }
+
+    private static List<Map<String, Object>> makeRecords(int fromId, int toId) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int id = fromId; id < toId; id++) {
+            records.add(UtilMisc.toMap("id", id));
+        }
+        return records;
+    }
+
+    private static Map<String, Object> makeResponseData(List<?> list, Integer listSize) {
+        Map<String, Object> responseData = new LinkedHashMap<>();
+        responseData.put("list", list);
+        if (listSize != null) {
+            responseData.put("listSize", listSize);
+        }
+        return responseData;
+    }
+
+    private static List<Object> getIds(Map<String, Object> responseData) {
+        List<Object> ids = new ArrayList<>();
+        for (Object record : (List<?>) responseData.get("list")) {
+            ids.add(((Map<?, ?>) record).get("id"));
+        }
+        return ids;
+    }
+}
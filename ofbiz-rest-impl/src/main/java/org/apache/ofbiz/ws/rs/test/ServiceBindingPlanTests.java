@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.ws.rs.test;
+
+import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.ext.ParamConverter;
+
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ModelParam;
+import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.ws.rs.ApiServiceRequest;
+import org.apache.ofbiz.ws.rs.ServiceBindingPlan;
+import org.apache.ofbiz.ws.rs.ServiceRequestProcessor;
+import org.apache.ofbiz.ws.rs.spi.impl.JsonifiedParamConverterProvider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks that the compiled service binding plans bind requests and results like the DispatchContext
+ * and the ServiceRequestProcessor do, for string values, typed values and values parsed from JSON.
+ */
+public class ServiceBindingPlanTests extends OFBizTestCase {
+
+    private static final int MAX_SERVICES = 500;
+    /** The types of the values parsed from JSON and of the usual parameter types, including empty collections. */
+    private static final List<Object> TYPED_VALUES = Collections.unmodifiableList(Arrays.asList(42, 4200000000L, Boolean.TRUE,
+            new BigDecimal("12.50"), 1.5d, UtilMisc.toMap("productId", "WG-1111", "quantity", 2), UtilMisc.toList("WG-1111", 2),
+            new HashMap<>(), new ArrayList<>(), "true", "12.50"));
+
+    public ServiceBindingPlanTests(String name) {
+        super(name);
+    }
+
+    public void testBindingEquivalence() throws Exception {
+        DispatchContext dctx = getDispatcher().getDispatchContext();
+        int checked = 0;
+        for (String serviceName : dctx.getAllServiceNames()) {
+            if (checked++ >= MAX_SERVICES) {
+                break;
+            }
+            ModelService service = dctx.getModelService(serviceName);
+            ServiceBindingPlan plan = ServiceBindingPlan.compile(service);
+
+            Map<String, Object> source = new HashMap<>();
+            Map<String, Object> result = new HashMap<>();
+            int i = 0;
+            for (ModelParam param : service.getModelParamList()) {
+                // string values are converted to the parameter types, empty results are left out of the response
+                Object value = (i++ % 3 == 0) ? String.valueOf(i) : (i % 3 == 1 ? "" : null);
+                putValue(param, value, source, result);
+            }
+            assertBindings(dctx, plan, source, result, "string");
+            for (String requiredParamName : plan.getRequiredParamNames()) {
+                ModelParam param = service.getParam(requiredParamName);
+                assertTrue(requiredParamName + " of " + serviceName + " is required", param.isIn() && !param.isOptional() && !param.isInternal());
+            }
+        }
+        assertTrue("No service found to compare the bindings", checked > 0);
+    }
+
+    public void testTypedBindingEquivalence() throws Exception {
+        DispatchContext dctx = getDispatcher().getDispatchContext();
+        int checked = 0;
+        for (String serviceName : dctx.getAllServiceNames()) {
+            if (checked++ >= MAX_SERVICES) {
+                break;
+            }
+            ModelService service = dctx.getModelService(serviceName);
+            ServiceBindingPlan plan = ServiceBindingPlan.compile(service);
+
+            // values already of the parameter types are kept as is
+            Map<String, Object> source = new HashMap<>();
+            Map<String, Object> result = new HashMap<>();
+            int i = 0;
+            for (ModelParam param : service.getModelParamList()) {
+                putValue(param, getInstanceOf(param, i++), source, result);
+            }
+            assertBindings(dctx, plan, source, result, "instance");
+
+            // values of other types are converted
+            for (int offset = 0; offset < 3; offset++) {
+                source = new HashMap<>();
+                result = new HashMap<>();
+                i = offset;
+                for (ModelParam param : service.getModelParamList()) {
+                    putValue(param, TYPED_VALUES.get(i++ % TYPED_VALUES.size()), source, result);
+                }
+                assertBindings(dctx, plan, source, result, "typed");
+            }
+        }
+        assertTrue("No service found to compare the bindings", checked > 0);
+    }
+
+    public void testJsonBindingEquivalence() throws Exception {
+        DispatchContext dctx = getDispatcher().getDispatchContext();
+        ObjectMapper mapper = new ObjectMapper();
+        ParamConverter<ApiServiceRequest> converter = new JsonifiedParamConverterProvider().getConverter(ApiServiceRequest.class,
+                ApiServiceRequest.class, new Annotation[0]);
+        int checked = 0;
+        for (String serviceName : dctx.getAllServiceNames()) {
+            if (checked++ >= MAX_SERVICES) {
+                break;
+            }
+            ModelService service = dctx.getModelService(serviceName);
+            ServiceBindingPlan plan = ServiceBindingPlan.compile(service);
+
+            // the inParams query parameter, parsed to Integer, Long, Double, Boolean, String, LinkedHashMap and ArrayList values
+            Map<String, Object> values = new HashMap<>();
+            int i = checked;
+            for (ModelParam param : service.getModelParamList()) {
+                values.put(param.getName(), TYPED_VALUES.get(i++ % TYPED_VALUES.size()));
+            }
+            Map<String, Object> parsed = converter.fromString(mapper.writeValueAsString(values)).getInParams();
+            Map<String, Object> source = new HashMap<>();
+            Map<String, Object> result = new HashMap<>();
+            for (ModelParam param : service.getModelParamList()) {
+                putValue(param, parsed.get(param.getName()), source, result);
+            }
+            assertBindings(dctx, plan, source, result, "JSON");
+        }
+        assertTrue("No service found to compare the bindings", checked > 0);
+    }
+
+    private static void putValue(ModelParam param, Object value, Map<String, Object> source, Map<String, Object> result) {
+        if (param.isIn()) {
+            source.put(param.getName(), value);
+        }
+        if (param.isOut()) {
+            result.put(param.getName(), value);
+        }
+    }
+
+    /**
+     * @return a typed value that is an instance of the parameter type, or a string when there is none
+     */
+    private static Object getInstanceOf(ModelParam param, int i) {
+        if (UtilValidate.isEmpty(param.getType())) {
+            return String.valueOf(i);
+        }
+        try {
+            Class<?> type = ObjectType.loadClass(param.getType());
+            for (Object value : TYPED_VALUES) {
+                if (type.isInstance(value)) {
+                    return value;
+                }
+            }
+        } catch (ClassNotFoundException e) {
+            // not a loadable type, converted by ObjectType
+        }
+        return String.valueOf(i);
+    }
+
+    private static void assertBindings(DispatchContext dctx, ServiceBindingPlan plan, Map<String, Object> source, Map<String, Object> result,
+            String values) throws Exception {
+        ModelService service = plan.getService();
+        source.put("notAParameterOf" + service.getName(), "ignored");
+        assertEquals("IN binding of " + service.getName() + " with " + values + " values",
+                dctx.makeValidContext(service.getName(), ModelService.IN_PARAM, source), plan.bindIn(source));
+        assertEquals("OUT binding of " + service.getName() + " with " + values + " values",
+                ServiceRequestProcessor.getResponseData(service, result), plan.bindOut(result));
+    }
+}
@@ -23,6 +23,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.apache.ofbiz.ws.rs.response.Error;
+import org.apache.ofbiz.ws.rs.response.Pagination;
 import org.apache.ofbiz.ws.rs.response.Success;
 
 public final class RestApiUtil {
@@ -31,9 +32,28 @@ public final class RestApiUtil {
 
     }
 
+    /**
+     * The media type of a success response is negotiated, between JSON and the binary representations
+     * produced by the resource, from the Accept header.
+     * @param message
+     * @param data
+     * @return
+     */
     public static Response success(String message, Object data) {
         Success success = new Success(Response.Status.OK.getStatusCode(), Response.Status.OK.getReasonPhrase(), message, data);
-        return Response.status(Response.Status.OK.getStatusCode()).type(MediaType.APPLICATION_JSON).entity(success).build();
+        return Response.status(Response.Status.OK.getStatusCode()).entity(success).build();
+    }
+
+    /**
+     * @param message
+     * @param data
+     * @param pagination the pagination of a list of the data, may be null
+     * @return
+     */
+    public static Response success(String message, Object data, Pagination pagination) {
+        Success success = new Success(Response.Status.OK.getStatusCode(), Response.Status.OK.getReasonPhrase(), message, data);
+        success.setPagination(pagination);
+        return Response.status(Response.Status.OK.getStatusCode()).entity(success).build();
     }
 
     public static Response error(int statusCode, String reasonPhrase, String message) {
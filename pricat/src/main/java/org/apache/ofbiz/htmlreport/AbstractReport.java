@@ -19,6 +19,7 @@
 package org.apache.ofbiz.htmlreport;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -37,7 +38,7 @@ public abstract class AbstractReport implements InterfaceReport {
     private long startTime;
 
     /** Contains all warning messages generated by the report. */
-    private List<Object> warnings = new ArrayList<>();
+    private List<Object> warnings = Collections.synchronizedList(new ArrayList<>());
 
     /** Day constant. */
     private static final long DAYS = 1000 * 60 * 60 * 24;
@@ -141,7 +142,7 @@ public abstract class AbstractReport implements InterfaceReport {
     protected void init(Locale locale) {
         startTime = System.currentTimeMillis();
         this.locale = locale;
-        errors = new ArrayList<>();
+        errors = Collections.synchronizedList(new ArrayList<>());
     }
 
     /**
@@ -25,6 +25,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.ofbiz.base.util.UtilHttp;
+import org.apache.ofbiz.entity.GenericValue;
 import org.safehaus.uuid.EthernetAddress;
 import org.safehaus.uuid.UUID;
 import org.safehaus.uuid.UUIDGenerator;
@@ -38,12 +39,14 @@ public abstract class AbstractReportThread extends Thread implements InterfaceRe
     private boolean doomed;
 
     /** The report that belongs to the thread. */
-    private InterfaceReport report;
+    private volatile InterfaceReport report;
 
     /** The time this report is running. */
     private long startTime;
     private UUID uuid;
     private Locale locale;
+    /** The user who started the report, null if none. */
+    private String userLoginId;
 
     /**
      * Constructs a new report Thread with the given name.
@@ -62,6 +65,44 @@ public abstract class AbstractReportThread extends Thread implements InterfaceRe
         // set start time
         startTime = System.currentTimeMillis();
         locale = UtilHttp.getLocale(request);
+        GenericValue userLogin = (GenericValue) request.getSession().getAttribute("userLogin");
+        if (userLogin != null) {
+            userLoginId = userLogin.getString("userLoginId");
+        }
+    }
+
+    /**
+     * Finds a running report thread of the thread group of the current thread.<p>
+     * @param uuid the UUID of the thread
+     * @return the thread, null if not found
+     */
+    public static AbstractReportThread findThread(String uuid) {
+        ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
+        Thread[] threads = new Thread[threadGroup.activeCount()];
+        threadGroup.enumerate(threads, true);
+        for (Thread threadInstance : threads) {
+            if (threadInstance instanceof AbstractReportThread && ((AbstractReportThread) threadInstance).getUUID().toString().equals(uuid)) {
+                return (AbstractReportThread) threadInstance;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether a user may view the output of this report, only the user who started it may.<p>
+     * @param userLogin the user
+     * @return true if the user may view the report
+     */
+    public boolean isViewableBy(GenericValue userLogin) {
+        return userLogin != null && userLoginId != null && userLoginId.equals(userLogin.getString("userLoginId"));
+    }
+
+    /**
+     * Returns the report of the thread, whose event log is read by its viewers.<p>
+     * @return the report, null if the report is not a html report
+     */
+    public HtmlReport getHtmlReport() {
+        return report instanceof HtmlReport ? (HtmlReport) report : null;
     }
     @Override
     public UUID getUUID() {
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.htmlreport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Report keeping its output in memory, to be written later to another report with {@link #flushTo(InterfaceReport)}.<p>
+ * Used to produce the output of a task run on another Thread than the report's, while keeping the order of the output.
+ */
+public class BufferedReport extends AbstractReport {
+
+    private final List<Consumer<InterfaceReport>> output = new ArrayList<>();
+    private long sequenceNum = -1L;
+
+    /**
+     * Constructs a new buffered report.<p>
+     * @param locale the locale of the report
+     */
+    public BufferedReport(Locale locale) {
+        init(locale);
+    }
+
+    /**
+     * Writes the output kept so far to a report, then forgets it.<p>
+     * @param report the report to write to
+     */
+    public void flushTo(InterfaceReport report) {
+        for (Consumer<InterfaceReport> entry : output) {
+            entry.accept(report);
+        }
+        output.clear();
+    }
+
+    @Override
+    public String getReportUpdate() {
+        return "";
+    }
+
+    @Override
+    public void print(String value, int format) {
+        output.add(report -> report.print(value, format));
+    }
+
+    @Override
+    public void println() {
+        output.add(report -> report.println());
+    }
+
+    @Override
+    public void println(Throwable t) {
+        output.add(report -> report.println(t));
+    }
+
+    @Override
+    public void printMessageWithParam(String uiLabel, Object param) {
+        output.add(report -> report.printMessageWithParam(uiLabel, param));
+    }
+
+    @Override
+    public void printMessageWithParam(int m, int n, String uiLabel, Object param) {
+        output.add(report -> report.printMessageWithParam(m, n, uiLabel, param));
+    }
+
+    @Override
+    public void addLogFile(String logFileName) {
+    }
+
+    @Override
+    public String closeLogFile() {
+        return null;
+    }
+
+    @Override
+    public void setSequenceNum(long sequenceNum) {
+        this.sequenceNum = sequenceNum;
+    }
+
+    @Override
+    public long getSequenceNum() {
+        return sequenceNum;
+    }
+}
@@ -22,7 +22,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -31,6 +30,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -65,24 +65,24 @@ public class HtmlReport extends AbstractReport {
      */
     protected static final String LINEBREAK_TRADITIONAL = "<br>\n";
 
-    /** The list of report objects e.g. String, Exception ... */
-    private List<Serializable> content;
+    /** The output of the report, read by the viewers of the report and written to the log file. */
+    private final ReportEventLog eventLog = new ReportEventLog();
 
-    /** The list of report objects e.g. String, Exception ... */
-    private List<Serializable> logContent;
+    /** The id of the last event returned by {@link #getReportUpdate()}. */
+    private final AtomicLong updateId = new AtomicLong();
 
-    /**
-     * Counter to remember what is already shown,
-     * indicates the next index of the content list that has to be reported.
-     */
-    private int indexNext;
+    /** The id of the last event written to the log file, written under the log file lock. */
+    private volatile long logFileId;
+
+    /** Lock of the log file, taken by the writers of the output only every {@link #LOG_FILE_FLUSH_EVENTS} events. */
+    private final Object logFileLock = new Object();
+
+    /** The number of events after which the writers of the output write it to the log file, before it is dropped. */
+    private static final int LOG_FILE_FLUSH_EVENTS = 100;
 
     /** Flag to indicate if an exception should be displayed long or short. */
     private boolean showExceptionStackTrace;
 
-    /** If set to <code>true</code> nothing is kept in memory. */
-    private boolean isTransient;
-
     /** Boolean flag indicating whether this report should generate HTML or JavaScript output. */
     private boolean writeHtml;
 
@@ -165,7 +165,7 @@ public class HtmlReport extends AbstractReport {
     /** Log file name. */
     private String logFileName;
     /** Log file output stream. */
-    private FileOutputStream logFileOutputStream;
+    private volatile FileOutputStream logFileOutputStream;
     private long sequenceNum = -1;
 
     /**
@@ -183,16 +183,13 @@ public class HtmlReport extends AbstractReport {
      * @param request HttpServletRequest
      * @param response HttpServletResponse
      * @param writeHtml if <code>true</code>, this report should generate HTML instead of JavaScript output
-     * @param isTransient If set to <code>true</code> nothing is kept in memory
+     * @param isTransient not used anymore: the output is kept in an append-only log, read by each viewer from its own position
      */
     public HtmlReport(HttpServletRequest request, HttpServletResponse response, boolean writeHtml, boolean isTransient) {
 
         init(UtilHttp.getLocale(request));
-        content = new ArrayList<>(256);
-        logContent = new ArrayList<>(256);
         showExceptionStackTrace = true;
         this.writeHtml = writeHtml;
-        this.isTransient = isTransient;
     }
     public static HtmlReport getInstance(HttpServletRequest request, HttpServletResponse response) {
         HtmlReport wp = (HtmlReport) request.getSession().getAttribute(SESSION_REPORT_CLASS);
@@ -246,46 +243,62 @@ public class HtmlReport extends AbstractReport {
         paramThread = name;
     }
 
+    /**
+     * Gets the UUID of the thread writing this report.
+     * @return the UUID, null if not set
+     */
+    public String getParamThread() {
+        return paramThread;
+    }
+
+    /**
+     * Returns the output of the report printed since the previous call, as JavaScript calls of the report page.<p>
+     * Several viewers attached to the report should rather read its {@link #getEventLog() event log}, each one from
+     * its own position.
+     */
     @Override
-    public synchronized String getReportUpdate() {
-        StringBuffer result = new StringBuffer();
-        StringBuffer logResult = new StringBuffer();
-        int indexEnd = content.size();
-        for (int i = indexNext; i < indexEnd; i++) {
-            int pos = isTransient ? 0 : i;
-            Object obj = content.get(pos);
-            if ((obj instanceof String) || (obj instanceof StringBuffer)) {
-                result.append(obj);
-            } else if (obj instanceof Throwable) {
-                result.append(getExceptionElementJS((Throwable) obj));
-            }
-            if (isTransient) {
-                content.remove(indexNext);
-            }
-            if (UtilValidate.isNotEmpty(logContent)) {
-                Object logObj = logContent.get(pos);
-                if ((logObj instanceof String) || (logObj instanceof StringBuffer)) {
-                    logResult.append(logObj);
-                } else if (logObj instanceof Throwable) {
-                    result.append(getExceptionElementHtml((Throwable) logObj));
-                }
-                if (isTransient) {
-                    logContent.remove(indexNext);
-                }
-            }
+    public String getReportUpdate() {
+        long from = updateId.get();
+        ReportEventLog.Event to = eventLog.last();
+        if (from >= to.getId() || !updateId.compareAndSet(from, to.getId())) {
+            // nothing new, or taken by a concurrent call
+            return "";
         }
-        indexNext = isTransient ? 0 : indexEnd;
-        if (isTransient && logFileOutputStream != null && !logResult.toString().isEmpty()) {
-            try {
-                logFileOutputStream.write((logResult.toString() + "\n").getBytes());
-                logFileOutputStream.flush();
-            } catch (IOException e) {
-                Debug.logError(e.getMessage(), MODULE);
+        StringBuilder result = new StringBuilder();
+        ReportEventLog.Event event = eventLog.after(from);
+        if (event.getId() > from) {
+            result.append(ReportEventLog.WARNING).append("('")
+                    .append(ReportStringUtil.escapeJavaScript(getEventsDroppedMessage(event.getId() - from))).append("'); ");
+        }
+        while (event.getId() < to.getId() && event.getNext() != null) {
+            event = event.getNext();
+            if (ReportEventLog.LINEBREAK.equals(event.getName())) {
+                result.append("aB(); ");
+            } else {
+                result.append(event.getName()).append("('").append(ReportStringUtil.escapeJavaScript(event.getText())).append("'); ");
             }
         }
+        flushLogFile();
         return result.toString();
     }
 
+    /**
+     * Returns the log of the output of the report.<p>
+     * @return the event log
+     */
+    public ReportEventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Returns the message telling a viewer that events of the log were dropped before it read them.<p>
+     * @param dropped the number of events dropped
+     * @return the message
+     */
+    public String getEventsDroppedMessage(long dropped) {
+        return UtilProperties.getMessage(RESOURCE, "REPORT_EVENTS_DROPPED", new Object[] {dropped}, getLocale());
+    }
+
     /**
      * Returns if the report writes html or javascript code.<p>
      * @return <code>true</code> if the report writes html, and <code>false</code> if the report writes javascript code
@@ -295,95 +308,35 @@ public class HtmlReport extends AbstractReport {
     }
 
     @Override
-    public synchronized void print(String value, int format) {
-        StringBuffer buf = null;
-        value = ReportStringUtil.escapeJavaScript(value);
+    public void print(String value, int format) {
+        String name;
         switch (format) {
         case FORMAT_HEADLINE:
-            buf = new StringBuffer();
-            buf.append("aH('");
-            buf.append(value);
-            buf.append("'); ");
+            name = ReportEventLog.HEADLINE;
             break;
         case FORMAT_WARNING:
-            buf = new StringBuffer();
-            buf.append("aW('");
-            buf.append(value);
-            buf.append("'); ");
+            name = ReportEventLog.WARNING;
             addWarning(value);
             break;
         case FORMAT_ERROR:
-            buf = new StringBuffer();
-            buf.append("aE('");
-            buf.append(value);
-            buf.append("'); ");
+            name = ReportEventLog.ERROR;
             addError(value);
             break;
         case FORMAT_NOTE:
-            buf = new StringBuffer();
-            buf.append("aN('");
-            buf.append(value);
-            buf.append("'); ");
+            name = ReportEventLog.NOTE;
             break;
         case FORMAT_OK:
-            buf = new StringBuffer();
-            buf.append("aO('");
-            buf.append(value);
-            buf.append("'); ");
+            name = ReportEventLog.OK;
             break;
         case FORMAT_DEFAULT:
         default:
-            buf = new StringBuffer();
-            buf.append("a('");
-            buf.append(value);
-            buf.append("'); ");
+            name = ReportEventLog.DEFAULT;
         }
+        ReportEventLog.Event event = eventLog.append(name, value);
         if (value.trim().endsWith(getLineBreak())) {
-            buf.append("aB(); ");
+            event = eventLog.append(ReportEventLog.LINEBREAK, "");
         }
-        content.add(buf.toString());
-
-        switch (format) {
-        case FORMAT_HEADLINE:
-            buf = new StringBuffer();
-            buf.append("<span class='head'>");
-            buf.append(value);
-            buf.append("</span>");
-            break;
-        case FORMAT_WARNING:
-            buf = new StringBuffer();
-            buf.append("<span class='warn'>");
-            buf.append(value);
-            buf.append("</span>");
-            addWarning(value);
-            break;
-        case FORMAT_ERROR:
-            buf = new StringBuffer();
-            buf.append("<span class='err'>");
-            buf.append(value);
-            buf.append("</span>");
-            addError(value);
-            break;
-        case FORMAT_NOTE:
-            buf = new StringBuffer();
-            buf.append("<span class='note'>");
-            buf.append(value);
-            buf.append("</span>");
-            break;
-        case FORMAT_OK:
-            buf = new StringBuffer();
-            buf.append("<span class='ok'>");
-            buf.append(value);
-            buf.append("</span>");
-            break;
-        case FORMAT_DEFAULT:
-        default:
-            buf = new StringBuffer(value);
-        }
-        if (value.trim().endsWith(getLineBreak())) {
-            buf.append("\n");
-        }
-        logContent.add(buf.toString());
+        flushLogFile(event);
     }
 
     @Override
@@ -392,10 +345,9 @@ public class HtmlReport extends AbstractReport {
     }
 
     @Override
-    public synchronized void println(Throwable t) {
+    public void println(Throwable t) {
         addError(t.getMessage());
-        content.add(getExceptionElementJS(t));
-        logContent.add(getExceptionElementHtml(t));
+        flushLogFile(eventLog.append(ReportEventLog.THROWABLE, getExceptionText(t)));
     }
 
     /**
@@ -408,63 +360,99 @@ public class HtmlReport extends AbstractReport {
 
     /**
      * Output helper method to format a reported <code>Throwable</code> element.<p>
-     * This method ensures that exception stack traces are properly escaped
+     * This method ensures that exception messages are properly escaped
      * when they are added to the report.<p>
      * There is a member variable {@link #showExceptionStackTrace} in this
      * class that controls if the stack track is shown or not.
      * In a later version this might be configurable on a per-user basis.<p>
      * @param throwable the exception to format
-     * @return the formatted StringBuffer
+     * @return the formatted text
      */
-    private StringBuffer getExceptionElementJS(Throwable throwable) {
-        StringBuffer buf = new StringBuffer(256);
+    private String getExceptionText(Throwable throwable) {
+        StringBuilder buf = new StringBuilder(256);
+        buf.append(UtilProperties.getMessage(RESOURCE, "REPORT_EXCEPTION", getLocale()));
         if (showExceptionStackTrace) {
-            buf.append("aT('");
-            buf.append(UtilProperties.getMessage(RESOURCE, "REPORT_EXCEPTION", getLocale()));
             String exception = ReportEncoder.escapeXml(throwable.getLocalizedMessage());
             if (UtilValidate.isEmpty(exception)) {
                 exception = ReportEncoder.escapeXml(throwable.getMessage());
             }
             if (UtilValidate.isNotEmpty(exception)) {
-                exception = exception.replaceAll("[\r\n]+", LINEBREAK);
-                buf.append(ReportStringUtil.escapeJavaScript(exception) + LINEBREAK);
+                buf.append(exception.replaceAll("[\r\n]+", LINEBREAK));
+                buf.append(LINEBREAK);
             } else {
                 buf.append(throwable.toString());
             }
-            buf.append("'); ");
         } else {
-            buf.append("aT('");
-            buf.append(UtilProperties.getMessage(RESOURCE, "REPORT_EXCEPTION", getLocale()));
-            buf.append(ReportStringUtil.escapeJavaScript(throwable.toString()));
-            buf.append("'); ");
+            buf.append(ReportEncoder.escapeXml(throwable.toString()));
+            buf.append(LINEBREAK);
         }
-        return buf;
+        return buf.toString();
     }
 
-    private StringBuffer getExceptionElementHtml(Throwable throwable) {
-        StringBuffer buf = new StringBuffer(256);
-        if (showExceptionStackTrace) {
-            buf.append("<span class='throw'>");
-            buf.append(UtilProperties.getMessage(RESOURCE, "REPORT_EXCEPTION", getLocale()));
-            String exception = ReportEncoder.escapeXml(throwable.getLocalizedMessage());
-            if (UtilValidate.isEmpty(exception)) {
-                exception = ReportEncoder.escapeXml(throwable.getMessage());
+    /**
+     * Writes the output not written yet to the log file, if any.
+     */
+    private void flushLogFile() {
+        synchronized (logFileLock) {
+            ReportEventLog.Event to = eventLog.last();
+            if (logFileOutputStream == null || logFileId >= to.getId()) {
+                return;
             }
-            if (UtilValidate.isNotEmpty(exception)) {
-                exception = exception.replaceAll("[\r\n]+", LINEBREAK);
-                buf.append(exception);
-            } else {
-                buf.append(throwable.toString());
+            StringBuilder logResult = new StringBuilder();
+            ReportEventLog.Event event = eventLog.after(logFileId);
+            if (event.getId() > logFileId) {
+                logResult.append(getEventsDroppedMessage(event.getId() - logFileId)).append(LINEBREAK);
+            }
+            while (event.getId() < to.getId() && event.getNext() != null) {
+                event = event.getNext();
+                appendHtml(logResult, event);
+            }
+            logFileId = event.getId();
+            try {
+                logFileOutputStream.write((logResult.toString() + "\n").getBytes());
+                logFileOutputStream.flush();
+            } catch (IOException e) {
+                Debug.logError(e.getMessage(), MODULE);
             }
-            buf.append("</span>");
-        } else {
-            buf.append("<span class='throw'>");
-            buf.append(UtilProperties.getMessage(RESOURCE, "REPORT_EXCEPTION", getLocale()));
-            buf.append(throwable.toString());
-            buf.append("</span>");
-            buf.append(getLineBreak());
         }
-        return buf;
+    }
+
+    /**
+     * Writes the output to the log file once enough events are waiting, so that it is written before being dropped.
+     * @param event the event just appended
+     */
+    private void flushLogFile(ReportEventLog.Event event) {
+        if (logFileOutputStream != null && event.getId() - logFileId >= LOG_FILE_FLUSH_EVENTS) {
+            flushLogFile();
+        }
+    }
+
+    private static void appendHtml(StringBuilder buf, ReportEventLog.Event event) {
+        switch (event.getName()) {
+        case ReportEventLog.HEADLINE:
+            buf.append("<span class='head'>").append(event.getText()).append("</span>");
+            break;
+        case ReportEventLog.WARNING:
+            buf.append("<span class='warn'>").append(event.getText()).append("</span>");
+            break;
+        case ReportEventLog.ERROR:
+            buf.append("<span class='err'>").append(event.getText()).append("</span>");
+            break;
+        case ReportEventLog.NOTE:
+            buf.append("<span class='note'>").append(event.getText()).append("</span>");
+            break;
+        case ReportEventLog.OK:
+            buf.append("<span class='ok'>").append(event.getText()).append("</span>");
+            break;
+        case ReportEventLog.THROWABLE:
+            buf.append("<span class='throw'>").append(event.getText()).append("</span>");
+            break;
+        case ReportEventLog.LINEBREAK:
+            buf.append("\n");
+            break;
+        default:
+            buf.append(event.getText());
+        }
     }
 
     @Override
@@ -550,25 +538,8 @@ public class HtmlReport extends AbstractReport {
      * @return true if the report Thread is still alive
      */
     public boolean isAlive(HttpServletRequest request) {
-        ThreadGroup threadGroup = Thread.currentThread().getThreadGroup();
-        int i = threadGroup.activeCount();
-        Thread[] threads = new Thread[i];
-        threadGroup.enumerate(threads, true);
-        AbstractReportThread thread = null;
-        for (int j = 0; j < threads.length; j++) {
-            Thread threadInstance = threads[j];
-            if (threadInstance instanceof AbstractReportThread) {
-                if (((AbstractReportThread) threadInstance).getUUID().toString().equals(getParamThread(request))) {
-                    thread = (AbstractReportThread) threadInstance;
-                    break;
-                }
-            }
-        }
-        if (thread != null) {
-            return thread.isAlive();
-        } else {
-            return false;
-        }
+        AbstractReportThread thread = AbstractReportThread.findThread(getParamThread(request));
+        return thread != null && thread.isAlive();
     }
 
     /**
@@ -1222,32 +1193,34 @@ public class HtmlReport extends AbstractReport {
     }
     @Override
     public void addLogFile(String logFileName) {
-        if (logFile == null || logFileOutputStream == null) {
-            this.logFileName = logFileName;
-            logFile = FileUtil.getFile(logFileName);
-            try {
-                logFileOutputStream = new FileOutputStream(logFile);
-            } catch (FileNotFoundException e) {
-                // do nothing
+        synchronized (logFileLock) {
+            if (logFile == null || logFileOutputStream == null) {
+                this.logFileName = logFileName;
+                logFile = FileUtil.getFile(logFileName);
+                try {
+                    logFileOutputStream = new FileOutputStream(logFile);
+                } catch (FileNotFoundException e) {
+                    // do nothing
+                }
             }
         }
     }
+
+    /**
+     * Writes the whole output to the log file and closes it.<p>
+     * Viewers of the report keep reading the output from their own position, so there is no need to wait for them.
+     */
     @Override
     public String closeLogFile() {
-        if (logFileOutputStream != null) {
-            try {
-                logFileOutputStream.flush();
-            } catch (IOException e) {
-                // do nothing
-            } finally {
-                if (logFileOutputStream != null) {
-                    try {
-                        logFileOutputStream.close();
-                    } catch (IOException e) {
-                        // do nothing
-                        Debug.logError(e, MODULE);
-                    }
+        flushLogFile();
+        synchronized (logFileLock) {
+            if (logFileOutputStream != null) {
+                try {
+                    logFileOutputStream.close();
+                } catch (IOException e) {
+                    Debug.logError(e, MODULE);
                 }
+                logFileOutputStream = null;
             }
         }
         return logFileName;
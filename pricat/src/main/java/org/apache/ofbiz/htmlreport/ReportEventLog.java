@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.htmlreport;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Append-only log of the output of a report.<p>
+ * The output is appended without locking, as a linked list of events numbered in order, so that any number of
+ * viewers can read it concurrently, each from its own position, without taking the output away from the others.
+ * Only the last <code>pricat.report.events.max</code> events are kept: the readers keep the id of the last event they
+ * read rather than the event, so that the older events are freed, and find their position again with {@link #after(long)},
+ * which tells them how many events they missed.
+ */
+public final class ReportEventLog {
+
+    // the names of the events are the functions of the report page printing them
+
+    /** Event of a headline. */
+    public static final String HEADLINE = "aH";
+
+    /** Event of a warning. */
+    public static final String WARNING = "aW";
+
+    /** Event of an error. */
+    public static final String ERROR = "aE";
+
+    /** Event of a note. */
+    public static final String NOTE = "aN";
+
+    /** Event of an ok. */
+    public static final String OK = "aO";
+
+    /** Event of an exception. */
+    public static final String THROWABLE = "aT";
+
+    /** Event of a line break, without text. */
+    public static final String LINEBREAK = "aB";
+
+    /** Event of a text without format. */
+    public static final String DEFAULT = "a";
+
+    private static final int MAX_EVENTS = UtilProperties.getPropertyAsInteger("pricat", "pricat.report.events.max", 10000);
+
+    /** The position preceding the first event kept. */
+    private final AtomicReference<Event> first = new AtomicReference<>(new Event(0, null, null));
+    private final AtomicReference<Event> tail = new AtomicReference<>(first.get());
+
+    /**
+     * Appends an event to the log.<p>
+     * @param name the name of the event
+     * @param text the text of the event
+     * @return the event
+     */
+    public Event append(String name, String text) {
+        while (true) {
+            Event last = tail.get();
+            Event event = new Event(last.id + 1, name, text);
+            if (Event.NEXT.compareAndSet(last, null, event)) {
+                tail.compareAndSet(last, event);
+                dropOldest(event.id);
+                return event;
+            }
+            // another thread appended an event after the last one, help it to move the tail forward
+            tail.compareAndSet(last, last.next);
+        }
+    }
+
+    /**
+     * Returns the start of the log, preceding its first event kept.<p>
+     * @return the position to read from with {@link Event#getNext()}
+     */
+    public Event start() {
+        return first.get();
+    }
+
+    /**
+     * Returns the position following an event already read.<p>
+     * When the events following it were dropped, the position is the start of the log, and its id is greater than the
+     * given one: the difference is the number of events missed.
+     * @param id the id of the last event read, 0 for none
+     * @return the position to read from with {@link Event#getNext()}
+     */
+    public Event after(long id) {
+        Event position = start();
+        Event next;
+        while ((next = position.next) != null && next.id <= id) {
+            position = next;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the last event of the log.<p>
+     * @return the last event, the start of the log when it is empty
+     */
+    public Event last() {
+        Event last = tail.get();
+        Event next;
+        while ((next = last.next) != null) {
+            last = next;
+        }
+        return last;
+    }
+
+    private void dropOldest(long lastId) {
+        Event start;
+        while (lastId - (start = first.get()).id > MAX_EVENTS && start.next != null) {
+            first.compareAndSet(start, start.next);
+        }
+    }
+
+    /**
+     * An event of the log.
+     */
+    public static final class Event {
+        private static final AtomicReferenceFieldUpdater<Event, Event> NEXT = AtomicReferenceFieldUpdater.newUpdater(Event.class,
+                Event.class, "next");
+        private final long id;
+        private final String name;
+        private final String text;
+        private volatile Event next;
+
+        private Event(long id, String name, String text) {
+            this.id = id;
+            this.name = name;
+            this.text = text;
+        }
+
+        /**
+         * Returns the number of the event in the log, starting at 1.<p>
+         * @return the id
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Returns the name of the event, one of the constants of {@link ReportEventLog}.<p>
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the text of the event, HTML markup as printed to the report.<p>
+         * @return the text
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Returns the event appended after this one.<p>
+         * @return the next event, null if none yet
+         */
+        public Event getNext() {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.htmlreport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.GenericValue;
+
+/**
+ * Streams the output of running reports to the browser as Server-Sent Events.<p>
+ * Each viewer reads the {@link ReportEventLog} of the report from its own position, so any number of viewers can
+ * attach to the same report, and a viewer reconnecting with a <code>Last-Event-ID</code> resumes where it stopped.
+ * The streams are asynchronous and written without blocking by a single thread every
+ * <code>pricat.report.events.interval</code> milliseconds; a stream ends with an <code>end</code> event once the
+ * report thread is over and its whole output is sent, the report is then removed from the session. Events dropped from
+ * the log before a viewer read them are replaced by a warning. The pusher thread is started by the first stream and
+ * stopped by {@link #shutdown()} when the webapp is undeployed.
+ */
+public final class ReportEventStreamer {
+
+    private static final String MODULE = ReportEventStreamer.class.getName();
+    private static final long INTERVAL = UtilProperties.getPropertyAsLong("pricat", "pricat.report.events.interval", 250L);
+    private static final long HEARTBEAT = UtilProperties.getPropertyAsLong("pricat", "pricat.report.events.heartbeat", 15000L);
+    private static final int MAX_CHUNK_SIZE = 65536;
+    private static final Set<EventStream> STREAMS = ConcurrentHashMap.newKeySet();
+    /** The thread writing the streams, guarded by the class lock. */
+    private static ScheduledExecutorService pusher;
+
+    private ReportEventStreamer() { }
+
+    /**
+     * Opens a stream of the output of a report thread.<p>
+     * The <code>thread</code> parameter is the UUID of the report thread, only the user who started the report may
+     * view it. Once the thread is over, the output of the report of the session is still sent if it was written by
+     * that thread.
+     * @param request the request
+     * @param response the response
+     * @return "success", or "error" when the report is not found
+     */
+    public static String streamReportEvents(HttpServletRequest request, HttpServletResponse response) {
+        String threadId = request.getParameter("thread");
+        AbstractReportThread thread = AbstractReportThread.findThread(threadId);
+        HttpSession session = request.getSession();
+        HtmlReport report = null;
+        if (thread != null) {
+            if (thread.isViewableBy((GenericValue) session.getAttribute("userLogin"))) {
+                report = thread.getHtmlReport();
+            }
+        } else {
+            Object sessionReport = session.getAttribute(AbstractReport.SESSION_REPORT_CLASS);
+            if (sessionReport instanceof HtmlReport && UtilValidate.isNotEmpty(threadId)
+                    && threadId.equals(((HtmlReport) sessionReport).getParamThread())) {
+                report = (HtmlReport) sessionReport;
+            }
+        }
+        if (report == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return "error";
+        }
+        String lastEventId = request.getHeader("Last-Event-ID");
+        long lastId = 0;
+        if (UtilValidate.isNotEmpty(lastEventId)) {
+            try {
+                lastId = Long.parseLong(lastEventId);
+            } catch (NumberFormatException e) {
+                Debug.logWarning("Invalid Last-Event-ID " + lastEventId, MODULE);
+            }
+        }
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+        try {
+            AsyncContext asyncContext = request.startAsync();
+            asyncContext.setTimeout(0);
+            EventStream stream = new EventStream(thread, report, session, lastId, asyncContext, response.getOutputStream());
+            asyncContext.addListener(stream);
+            stream.output.setWriteListener(stream);
+            STREAMS.add(stream);
+            startPusher();
+        } catch (IOException | IllegalStateException e) {
+            Debug.logError(e, "Unable to stream the events of report thread " + threadId, MODULE);
+            return "error";
+        }
+        return "success";
+    }
+
+    private static synchronized void startPusher() {
+        if (pusher == null) {
+            pusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "report-event-streamer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            pusher.scheduleWithFixedDelay(ReportEventStreamer::pushAll, INTERVAL, INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the pusher thread and completes the open streams.
+     */
+    public static synchronized void shutdown() {
+        if (pusher != null) {
+            pusher.shutdownNow();
+            pusher = null;
+        }
+        for (EventStream stream : STREAMS) {
+            stream.complete();
+        }
+    }
+
+    private static void pushAll() {
+        for (EventStream stream : STREAMS) {
+            try {
+                stream.push();
+            } catch (IOException | RuntimeException e) {
+                Debug.logVerbose("Report event stream closed: " + e, MODULE);
+                stream.complete();
+            }
+        }
+    }
+
+    /**
+     * The stream of a viewer, written only by the pusher thread.
+     */
+    private static final class EventStream implements AsyncListener, WriteListener {
+        /** The report thread, null once over. */
+        private final AbstractReportThread thread;
+        private final HtmlReport report;
+        private final ReportEventLog eventLog;
+        private final HttpSession session;
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream output;
+        /** The id of the last event sent, the events are not referenced so that they are freed once read by all. */
+        private long lastId;
+        private long lastWrite = System.currentTimeMillis();
+        private boolean ended;
+
+        private EventStream(AbstractReportThread thread, HtmlReport report, HttpSession session, long lastId, AsyncContext asyncContext,
+                ServletOutputStream output) {
+            this.thread = thread;
+            this.report = report;
+            this.eventLog = report.getEventLog();
+            this.session = session;
+            this.lastId = lastId;
+            this.asyncContext = asyncContext;
+            this.output = output;
+        }
+
+        private void push() throws IOException {
+            if (!output.isReady()) {
+                // the previous chunk is still being sent
+                return;
+            }
+            if (ended) {
+                complete();
+                return;
+            }
+            // read whether the thread is over before reading the log, its whole output is then in the log
+            boolean alive = thread != null && thread.isAlive();
+            StringBuilder chunk = new StringBuilder();
+            ReportEventLog.Event position = eventLog.after(lastId);
+            if (position.getId() > lastId) {
+                // without an id, so that a reconnection resumes after the last event actually sent
+                appendData(chunk.append("event: ").append(ReportEventLog.WARNING).append('\n'),
+                        report.getEventsDroppedMessage(position.getId() - lastId));
+            }
+            ReportEventLog.Event event;
+            while (chunk.length() < MAX_CHUNK_SIZE && (event = position.getNext()) != null) {
+                appendEvent(chunk, event);
+                position = event;
+            }
+            lastId = position.getId();
+            if (!alive && position.getNext() == null) {
+                chunk.append("event: end\ndata:\n\n");
+                ended = true;
+                releaseReport();
+            } else if (chunk.length() == 0 && System.currentTimeMillis() - lastWrite >= HEARTBEAT) {
+                chunk.append(":\n\n");
+            }
+            if (chunk.length() > 0) {
+                output.write(chunk.toString().getBytes(StandardCharsets.UTF_8));
+                if (output.isReady()) {
+                    output.flush();
+                }
+                lastWrite = System.currentTimeMillis();
+            }
+        }
+
+        private static void appendEvent(StringBuilder chunk, ReportEventLog.Event event) {
+            chunk.append("id: ").append(event.getId()).append('\n');
+            chunk.append("event: ").append(event.getName()).append('\n');
+            appendData(chunk, event.getText());
+        }
+
+        private static void appendData(StringBuilder chunk, String text) {
+            for (String line : text.split("\r\n|\r|\n", -1)) {
+                chunk.append("data: ").append(line).append('\n');
+            }
+            chunk.append('\n');
+        }
+
+        /**
+         * Removes the report from the session once its whole output is sent, so that its log is not kept with the session.
+         */
+        private void releaseReport() {
+            try {
+                if (session.getAttribute(AbstractReport.SESSION_REPORT_CLASS) == report) {
+                    session.removeAttribute(AbstractReport.SESSION_REPORT_CLASS);
+                }
+            } catch (IllegalStateException e) {
+                Debug.logVerbose("Session of the report already invalidated", MODULE);
+            }
+        }
+
+        private void complete() {
+            if (STREAMS.remove(this)) {
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    Debug.logVerbose("Report event stream already completed", MODULE);
+                }
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            // the pusher thread writes the stream on its next run
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            Debug.logVerbose("Report event stream failed: " + t, MODULE);
+            STREAMS.remove(this);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            STREAMS.remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            complete();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            STREAMS.remove(this);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -30,8 +32,11 @@ import java.util.Locale;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import javax.transaction.Status;
 
 import org.apache.poi.hssf.usermodel.HSSFDataFormatter;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.ClientAnchor.AnchorType;
 import org.apache.poi.ss.util.CellAddress;
@@ -54,8 +59,10 @@ import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.commons.fileupload.FileItem;
 
+import org.apache.ofbiz.htmlreport.BufferedReport;
 import org.apache.ofbiz.htmlreport.InterfaceReport;
 import org.apache.ofbiz.order.finaccount.FinAccountHelper;
+import org.apache.ofbiz.pricat.util.CommentedPackageWriter;
 import org.apache.ofbiz.pricat.util.OFBizPricatUtil;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.FileUtil;
@@ -68,6 +75,8 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
@@ -78,6 +87,7 @@ import org.apache.ofbiz.service.ServiceUtil;
 public abstract class AbstractPricatParser implements InterfacePricatParser {
 
     private static final String MODULE = AbstractPricatParser.class.getName();
+    private static final int BATCH_SIZE = Math.max(1, UtilProperties.getPropertyAsInteger("pricat.properties", "pricat.import.batchSize", 100));
     private LocalDispatcher dispatcher;
     private Delegator delegator;
     private List<FileItem> fileItems;
@@ -97,6 +107,11 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
     private InterfaceReport report;
     private Locale locale;
     private long sequenceNum = -1L;
+    private PricatLookupCache lookupCache = new PricatLookupCache();
+    private List<BatchRow> batch = new ArrayList<>();
+    private boolean beganBatchTransaction;
+    private final ThreadLocal<RowValidation> rowValidation = new ThreadLocal<>();
+    private final ThreadLocal<HSSFDataFormatter> validationFormatter = ThreadLocal.withInitial(() -> new HSSFDataFormatter(getLocale()));
     /**
      * Gets pricat file version.
      * @return the pricat file version
@@ -188,7 +203,7 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
      * @return the formatter
      */
     public HSSFDataFormatter getFormatter() {
-        return formatter;
+        return rowValidation.get() != null ? validationFormatter.get() : formatter;
     }
 
     /**
@@ -204,7 +219,8 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
      * @return the error messages
      */
     public Map<CellReference, String> getErrorMessages() {
-        return errorMessages;
+        RowValidation validation = rowValidation.get();
+        return validation != null ? validation.errorMessages : errorMessages;
     }
 
     /**
@@ -236,7 +252,8 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
      * @return the report
      */
     public InterfaceReport getReport() {
-        return report;
+        RowValidation validation = rowValidation.get();
+        return validation != null ? validation.report : report;
     }
 
     /**
@@ -255,6 +272,14 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
         return locale;
     }
 
+    /**
+     * Gets the lookup cache of the import.
+     * @return the lookup cache
+     */
+    public PricatLookupCache getLookupCache() {
+        return lookupCache;
+    }
+
     public AbstractPricatParser(LocalDispatcher dispatcher, Delegator delegator, Locale locale, InterfaceReport report,
                                 Map<String, String[]> facilities, File pricatFile, GenericValue userLogin) {
         this.dispatcher = dispatcher;
@@ -453,6 +478,47 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
         report.println();
     }
 
+    /**
+     * Writes the error messages as comments to a copy of the excel file without loading the workbook, see
+     * {@link CommentedPackageWriter}. The uploaded file is left as it is: without a sequence number the copy is written
+     * next to it, as <code>&lt;name&gt;_errors.xlsx</code>. The package is closed before the copy is written.
+     * @param pkg the package of the pricat file
+     * @param sheetPart the part of the sheet
+     */
+    protected void writeCommentsToFile(OPCPackage pkg, PackagePart sheetPart) {
+        report.println();
+        report.print(UtilProperties.getMessage(RESOURCE, "WriteCommentsBackToExcel", locale), InterfaceReport.FORMAT_NOTE);
+        File commentedExcel;
+        if (sequenceNum > 0L) {
+            commentedExcel = FileUtil.getFile(TEMP_FILES_FOLDER + userLoginId + "/" + sequenceNum + ".xlsx");
+        } else {
+            String baseName = pricatFile.getName().replaceFirst("(?i)\\.xlsx$", "");
+            commentedExcel = new File(pricatFile.getAbsoluteFile().getParentFile(), baseName + "_errors.xlsx");
+        }
+        String sheetPartName = sheetPart.getPartName().getName();
+        pkg.revert();
+        String errorSheetName = WorkbookUtil.createSafeSheetName(UtilDateTime.nowDateString("yyyy-MM-dd HHmm") + " Errors");
+        CommentedPackageWriter writer = new CommentedPackageWriter(pricatFile, sheetPartName, getHeaderRowNo() + 1, errorSheetName,
+                errorMessages);
+        File tmpFile = null;
+        try {
+            // a previous commented file is only replaced once the new one is complete
+            tmpFile = File.createTempFile("pricat", ".xlsx", commentedExcel.getAbsoluteFile().getParentFile());
+            writer.write(tmpFile);
+            Files.move(tmpFile.toPath(), commentedExcel.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            tmpFile = null;
+        } catch (IOException e) {
+            report.println(e);
+            Debug.logError(e, MODULE);
+        } finally {
+            if (tmpFile != null && !tmpFile.delete()) {
+                Debug.logWarning("Could not delete " + tmpFile, MODULE);
+            }
+        }
+        report.println(UtilProperties.getMessage(RESOURCE, "ok", locale), InterfaceReport.FORMAT_OK);
+        report.println();
+    }
+
     private void copyRow(XSSFRow sourceRow, XSSFRow targetRow, XSSFCreationHelper factory, XSSFDrawing patriarch) {
         for (int j = 0; j < sourceRow.getPhysicalNumberOfCells(); j++) {
             XSSFCell cell = sourceRow.getCell(j);
@@ -527,8 +593,8 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
     @Override
     public Map<String, Object> updateColorAndDimension(String productId, String ownerPartyId, String color, String dimension) {
         Map<String, Object> results = ServiceUtil.returnSuccess();
-        results.put("colorId", "sampleColorId");
-        results.put("dimensionId", "sampleDimensionId");
+        results.put("colorId", getColorIds(productId, ownerPartyId, color).get("colorId"));
+        results.put("dimensionId", getDimensionIds(productId, ownerPartyId, dimension).get("dimensionId"));
         return results;
     }
 
@@ -552,10 +618,311 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
         return "sampleBrandId";
     }
 
+    /**
+     * Gets the id of a product feature of an owner by description, for the parsers resolving the brands, colors and sizes
+     * as product features; the sample lookups do not. The features of the owner are prefetched on its first lookup: the
+     * brands selected by the basic brand conditions, see {@link #initBasicConds(List)}, the other features owned by the
+     * owner or public.
+     * @param ownerPartyId the owner party id
+     * @param productFeatureTypeId the product feature type, BRAND, COLOR, SIZE...
+     * @param description the description of the feature
+     * @return the productFeatureId, or null when not found
+     */
+    protected String getPrefetchedFeatureId(String ownerPartyId, String productFeatureTypeId, String description) {
+        if (!lookupCache.hasFeatures(ownerPartyId, productFeatureTypeId)) {
+            List<EntityCondition> conds = new ArrayList<>();
+            if ("BRAND".equals(productFeatureTypeId)) {
+                conds.addAll(basicBrandConds);
+                conds.add(EntityCondition.makeCondition("ownerPartyId", ownerPartyId));
+            } else {
+                conds.add(EntityCondition.makeCondition("productFeatureTypeId", productFeatureTypeId));
+                conds.add(EntityCondition.makeCondition(EntityCondition.makeCondition("ownerPartyId", ownerPartyId), EntityOperator.OR,
+                        EntityCondition.makeCondition("isPublic", "Y")));
+            }
+            try {
+                lookupCache.prefetchFeatures(delegator, ownerPartyId, productFeatureTypeId, EntityCondition.makeCondition(conds));
+            } catch (GenericEntityException e) {
+                Debug.logWarning(e, "Unable to prefetch the " + productFeatureTypeId + " product features of " + ownerPartyId, MODULE);
+                return null;
+            }
+        }
+        return lookupCache.getFeatureId(ownerPartyId, productFeatureTypeId, description);
+    }
+
+    /**
+     * Gets the brand id from the lookup cache, or by {@link #getBrandId(String, String)}.
+     * @param brandName the brand name
+     * @param ownerPartyId the owner party id
+     * @return the brand id
+     */
+    protected String getCachedBrandId(String brandName, String ownerPartyId) {
+        String brandId = (String) lookupCache.getLookup("brand", brandName, ownerPartyId);
+        if (brandId == null) {
+            brandId = getBrandId(brandName, ownerPartyId);
+            if (UtilValidate.isNotEmpty(brandId)) {
+                lookupCache.putLookup(brandId, "brand", brandName, ownerPartyId);
+            }
+        }
+        return brandId;
+    }
+
+    /**
+     * Gets the product id from the lookup cache, or by {@link #getProductId(XSSFRow, String, String, String, String, String, BigDecimal)}.
+     * The rows of a same style share the product, which is created or updated by the first of them.
+     * @return the product id
+     */
+    protected String getCachedProductId(XSSFRow row, String brandId, String modelName, String productName, String productCategoryId,
+            String ownerPartyId, BigDecimal listPrice) {
+        String productId = (String) lookupCache.getLookup("product", brandId, modelName, productCategoryId, ownerPartyId);
+        if (productId == null) {
+            productId = getProductId(row, brandId, modelName, productName, productCategoryId, ownerPartyId, listPrice);
+            if (UtilValidate.isNotEmpty(productId)) {
+                lookupCache.putLookup(productId, "product", brandId, modelName, productCategoryId, ownerPartyId);
+            }
+        }
+        return productId;
+    }
+
+    /**
+     * Gets the color and dimension ids from the lookup cache, or by {@link #updateColorAndDimension(String, String, String, String)}.
+     * @return the results holding the colorId and the dimensionId
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> getCachedColorAndDimension(String productId, String ownerPartyId, String color, String dimension) {
+        Map<String, Object> results = (Map<String, Object>) lookupCache.getLookup("colorAndDimension", productId, ownerPartyId, color, dimension);
+        if (results == null) {
+            results = updateColorAndDimension(productId, ownerPartyId, color, dimension);
+            if (!ServiceUtil.isError(results)) {
+                lookupCache.putLookup(results, "colorAndDimension", productId, ownerPartyId, color, dimension);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stores the contents of a row in the transaction of the current batch, which is committed every
+     * <code>pricat.import.batchSize</code> rows by {@link #commitBatch()}.
+     * <p>
+     * When a row fails with an exception or marks the transaction for rollback, the batch is rolled back and
+     * its rows are stored again one by one, each in its own transaction, so that only the failing rows are lost.
+     * @param rowNum the row number
+     * @param row the row
+     * @param cellContents the contents of the row
+     * @return whether the row is stored
+     * @throws GenericTransactionException
+     */
+    protected boolean storeRow(int rowNum, XSSFRow row, List<Object> cellContents) throws GenericTransactionException {
+        if (UtilValidate.isEmpty(cellContents)) {
+            return false;
+        }
+        if (batch.isEmpty()) {
+            beganBatchTransaction = TransactionUtil.begin();
+        }
+        batch.add(new BatchRow(rowNum, row, cellContents));
+        boolean stored;
+        try {
+            stored = parseCellContentsAndStore(row, cellContents);
+            if (TransactionUtil.getStatus() == Status.STATUS_MARKED_ROLLBACK) {
+                return replayBatch(new GenericTransactionException("Row " + (rowNum + 1) + " marked the transaction for rollback"), false);
+            }
+        } catch (GenericTransactionException | RuntimeException e) {
+            return replayBatch(e, false);
+        }
+        if (batch.size() >= BATCH_SIZE) {
+            commitBatch();
+        }
+        return stored;
+    }
+
+    /**
+     * Commits the transaction of the current batch of rows, if any.
+     */
+    protected void commitBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            TransactionUtil.commit(beganBatchTransaction);
+            releaseBatch(batch);
+            batch.clear();
+        } catch (GenericTransactionException e) {
+            replayBatch(e, true);
+        }
+    }
+
+    /**
+     * Rolls back the transaction of the current batch of rows, if any, when the import stops before its end.
+     */
+    protected void rollbackBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            TransactionUtil.rollback(beganBatchTransaction, "Pricat import stopped", null);
+        } catch (GenericTransactionException e) {
+            Debug.logError(e, MODULE);
+        }
+        releaseBatch(batch);
+        batch.clear();
+        lookupCache.clearLookups();
+    }
+
+    private void releaseBatch(List<BatchRow> rows) {
+        for (BatchRow batchRow : rows) {
+            releaseRow(batchRow.row);
+        }
+    }
+
+    /**
+     * Rolls back the batch and stores its rows one by one.
+     * @param cause the cause of the rollback
+     * @param reportLastRow whether to report the outcome of the last row, else it is returned to the caller
+     * @return whether the last row is stored
+     */
+    private boolean replayBatch(Throwable cause, boolean reportLastRow) {
+        Debug.logError(cause, "Rolling back the pricat rows " + (batch.get(0).rowNum + 1) + " to " + (batch.get(batch.size() - 1).rowNum + 1),
+                MODULE);
+        try {
+            TransactionUtil.rollback(beganBatchTransaction, "Error storing a batch of pricat rows", cause);
+        } catch (GenericTransactionException e) {
+            Debug.logError(e, MODULE);
+        }
+        lookupCache.clearLookups();
+        List<BatchRow> rows = batch;
+        batch = new ArrayList<>();
+        report.println();
+        report.println(UtilProperties.getMessage(RESOURCE, "PricatBatchRolledBack", new Object[]{String.valueOf(rows.get(0).rowNum + 1),
+                String.valueOf(rows.get(rows.size() - 1).rowNum + 1)}, locale), InterfaceReport.FORMAT_WARNING);
+        boolean stored = false;
+        for (int i = 0; i < rows.size(); i++) {
+            BatchRow batchRow = rows.get(i);
+            stored = storeRowAlone(batchRow);
+            if (reportLastRow || i < rows.size() - 1) {
+                report.print("(" + (batchRow.rowNum + 1) + ")", InterfaceReport.FORMAT_NOTE);
+                if (stored) {
+                    report.println(" ... " + UtilProperties.getMessage(RESOURCE, "ok", locale), InterfaceReport.FORMAT_OK);
+                } else {
+                    report.println(" ... " + UtilProperties.getMessage(RESOURCE, "skipped", locale), InterfaceReport.FORMAT_NOTE);
+                }
+            }
+        }
+        if (!reportLastRow) {
+            report.print("(" + (rows.get(rows.size() - 1).rowNum + 1) + ")", InterfaceReport.FORMAT_NOTE);
+        }
+        releaseBatch(rows);
+        return stored;
+    }
+
+    private boolean storeRowAlone(BatchRow batchRow) {
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            // the output of the row was reported when first stored, only its error messages are kept
+            boolean stored;
+            beginRowValidation();
+            try {
+                stored = parseCellContentsAndStore(batchRow.row, batchRow.cellContents);
+            } finally {
+                errorMessages.putAll(endRowValidation().errorMessages);
+            }
+            TransactionUtil.commit(beganTransaction);
+            return stored;
+        } catch (GenericTransactionException | RuntimeException e) {
+            Debug.logError(e, "Error storing the pricat row " + (batchRow.rowNum + 1), MODULE);
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error storing a pricat row", e);
+            } catch (GenericTransactionException e1) {
+                Debug.logError(e1, MODULE);
+            }
+            lookupCache.clearLookups();
+            report.println(e);
+            return false;
+        }
+    }
+
+    /**
+     * A row stored in the current batch, kept to be stored again if the batch is rolled back.
+     */
+    private static final class BatchRow {
+        private final int rowNum;
+        private final XSSFRow row;
+        private final List<Object> cellContents;
+
+        private BatchRow(int rowNum, XSSFRow row, List<Object> cellContents) {
+            this.rowNum = rowNum;
+            this.row = row;
+            this.cellContents = cellContents;
+        }
+    }
+
+    /**
+     * Releases a row once it is stored, or once it is known not to be stored. Does nothing by default.
+     * @param row the row
+     */
+    protected void releaseRow(XSSFRow row) {
+    }
+
+    /**
+     * Starts the validation of a row on the current thread: until {@link #endRowValidation()}, the output of the parser
+     * and its error messages are kept aside, and the parser uses a formatter of the current thread.
+     */
+    protected void beginRowValidation() {
+        rowValidation.set(new RowValidation(locale));
+    }
+
+    /**
+     * Ends the validation of a row on the current thread.
+     * @return the output and error messages of the validation, to be merged with {@link #mergeRowValidation(RowValidation)}
+     */
+    protected RowValidation endRowValidation() {
+        RowValidation validation = rowValidation.get();
+        rowValidation.remove();
+        return validation;
+    }
+
+    /**
+     * Writes the output and error messages of a row validation to the report and error messages of the parser.
+     * @param validation the result of {@link #endRowValidation()}
+     */
+    protected void mergeRowValidation(RowValidation validation) {
+        validation.report.flushTo(report);
+        errorMessages.putAll(validation.errorMessages);
+    }
+
+    /**
+     * The output and error messages of a row validated on another thread than the storage's.
+     */
+    protected static final class RowValidation {
+        private final BufferedReport report;
+        private final Map<CellReference, String> errorMessages = new HashMap<>();
+
+        private RowValidation(Locale locale) {
+            this.report = new BufferedReport(locale);
+        }
+    }
+
+    /**
+     * Makes the reference of a cell, whether the cell exists or not.
+     * @param row the row
+     * @param col the column of the cell
+     * @return the cell reference
+     */
+    protected static CellReference makeCellReference(XSSFRow row, int col) {
+        return new CellReference(row.getSheet().getSheetName(), row.getRowNum(), col, false, false);
+    }
+
     @Override
     public boolean isNumOfSheetsOK(XSSFWorkbook workbook) {
+        return isNumOfSheetsOK(workbook.getNumberOfSheets());
+    }
+
+    /**
+     * Checks the number of sheets of a pricat file read as a stream.
+     * @param sheets the number of sheets
+     * @return whether the file has a sheet at least
+     */
+    public boolean isNumOfSheetsOK(int sheets) {
         report.print(UtilProperties.getMessage(RESOURCE, "CheckPricatHasSheet", locale), InterfaceReport.FORMAT_NOTE);
-        int sheets = workbook.getNumberOfSheets();
         if (sheets < 1) {
             report.println(UtilProperties.getMessage(RESOURCE, "PricatTableNoSheet", locale), InterfaceReport.FORMAT_ERROR);
             return false;
@@ -575,6 +942,9 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
      */
     @Override
     public List<Object> getCellContents(XSSFRow row, List<Object[]> colNames, int size) {
+        InterfaceReport report = getReport();
+        Map<CellReference, String> errorMessages = getErrorMessages();
+        HSSFDataFormatter formatter = getFormatter();
         List<Object> results = new ArrayList<>();
         boolean foundError = false;
         if (isEmptyRow(row, size, true)) {
@@ -589,15 +959,14 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
                 if ((Boolean) colNames.get(i)[2]) {
                     report.print(UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty", new Object[]{colNames.get(i)[0]}, locale),
                             InterfaceReport.FORMAT_WARNING);
-                    errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
+                    errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
                             new Object[]{colNames.get(i)[0]}, locale));
                     foundError = true;
                     continue;
-                } else {
-                    cell = row.createCell(i);
                 }
             }
-            CellType cellType = cell.getCellType();
+            // a missing cell is read as a blank one, without creating it: rows are validated concurrently
+            CellType cellType = cell != null ? cell.getCellType() : CellType.BLANK;
             String cellValue = formatter.formatCellValue(cell);
             if (UtilValidate.isNotEmpty(cellValue)) {
                 if (cellType == CellType.FORMULA) {
@@ -613,7 +982,7 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
             if ((Boolean) colNames.get(i)[2] && UtilValidate.isEmpty(cellValue)) {
                 report.print(UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty", new Object[]{colNames.get(i)[0]}, locale),
                         InterfaceReport.FORMAT_WARNING);
-                errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
+                errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
                         new Object[]{colNames.get(i)[0]}, locale));
                 foundError = true;
                 results.add(null);
@@ -624,15 +993,12 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
                 if (colNames.get(i)[1] == CellType.STRING) {
                     results.add(cellValue);
                 } else if (colNames.get(i)[1] == CellType.NUMERIC) {
-                    if (cell.getCellType() != CellType.STRING) {
-                        cell.setCellType(CellType.STRING);
-                    }
                     try {
-                        results.add(BigDecimal.valueOf(Double.parseDouble(cell.getStringCellValue()))
+                        results.add(BigDecimal.valueOf(Double.parseDouble(cellType == CellType.STRING ? cell.getStringCellValue() : cellValue))
                                 .setScale(FinAccountHelper.getDecimals(), FinAccountHelper.getRounding()));
                     } catch (NumberFormatException e) {
                         results.add(null);
-                        errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                        errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                     }
                 }
             } else {
@@ -641,26 +1007,26 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
                     continue;
                 }
                 if (colNames.get(i)[1] == CellType.STRING) {
-                    if (cell.getCellType() == CellType.STRING) {
+                    if (cellType == CellType.STRING) {
                         results.add(cell.getStringCellValue());
                     } else {
                         results.add(cellValue);
                     }
                 } else if (colNames.get(i)[1] == CellType.NUMERIC) {
-                    if (cell.getCellType() == CellType.STRING) {
+                    if (cellType == CellType.STRING) {
                         try {
                             results.add(BigDecimal.valueOf(Double.valueOf(cell.getStringCellValue())));
                         } catch (NumberFormatException e) {
                             results.add(null);
-                            errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                            errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                         }
-                    } else if (cell.getCellType() == CellType.NUMERIC) {
+                    } else if (cellType == CellType.NUMERIC) {
                         try {
                             results.add(BigDecimal.valueOf(cell.getNumericCellValue())
                                     .setScale(FinAccountHelper.getDecimals(), FinAccountHelper.getRounding()));
                         } catch (NumberFormatException e) {
                             results.add(null);
-                            errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                            errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                         }
                     } else {
                         try {
@@ -668,7 +1034,7 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
                                     .setScale(FinAccountHelper.getDecimals(), FinAccountHelper.getRounding()));
                         } catch (NumberFormatException e) {
                             results.add(null);
-                            errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                            errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                         }
                     }
                 }
@@ -693,6 +1059,8 @@ public abstract class AbstractPricatParser implements InterfacePricatParser {
      * @return the boolean
      */
     protected boolean isEmptyRow(XSSFRow row, int size, boolean display) {
+        InterfaceReport report = getReport();
+        HSSFDataFormatter formatter = getFormatter();
         // check whether this row is empty
         if (UtilValidate.isEmpty(row)) {
             report.print(UtilProperties.getMessage(RESOURCE, "ExcelEmptyRow", locale), InterfaceReport.FORMAT_NOTE);
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.pricat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * Import scoped cache of the lookups made while storing the rows of a pricat file.
+ * <p>
+ * The product features of an owner can be prefetched in bulk, by type, and the results of the brand, product, color
+ * and dimension lookups are kept until the end of the import, so that rows sharing a value do not repeat the same
+ * queries. The lookups and features loaded in a batch of rows that is rolled back are forgotten, since they may hold
+ * values created in the rolled back transaction.
+ */
+public class PricatLookupCache {
+
+    private final Map<List<String>, Map<String, String>> featureIds = new HashMap<>();
+    private final Map<List<String>, Object> lookups = new HashMap<>();
+
+    /**
+     * Tells whether the product features of a type are prefetched for an owner.
+     * @param ownerPartyId the owner party id
+     * @param productFeatureTypeId the product feature type
+     * @return whether the features are prefetched
+     */
+    public boolean hasFeatures(String ownerPartyId, String productFeatureTypeId) {
+        return featureIds.containsKey(makeKey(productFeatureTypeId, ownerPartyId));
+    }
+
+    /**
+     * Loads the ids of the product features of a type for an owner, by description. When features share a description,
+     * the one with the lowest id is kept.
+     * @param delegator the delegator
+     * @param ownerPartyId the owner party id
+     * @param productFeatureTypeId the product feature type
+     * @param condition the condition selecting the features of the owner
+     * @throws GenericEntityException
+     */
+    public void prefetchFeatures(Delegator delegator, String ownerPartyId, String productFeatureTypeId, EntityCondition condition)
+            throws GenericEntityException {
+        Map<String, String> ids = new HashMap<>();
+        try (EntityListIterator features = EntityQuery.use(delegator).select("productFeatureId", "description").from("ProductFeature")
+                .where(condition).orderBy("productFeatureId").queryIterator()) {
+            GenericValue feature;
+            while ((feature = features.next()) != null) {
+                String description = feature.getString("description");
+                if (description != null) {
+                    ids.putIfAbsent(description.trim(), feature.getString("productFeatureId"));
+                }
+            }
+        }
+        featureIds.put(makeKey(productFeatureTypeId, ownerPartyId), ids);
+    }
+
+    /**
+     * Gets the id of a prefetched product feature.
+     * @param ownerPartyId the owner party id
+     * @param productFeatureTypeId the product feature type
+     * @param description the description of the feature
+     * @return the productFeatureId, or null when not found or not prefetched
+     */
+    public String getFeatureId(String ownerPartyId, String productFeatureTypeId, String description) {
+        Map<String, String> ids = featureIds.get(makeKey(productFeatureTypeId, ownerPartyId));
+        if (ids == null || description == null) {
+            return null;
+        }
+        return ids.get(description.trim());
+    }
+
+    /**
+     * Gets the result of a lookup.
+     * @param kind the kind of lookup, brand, product...
+     * @param args the arguments of the lookup
+     * @return the result, or null when the lookup was not made yet
+     */
+    public Object getLookup(String kind, String... args) {
+        return lookups.get(makeKey(kind, args));
+    }
+
+    /**
+     * Keeps the result of a lookup.
+     * @param value the result
+     * @param kind the kind of lookup, brand, product...
+     * @param args the arguments of the lookup
+     */
+    public void putLookup(Object value, String kind, String... args) {
+        lookups.put(makeKey(kind, args), value);
+    }
+
+    /**
+     * Forgets the results of the lookups and the prefetched features.
+     */
+    public void clearLookups() {
+        lookups.clear();
+        featureIds.clear();
+    }
+
+    private static List<String> makeKey(String kind, String... args) {
+        String[] key = Arrays.copyOf(new String[] {kind}, args.length + 1);
+        System.arraycopy(args, 0, key, 1, args.length);
+        return Arrays.asList(key);
+    }
+}
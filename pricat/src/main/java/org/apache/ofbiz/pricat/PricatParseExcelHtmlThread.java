@@ -172,13 +172,7 @@ public class PricatParseExcelHtmlThread extends AbstractReportThread {
             Debug.logError(e, MODULE);
             thruReasonId = "EXCEL_IMPORT_ERROR";
         } finally {
-            // wait 5 seconds to wait page output
-            try {
-                sleep(5000);
-            } catch (InterruptedException e) {
-            }
-            // call report update to make sure all messages are output to file
-            getReport().getReportUpdate();
+            // the viewers read the output from the event log of the report, closing the log file writes the whole output to it
             String logFileName = getReport().closeLogFile();
             if (UtilValidate.isNotEmpty(pricatParser)) {
                 if ("EXCEL_IMPORT_SUCCESS".equals(thruReasonId) && pricatParser.hasErrorMessages()) {
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.pricat;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralRuntimeException;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Two stage pipeline of the rows of a pricat import.
+ * <p>
+ * The rows are validated by a pool of <code>pricat.import.validationThreads</code> threads; each validation returns
+ * the storage step of its row. The storage steps are run one at a time, in the order the rows were submitted, by a
+ * single storage thread, so that the database transactions of the import are all bound to that thread. Rows wait for
+ * their storage in a queue of <code>pricat.import.queueSize</code> rows, the reading of the file is blocked when
+ * the queue is full.
+ * <p>
+ * With no validation thread, rows are validated and stored by the submitting thread.
+ */
+public class PricatRowPipeline {
+
+    private static final String MODULE = PricatRowPipeline.class.getName();
+    private static final int VALIDATION_THREADS = UtilProperties.getPropertyAsInteger("pricat.properties", "pricat.import.validationThreads",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    private static final int QUEUE_SIZE = Math.max(1, UtilProperties.getPropertyAsInteger("pricat.properties", "pricat.import.queueSize", 256));
+    private static final AtomicInteger PIPELINE_COUNT = new AtomicInteger();
+    private static final Future<Runnable> END = new FutureTask<>(() -> null);
+
+    private final ExecutorService validators;
+    private final ExecutorService storage;
+    private final BlockingQueue<Future<Runnable>> queue;
+    private final Future<?> storageLoop;
+    private final Runnable onEnd;
+    private final Runnable onFailure;
+    private volatile Throwable failure;
+
+    /**
+     * Starts a pipeline.
+     * @param onEnd run by the storage thread after the last row is stored
+     * @param onFailure run by the storage thread instead of onEnd when a row failed
+     */
+    public PricatRowPipeline(Runnable onEnd, Runnable onFailure) {
+        this.onEnd = onEnd;
+        this.onFailure = onFailure;
+        if (VALIDATION_THREADS < 1) {
+            validators = null;
+            storage = null;
+            queue = null;
+            storageLoop = null;
+            return;
+        }
+        int pipeline = PIPELINE_COUNT.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        validators = Executors.newFixedThreadPool(VALIDATION_THREADS,
+                runnable -> new Thread(runnable, "pricat-validation-" + pipeline + "-" + threadCount.incrementAndGet()));
+        storage = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "pricat-storage-" + pipeline));
+        queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        storageLoop = storage.submit(this::store);
+    }
+
+    /**
+     * Validates a row, then stores it after the rows submitted before.
+     * @param validation the validation of the row, returning the storage step of the row
+     * @return false when the pipeline failed, and no more rows should be submitted
+     */
+    public boolean submit(Callable<Runnable> validation) {
+        if (failure != null) {
+            return false;
+        }
+        if (validators == null) {
+            try {
+                validation.call().run();
+            } catch (Exception e) {
+                Debug.logError(e, "Error in the pricat row pipeline", MODULE);
+                failure = e;
+                return false;
+            }
+            return true;
+        }
+        try {
+            queue.put(validators.submit(validation));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the submitted rows are stored, then stops the threads of the pipeline.
+     * @throws GeneralRuntimeException when the validation or the storage of a row failed
+     */
+    public void finish() {
+        if (validators == null) {
+            if (failure == null) {
+                onEnd.run();
+            } else {
+                onFailure.run();
+            }
+        } else {
+            awaitStorage();
+        }
+        if (failure != null) {
+            throw new GeneralRuntimeException("Error storing the pricat rows", failure);
+        }
+    }
+
+    /**
+     * Stops the pipeline before its end: the rows not stored yet are dropped, and onFailure is run instead of onEnd.
+     */
+    public void cancel() {
+        if (failure == null) {
+            failure = new CancellationException("Pricat import stopped");
+        }
+        if (validators == null) {
+            onFailure.run();
+        } else {
+            awaitStorage();
+        }
+    }
+
+    private void awaitStorage() {
+        try {
+            queue.put(END);
+            storageLoop.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (ExecutionException e) {
+            failure = e.getCause();
+        } finally {
+            validators.shutdownNow();
+            storage.shutdown();
+            try {
+                storage.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void store() {
+        while (true) {
+            Future<Runnable> next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                failure = e;
+                onFailure.run();
+                return;
+            }
+            if (next == END) {
+                if (failure == null) {
+                    onEnd.run();
+                } else {
+                    onFailure.run();
+                }
+                return;
+            }
+            if (failure != null) {
+                // drain the queue so that the reading thread is not blocked
+                next.cancel(true);
+                continue;
+            }
+            try {
+                next.get().run();
+            } catch (InterruptedException e) {
+                failure = e;
+            } catch (ExecutionException | RuntimeException e) {
+                failure = e instanceof ExecutionException ? e.getCause() : e;
+                Debug.logError(failure, "Error in the pricat row pipeline", MODULE);
+            }
+        }
+    }
+}
@@ -19,8 +19,8 @@
 package org.apache.ofbiz.pricat.sample;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +29,7 @@ import java.util.Map;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralRuntimeException;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
@@ -40,15 +41,23 @@ import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.htmlreport.InterfaceReport;
 import org.apache.ofbiz.order.finaccount.FinAccountHelper;
 import org.apache.ofbiz.pricat.AbstractPricatParser;
+import org.apache.ofbiz.pricat.PricatRowPipeline;
+import org.apache.ofbiz.pricat.util.StreamingSheetReader;
 import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
 import org.apache.poi.hssf.usermodel.HSSFDataFormatter;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.SAXException;
 
 /**
  * Sample pricat excel parser.
@@ -59,6 +68,9 @@ public class SamplePricatParser extends AbstractPricatParser {
     public static final int HEADER_ROW_NO = 4;
     private static final String MODULE = SamplePricatParser.class.getName();
     private List<String> headerColNames = new ArrayList<>();
+    private int emptyRowStart = -1;
+    private int emptyRowEnd = -1;
+    private StreamingSheetReader sheetReader;
 
     public SamplePricatParser(LocalDispatcher dispatcher, Delegator delegator, Locale locale, InterfaceReport report,
                               Map<String, String[]> facilities, File pricatFile, GenericValue userLogin) {
@@ -144,66 +156,78 @@ public class SamplePricatParser extends AbstractPricatParser {
 
     /**
      * Parse pricat excel file in xlsx format.
+     * <p>
+     * The first sheet is read as a stream, row by row, see {@link StreamingSheetReader}: the header rows are checked
+     * once read, then each data row is checked and stored through a {@link PricatRowPipeline}, the rows being checked
+     * concurrently and stored in order. The error comments are written to a copy of the file, see
+     * {@link #writeCommentsToFile(OPCPackage, PackagePart)}.
      */
     public void parsePricatExcel(boolean writeFile) {
-        XSSFWorkbook workbook = null;
+        OPCPackage pkg = null;
+        PricatRowHandler rowHandler = null;
         try {
-            // 1. read the pricat excel file
-            FileInputStream is = new FileInputStream(getPricatFile());
-
-            // 2. use POI to load this bytes
+            // 1. open the pricat excel file
             getReport().print(UtilProperties.getMessage(RESOURCE, "ParsePricatFileStatement", new Object[]{getPricatFile().getName()}, getLocale()),
                     InterfaceReport.FORMAT_DEFAULT);
+            XSSFReader xssfReader;
+            ReadOnlySharedStringsTable sharedStrings;
             try {
-                workbook = new XSSFWorkbook(is);
+                pkg = OPCPackage.open(getPricatFile(), PackageAccess.READ);
+                xssfReader = new XSSFReader(pkg);
+                sharedStrings = new ReadOnlySharedStringsTable(pkg);
                 getReport().println(UtilProperties.getMessage(RESOURCE, "ok", getLocale()), InterfaceReport.FORMAT_OK);
-            } catch (IOException e) {
+            } catch (IOException | OpenXML4JException | SAXException e) {
                 getReport().println(e);
                 getReport().println(UtilProperties.getMessage(RESOURCE, "PricatSuggestion", getLocale()), InterfaceReport.FORMAT_ERROR);
                 return;
             }
 
-            // 3. only first sheet will be parsed
-            // 3.1 verify the file has a sheet at least
+            // 2. only first sheet will be parsed
+            // 2.1 verify the file has a sheet at least
             setFormatter(new HSSFDataFormatter(getLocale()));
-            isNumOfSheetsOK(workbook);
-
-            // 3.2 verify the version is supported
-            XSSFSheet sheet = workbook.getSheetAt(0);
-            if (!isVersionSupported(sheet)) {
-                return;
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            PackagePart sheetPart = null;
+            String sheetName = null;
+            int numOfSheets = 0;
+            while (sheets.hasNext()) {
+                try (InputStream sheetData = sheets.next()) {
+                    if (sheetPart == null) {
+                        sheetPart = sheets.getSheetPart();
+                        sheetName = sheets.getSheetName();
+                    }
+                }
+                numOfSheets++;
             }
-
-            // 3.3 get currencyId
-            existsCurrencyId(sheet);
-
-            // 3.4 verify the table header row is just the same as column names, if not, print error and return
-            if (!isTableHeaderMatched(sheet)) {
+            if (!isNumOfSheetsOK(numOfSheets)) {
                 return;
             }
 
-            // 3.5 verify the first table has 6 rows at least
-            containsDataRows(sheet);
-
-            if (UtilValidate.isNotEmpty(getErrorMessages())) {
-                getReport().println(UtilProperties.getMessage(RESOURCE, "HeaderContainsError", getLocale()), InterfaceReport.FORMAT_ERROR);
+            // 3. check the header rows (version, currencyId, column names) and parse the data rows as they are read
+            sheetReader = new StreamingSheetReader(sharedStrings, xssfReader.getStylesTable(), sheetName, HEADER_ROW_NO + 1);
+            rowHandler = new PricatRowHandler(sheetReader.getSheet());
+            try (InputStream sheetData = sheetPart.getInputStream()) {
+                sheetReader.read(sheetData, rowHandler);
+            }
+            rowHandler.finish();
+            boolean headerOk = rowHandler.isHeaderOk();
+            // the rows are stored or rolled back once finished, there is nothing left to cancel
+            rowHandler = null;
+            if (!headerOk) {
                 return;
             }
-
-            // 4. parse data
-            // 4.1 parse row by row and store the contents into database
-            parseRowByRow(sheet);
             if (UtilValidate.isNotEmpty(getErrorMessages())) {
                 getReport().println(UtilProperties.getMessage(RESOURCE, "DataContainsError", getLocale()), InterfaceReport.FORMAT_ERROR);
                 if (writeFile) {
                     setSequenceNum(getReport().getSequenceNum());
-                    writeCommentsToFile(workbook, sheet);
+                    OPCPackage commentedPkg = pkg;
+                    pkg = null;
+                    writeCommentsToFile(commentedPkg, sheetPart);
                 }
             }
 
-            // 5. clean up the log files and commented Excel files
+            // 4. clean up the log files and commented Excel files
             cleanupLogAndCommentedExcel();
-        } catch (IOException e) {
+        } catch (IOException | OpenXML4JException | SAXException | GeneralRuntimeException e) {
             getReport().println(e);
             Debug.logError(e, MODULE);
         } finally {
@@ -215,15 +239,47 @@ public class SamplePricatParser extends AbstractPricatParser {
                     fi.delete();
                 }
             }
-            if (workbook != null) {
-                try {
-                    workbook.close();
-                } catch (IOException e) {
-                    Debug.logError(e, MODULE);
-                }
+            if (rowHandler != null) {
+                rowHandler.cancel();
+            }
+            rollbackBatch();
+            if (sheetReader != null) {
+                sheetReader.close();
+                sheetReader = null;
+            }
+            if (pkg != null) {
+                pkg.revert();
             }
         }
     }
+
+    /**
+     * Checks the header rows of the sheet.
+     * @param sheet the sheet holding the header rows
+     * @param rows the number of rows of the sheet
+     * @return whether the data rows can be parsed
+     */
+    private boolean isHeaderOk(XSSFSheet sheet) {
+        // verify the version is supported
+        if (!isVersionSupported(sheet)) {
+            return false;
+        }
+
+        // get currencyId
+        existsCurrencyId(sheet);
+
+        // verify the table header row is just the same as column names, if not, print error and return
+        if (!isTableHeaderMatched(sheet)) {
+            return false;
+        }
+
+        if (UtilValidate.isNotEmpty(getErrorMessages())) {
+            getReport().println(UtilProperties.getMessage(RESOURCE, "HeaderContainsError", getLocale()), InterfaceReport.FORMAT_ERROR);
+            return false;
+        }
+        return true;
+    }
+
     /** exists currency id */
     @Override
     public boolean existsCurrencyId(XSSFSheet sheet) {
@@ -262,48 +318,111 @@ public class SamplePricatParser extends AbstractPricatParser {
     /** parse row by row */
     @Override
     public void parseRowByRow(XSSFSheet sheet) {
-        InterfaceReport report = getReport();
-        Locale locale = getLocale();
         int rows = sheet.getLastRowNum() + 1;
+        emptyRowStart = -1;
+        emptyRowEnd = -1;
+        for (int i = HEADER_ROW_NO + 1; i < rows; i++) {
+            parseRow(i, sheet.getRow(i));
+        }
+        endRows();
+    }
+
+    /**
+     * Parses a data row and stores its contents, empty rows are reported by range.
+     * @param i the row number
+     * @param row the row, null when missing from the sheet
+     */
+    private void parseRow(int i, XSSFRow row) {
+        validateRow(i, row).run();
+    }
+
+    /**
+     * Checks a data row and gets its contents, the output and error messages of the check are kept aside until
+     * the row is stored. May be run concurrently with the checks of other rows.
+     * @param i the row number
+     * @param row the row, null when missing from the sheet
+     * @return the storage of the row, to be run in the order of the rows
+     */
+    private Runnable validateRow(int i, XSSFRow row) {
         List<Object[]> colNames = COL_NAMES_LIST.get(getPricatFileVersion());
         int colNumber = colNames.size();
+        RowValidation validation;
+        boolean emptyRow;
+        List<Object> cellContents = null;
+        beginRowValidation();
+        try {
+            emptyRow = UtilValidate.isEmpty(row) || isEmptyRow(row, colNumber, false);
+            if (!emptyRow) {
+                cellContents = getCellContents(row, colNames, colNumber);
+            }
+        } finally {
+            validation = endRowValidation();
+        }
+        if (emptyRow) {
+            return () -> storeEmptyRow(i, row);
+        }
+        List<Object> rowContents = cellContents;
+        return () -> storeValidatedRow(i, row, validation, rowContents);
+    }
 
-        int emptyRowStart = -1;
-        int emptyRowEnd = -1;
-        for (int i = HEADER_ROW_NO + 1; i < rows; i++) {
-            XSSFRow row = sheet.getRow(i);
-            if (UtilValidate.isEmpty(row) || isEmptyRow(row, colNumber, false)) {
-                if (emptyRowStart == -1) {
-                    report.print("(" + (i + 1) + ") ", InterfaceReport.FORMAT_NOTE);
-                    emptyRowStart = i;
-                } else {
-                    emptyRowEnd = i;
-                }
-                continue;
-            } else {
-                if (emptyRowStart != -1) {
-                    if (emptyRowEnd != -1) {
-                        report.print(" - (" + (emptyRowEnd + 1) + ") ", InterfaceReport.FORMAT_NOTE);
-                    }
-                    report.print(UtilProperties.getMessage(RESOURCE, "ExcelEmptyRow", locale), InterfaceReport.FORMAT_NOTE);
-                    report.println(" ... " + UtilProperties.getMessage(RESOURCE, "skipped", locale), InterfaceReport.FORMAT_NOTE);
-                    emptyRowStart = -1;
-                    emptyRowEnd = -1;
-                }
+    private void storeEmptyRow(int i, XSSFRow row) {
+        if (emptyRowStart == -1) {
+            getReport().print("(" + (i + 1) + ") ", InterfaceReport.FORMAT_NOTE);
+            emptyRowStart = i;
+        } else {
+            emptyRowEnd = i;
+        }
+        if (row != null) {
+            releaseRow(row);
+        }
+    }
+
+    private void storeValidatedRow(int i, XSSFRow row, RowValidation validation, List<Object> cellContents) {
+        InterfaceReport report = getReport();
+        Locale locale = getLocale();
+        if (emptyRowStart != -1) {
+            if (emptyRowEnd != -1) {
+                report.print(" - (" + (emptyRowEnd + 1) + ") ", InterfaceReport.FORMAT_NOTE);
             }
-            report.print("(" + (i + 1) + ") ", InterfaceReport.FORMAT_NOTE);
-            List<Object> cellContents = getCellContents(row, colNames, colNumber);
-            try {
-                if (parseCellContentsAndStore(row, cellContents)) {
-                    report.println(" ... " + UtilProperties.getMessage(RESOURCE, "ok", locale), InterfaceReport.FORMAT_OK);
-                } else {
-                    report.println(" ... " + UtilProperties.getMessage(RESOURCE, "skipped", locale), InterfaceReport.FORMAT_NOTE);
-                }
-            } catch (GenericTransactionException e) {
-                report.println(e);
+            report.print(UtilProperties.getMessage(RESOURCE, "ExcelEmptyRow", locale), InterfaceReport.FORMAT_NOTE);
+            report.println(" ... " + UtilProperties.getMessage(RESOURCE, "skipped", locale), InterfaceReport.FORMAT_NOTE);
+            emptyRowStart = -1;
+            emptyRowEnd = -1;
+        }
+        report.print("(" + (i + 1) + ") ", InterfaceReport.FORMAT_NOTE);
+        mergeRowValidation(validation);
+        try {
+            if (storeRow(i, row, cellContents)) {
+                report.println(" ... " + UtilProperties.getMessage(RESOURCE, "ok", locale), InterfaceReport.FORMAT_OK);
+            } else {
+                report.println(" ... " + UtilProperties.getMessage(RESOURCE, "skipped", locale), InterfaceReport.FORMAT_NOTE);
             }
+        } catch (GenericTransactionException e) {
+            report.println(e);
+            releaseRow(row);
+            return;
         }
+        if (UtilValidate.isEmpty(cellContents)) {
+            // rows not added to a batch are not released by the batch
+            releaseRow(row);
+        }
+    }
+
+    @Override
+    protected void releaseRow(XSSFRow row) {
+        if (sheetReader != null) {
+            sheetReader.removeRow(row);
+        }
+    }
+
+    /**
+     * Commits the last batch of rows and reports the empty rows ending the sheet.
+     */
+    private void endRows() {
+        commitBatch();
         if (emptyRowEnd != -1) {
+            InterfaceReport report = getReport();
+            Locale locale = getLocale();
             report.print(" - (" + (emptyRowEnd + 1) + ") ", InterfaceReport.FORMAT_NOTE);
             report.print(UtilProperties.getMessage(RESOURCE, "ExcelEmptyRow", locale), InterfaceReport.FORMAT_NOTE);
             report.println(" ... " + UtilProperties.getMessage(RESOURCE, "skipped", locale), InterfaceReport.FORMAT_NOTE);
@@ -345,7 +464,7 @@ public class SamplePricatParser extends AbstractPricatParser {
 
         // 3. get productFeatureId of brand
         String brandName = (String) getCellContent(cellContents, "Brand");
-        String brandId = getBrandId(brandName, ownerPartyId);
+        String brandId = getCachedBrandId(brandName, ownerPartyId);
         if (UtilValidate.isEmpty(brandId)) {
             return false;
         }
@@ -354,7 +473,7 @@ public class SamplePricatParser extends AbstractPricatParser {
         String modelName = (String) getCellContent(cellContents, "Style No");
         String productName = (String) getCellContent(cellContents, "Product Name");
         BigDecimal listPrice = (BigDecimal) getCellContent(cellContents, "List Price");
-        String productId = getProductId(row, brandId, modelName, productName, productCategoryId, ownerPartyId, listPrice);
+        String productId = getCachedProductId(row, brandId, modelName, productName, productCategoryId, ownerPartyId, listPrice);
         if (UtilValidate.isEmpty(productId) || UtilValidate.isEmpty(listPrice)) {
             return false;
         }
@@ -368,7 +487,7 @@ public class SamplePricatParser extends AbstractPricatParser {
         if (UtilValidate.isEmpty(dimension) || UtilValidate.isEmpty(dimension.trim())) {
             dimension = DEFAULT_DIM_NAME;
         }
-        Map<String, Object> features = updateColorAndDimension(productId, ownerPartyId, color, dimension);
+        Map<String, Object> features = getCachedColorAndDimension(productId, ownerPartyId, color, dimension);
         if (ServiceUtil.isError(features)) {
             if (features.containsKey("index") && String.valueOf(features.get("index")).contains("0")) {
                 int cell = headerColNames.indexOf("Color");
@@ -547,12 +666,21 @@ public class SamplePricatParser extends AbstractPricatParser {
 
     @Override
     public boolean containsDataRows(XSSFSheet sheet) {
-        int rows = sheet.getPhysicalNumberOfRows();
+        return containsDataRows(sheet.getSheetName(), sheet.getPhysicalNumberOfRows());
+    }
+
+    /**
+     * Checks the number of rows of a sheet read as a stream.
+     * @param sheetName the name of the sheet
+     * @param rows the number of rows of the sheet
+     * @return whether the sheet has data rows
+     */
+    public boolean containsDataRows(String sheetName, int rows) {
         if (rows > HEADER_ROW_NO + 1) {
             getReport().println(UtilProperties.getMessage(RESOURCE, "PricatTableRows", new Object[]{String.valueOf(HEADER_ROW_NO + 1),
-                    String.valueOf(rows - HEADER_ROW_NO - 1), sheet.getSheetName()}, getLocale()), InterfaceReport.FORMAT_NOTE);
+                    String.valueOf(rows - HEADER_ROW_NO - 1), sheetName}, getLocale()), InterfaceReport.FORMAT_NOTE);
         } else {
-            getReport().println(UtilProperties.getMessage(RESOURCE, "PricatNoDataRows", new Object[]{sheet.getSheetName()}, getLocale()),
+            getReport().println(UtilProperties.getMessage(RESOURCE, "PricatNoDataRows", new Object[]{sheetName}, getLocale()),
                     InterfaceReport.FORMAT_ERROR);
             return false;
         }
@@ -593,17 +721,15 @@ public class SamplePricatParser extends AbstractPricatParser {
                 if ((Boolean) colNames.get(i)[2] && (facilities.keySet().size() > 1 || (facilities.keySet().size() == 1 && i >= 2))) {
                     report.print(UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty", new Object[]{colNames.get(i)[0]}, locale),
                             InterfaceReport.FORMAT_WARNING);
-                    cell = row.createCell(i);
-                    errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
+                    errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
                             new Object[]{colNames.get(i)[0]}, locale));
                     foundError = true;
                     results.add(null);
                     continue;
-                } else {
-                    cell = row.createCell(i);
                 }
             }
-            CellType cellType = cell.getCellType();
+            // a missing cell is read as a blank one, without creating it: rows are checked concurrently
+            CellType cellType = cell != null ? cell.getCellType() : CellType.BLANK;
             String cellValue = getFormatter().formatCellValue(cell);
             if (UtilValidate.isNotEmpty(cellValue) && UtilValidate.isNotEmpty(cellValue.trim())) {
                 if (cellType == CellType.FORMULA) {
@@ -628,7 +754,7 @@ public class SamplePricatParser extends AbstractPricatParser {
                     || (facilities.keySet().size() == 1 && i >= 2))) {
                 report.print(UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty", new Object[]{colNames.get(i)[0]}, locale),
                         InterfaceReport.FORMAT_WARNING);
-                errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
+                errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorColCannotEmpty",
                         new Object[]{colNames.get(i)[0]}, locale));
                 foundError = true;
                 results.add(null);
@@ -643,15 +769,13 @@ public class SamplePricatParser extends AbstractPricatParser {
                         results.add(null);
                     }
                 } else if (colNames.get(i)[1] == CellType.NUMERIC) {
-                    if (cell.getCellType() != CellType.STRING) {
-                        cell.setCellType(CellType.STRING);
-                    }
                     try {
-                        results.add(BigDecimal.valueOf(Double.parseDouble(cell.getStringCellValue()))
+                        String stringValue = cellType == CellType.STRING ? cell.getStringCellValue() : cellValue;
+                        results.add(BigDecimal.valueOf(Double.parseDouble(stringValue))
                                 .setScale(FinAccountHelper.getDecimals(), FinAccountHelper.getRounding()));
                     } catch (NumberFormatException e) {
                         results.add(null);
-                        errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                        errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                     }
                 }
             } else {
@@ -660,27 +784,27 @@ public class SamplePricatParser extends AbstractPricatParser {
                     continue;
                 }
                 if (colNames.get(i)[1] == CellType.STRING) {
-                    if (cell.getCellType() == CellType.STRING) {
+                    if (cellType == CellType.STRING) {
                         cellValue = cell.getStringCellValue().trim();
                         results.add(cellValue);
                     } else {
                         results.add(cellValue.trim());
                     }
                 } else if (colNames.get(i)[1] == CellType.NUMERIC) {
-                    if (cell.getCellType() == CellType.STRING) {
+                    if (cellType == CellType.STRING) {
                         try {
                             results.add(BigDecimal.valueOf(Double.valueOf(cell.getStringCellValue())));
                         } catch (NumberFormatException e) {
                             results.add(null);
-                            errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                            errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                         }
-                    } else if (cell.getCellType() == CellType.NUMERIC) {
+                    } else if (cellType == CellType.NUMERIC) {
                         try {
                             results.add(BigDecimal.valueOf(cell.getNumericCellValue())
                                     .setScale(FinAccountHelper.getDecimals(), FinAccountHelper.getRounding()));
                         } catch (NumberFormatException e) {
                             results.add(null);
-                            errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                            errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                         }
                     } else {
                         try {
@@ -688,7 +812,7 @@ public class SamplePricatParser extends AbstractPricatParser {
                                     .setScale(FinAccountHelper.getDecimals(), FinAccountHelper.getRounding()));
                         } catch (NumberFormatException e) {
                             results.add(null);
-                            errorMessages.put(new CellReference(cell), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
+                            errorMessages.put(makeCellReference(row, i), UtilProperties.getMessage(RESOURCE, "ErrorParseValueToNumeric", locale));
                         }
                     }
                 }
@@ -704,4 +828,89 @@ public class SamplePricatParser extends AbstractPricatParser {
     protected int getHeaderRowNo() {
         return HEADER_ROW_NO;
     }
+
+    /**
+     * Checks the header rows once they are read, then submits the data rows to a {@link PricatRowPipeline} as they are read.
+     */
+    private final class PricatRowHandler implements StreamingSheetReader.RowHandler {
+        private final XSSFSheet sheet;
+        private Boolean headerOk;
+        private int rows;
+        private int nextRowNum = HEADER_ROW_NO + 1;
+        private PricatRowPipeline pipeline;
+
+        private PricatRowHandler(XSSFSheet sheet) {
+            this.sheet = sheet;
+        }
+
+        @Override
+        public boolean handleRow(XSSFRow row) {
+            rows++;
+            if (row.getRowNum() <= HEADER_ROW_NO) {
+                return true;
+            }
+            if (!checkHeader()) {
+                return false;
+            }
+            // rows missing from the sheet are empty rows
+            for (; nextRowNum < row.getRowNum(); nextRowNum++) {
+                if (!submitRow(nextRowNum, null)) {
+                    return false;
+                }
+            }
+            nextRowNum = row.getRowNum() + 1;
+            return submitRow(row.getRowNum(), row);
+        }
+
+        @Override
+        public void endSheet() {
+            if (checkHeader()) {
+                // verify the first table has 6 rows at least, the rows being counted as they are read
+                containsDataRows(sheet.getSheetName(), rows);
+                finish();
+            }
+        }
+
+        /**
+         * Waits until the submitted rows are stored, then commits the last batch.
+         */
+        private void finish() {
+            if (pipeline != null) {
+                PricatRowPipeline finished = pipeline;
+                pipeline = null;
+                finished.finish();
+            }
+        }
+
+        /**
+         * Drops the rows not stored yet, and rolls back the last batch, when the import stops before its end.
+         */
+        private void cancel() {
+            if (pipeline != null) {
+                PricatRowPipeline cancelled = pipeline;
+                pipeline = null;
+                cancelled.cancel();
+            }
+        }
+
+        private boolean submitRow(int i, XSSFRow row) {
+            return pipeline.submit(() -> validateRow(i, row));
+        }
+
+        private boolean checkHeader() {
+            if (headerOk == null) {
+                emptyRowStart = -1;
+                emptyRowEnd = -1;
+                headerOk = SamplePricatParser.this.isHeaderOk(sheet);
+                if (headerOk) {
+                    pipeline = new PricatRowPipeline(SamplePricatParser.this::endRows, SamplePricatParser.this::rollbackBatch);
+                }
+            }
+            return headerOk;
+        }
+
+        private boolean isHeaderOk() {
+            return Boolean.TRUE.equals(headerOk);
+        }
+    }
 }
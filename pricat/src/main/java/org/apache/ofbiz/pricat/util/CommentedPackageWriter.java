@@ -0,0 +1,871 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.pricat.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.poi.ss.util.CellReference;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Writes a copy of a xlsx file with the error messages of a sheet as cell comments, without loading the workbook.
+ * <p>
+ * The parts of the file are copied as they are, so that the other sheets, the formulas, the pictures, the data
+ * validations, the conditional formats and the existing comments are kept. The sheet is copied as a stream, adding
+ * the reference to its comments when it has none; the comments of the sheet, the workbook, the relationships and
+ * the content types, which are small, are rewritten. A comment already set on a cell with an error is replaced.
+ * <p>
+ * An errors sheet is added in front of the other sheets, holding the header rows and the rows with errors. In this
+ * sheet the formulas are replaced by their cached values, and the pictures, data validations and conditional formats
+ * of the sheet are not copied.
+ */
+public final class CommentedPackageWriter {
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CONTENT_TYPES_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String REL_OFFICE_DOCUMENT = REL_NS + "/officeDocument";
+    private static final String REL_WORKSHEET = REL_NS + "/worksheet";
+    private static final String REL_COMMENTS = REL_NS + "/comments";
+    private static final String REL_VML_DRAWING = REL_NS + "/vmlDrawing";
+    private static final String CONTENT_TYPE_WORKSHEET = "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml";
+    private static final String CONTENT_TYPE_COMMENTS = "application/vnd.openxmlformats-officedocument.spreadsheetml.comments+xml";
+    private static final String CONTENT_TYPE_VML_DRAWING = "application/vnd.openxmlformats-officedocument.vmlDrawing";
+    private static final String CONTENT_TYPES_ENTRY = "[Content_Types].xml";
+    private static final String COMMENT_TITLE = "OFBiz PriCat:\n";
+    private static final String COMMENT_AUTHOR = "Apache OFBiz PriCat";
+    /** The elements following legacyDrawing in a worksheet. */
+    private static final Set<String> AFTER_LEGACY_DRAWING = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("legacyDrawingHF",
+            "drawingHF", "picture", "oleObjects", "controls", "webPublishItems", "tableParts", "extLst")));
+    private static final Pattern SHAPE_ID = Pattern.compile("_x0000_s(\\d+)");
+    private static final String VML_SHAPE_TYPE = "<v:shapetype id=\"_x0000_t202\" coordsize=\"21600,21600\" o:spt=\"202\""
+            + " path=\"m,l,21600r21600,l21600,xe\"><v:stroke joinstyle=\"miter\"/><v:path gradientshapeok=\"t\" o:connecttype=\"rect\"/>"
+            + "</v:shapetype>";
+
+    private final File source;
+    private final String sheetEntry;
+    private final int headerRows;
+    private final String errorSheetName;
+    private final TreeMap<Integer, TreeMap<Integer, String>> errorsByRow = new TreeMap<>();
+    private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    private final XMLEventFactory eventFactory = XMLEventFactory.newInstance();
+
+    /**
+     * Creates the writer.
+     * @param source the xlsx file
+     * @param sheetPartName the name of the part of the sheet, like <code>/xl/worksheets/sheet1.xml</code>
+     * @param headerRows the number of header rows, copied into the errors sheet
+     * @param errorSheetName the name of the errors sheet, made unique in the workbook
+     * @param errorMessages the error messages by cell
+     */
+    public CommentedPackageWriter(File source, String sheetPartName, int headerRows, String errorSheetName,
+            Map<CellReference, String> errorMessages) {
+        this.source = source;
+        this.sheetEntry = sheetPartName.startsWith("/") ? sheetPartName.substring(1) : sheetPartName;
+        this.headerRows = headerRows;
+        this.errorSheetName = errorSheetName;
+        for (Map.Entry<CellReference, String> entry : errorMessages.entrySet()) {
+            CellReference cell = entry.getKey();
+            if (cell != null && entry.getValue() != null) {
+                errorsByRow.computeIfAbsent(cell.getRow(), k -> new TreeMap<>()).put((int) cell.getCol(), entry.getValue());
+            }
+        }
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Writes the commented copy of the xlsx file.
+     * @param target the file to write, which must not be the source file
+     * @throws IOException
+     */
+    public void write(File target) throws IOException {
+        try (ZipFile zip = new ZipFile(source);
+                ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            write(zip, out);
+        } catch (XMLStreamException | SAXException | TransformerException e) {
+            throw new IOException("Cannot write the comments of " + source.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void write(ZipFile zip, ZipOutputStream out) throws IOException, XMLStreamException, SAXException, TransformerException {
+        Set<String> entryNames = new HashSet<>();
+        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+            entryNames.add(entries.nextElement().getName().toLowerCase(Locale.ROOT));
+        }
+        String workbookEntry = findTarget(readXml(zip, "_rels/.rels"), "", REL_OFFICE_DOCUMENT, null);
+        String workbookRelsEntry = getRelsEntryName(workbookEntry);
+        String sheetRelsEntry = getRelsEntryName(sheetEntry);
+        Document workbook = readXml(zip, workbookEntry);
+        Document workbookRels = readXml(zip, workbookRelsEntry);
+        Document contentTypes = readXml(zip, CONTENT_TYPES_ENTRY);
+        Document sheetRels = readXml(zip, sheetRelsEntry);
+        if (sheetRels == null) {
+            sheetRels = newDocument(PACKAGE_REL_NS, "Relationships");
+        }
+        String commentsEntry = findTarget(sheetRels, sheetEntry, REL_COMMENTS, null);
+        String newVmlRelId = newRelationshipId(sheetRels);
+
+        // 1. the sheet, which tells whether it has a legacy drawing
+        ErrorSheet errorSheet = new ErrorSheet();
+        String vmlRelId;
+        out.putNextEntry(new ZipEntry(sheetEntry));
+        try (InputStream in = zip.getInputStream(zip.getEntry(sheetEntry))) {
+            vmlRelId = copySheet(in, out, newVmlRelId, isActive(workbook, workbookRels, workbookEntry), errorSheet);
+        }
+        out.closeEntry();
+        String vmlEntry = null;
+        boolean newVmlDrawing = vmlRelId.equals(newVmlRelId);
+        if (newVmlDrawing) {
+            vmlEntry = newEntryName(entryNames, "xl/drawings/vmlDrawing", ".vml");
+            addRelationship(sheetRels, vmlRelId, REL_VML_DRAWING, "/" + vmlEntry);
+            addOverride(contentTypes, vmlEntry, CONTENT_TYPE_VML_DRAWING);
+        } else {
+            vmlEntry = findTarget(sheetRels, sheetEntry, null, vmlRelId);
+        }
+
+        // 2. the parts left as they are
+        Set<String> rewritten = new HashSet<>(Arrays.asList(sheetEntry, sheetRelsEntry, workbookEntry, workbookRelsEntry, CONTENT_TYPES_ENTRY));
+        if (commentsEntry != null) {
+            rewritten.add(commentsEntry);
+        }
+        if (!newVmlDrawing) {
+            rewritten.add(vmlEntry);
+        }
+        byte[] buffer = new byte[8192];
+        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            if (rewritten.contains(entry.getName())) {
+                continue;
+            }
+            out.putNextEntry(new ZipEntry(entry.getName()));
+            try (InputStream in = zip.getInputStream(entry)) {
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            out.closeEntry();
+        }
+
+        // 3. the comments of the sheet
+        Document comments = commentsEntry != null ? readXml(zip, commentsEntry) : newDocument(MAIN_NS, "comments");
+        Set<String> commentedCells = setComments(comments, errorsByRow);
+        if (commentsEntry == null) {
+            commentsEntry = newEntryName(entryNames, "xl/comments", ".xml");
+            addRelationship(sheetRels, null, REL_COMMENTS, "/" + commentsEntry);
+            addOverride(contentTypes, commentsEntry, CONTENT_TYPE_COMMENTS);
+        }
+        writeXml(out, commentsEntry, comments);
+        Map<Integer, TreeMap<Integer, String>> newComments = new TreeMap<>();
+        errorsByRow.forEach((row, messages) -> messages.forEach((col, message) -> {
+            if (!commentedCells.contains(new CellReference(row, col).formatAsString())) {
+                newComments.computeIfAbsent(row, k -> new TreeMap<>()).put(col, message);
+            }
+        }));
+        if (newVmlDrawing) {
+            writeEntry(out, vmlEntry, newVmlDrawing(newComments).getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            String vml = new String(readBytes(zip, vmlEntry), StandardCharsets.ISO_8859_1);
+            writeEntry(out, vmlEntry, appendCommentShapes(vml, newComments).getBytes(StandardCharsets.ISO_8859_1));
+        }
+        writeXml(out, sheetRelsEntry, sheetRels);
+
+        // 4. the errors sheet, with its comments
+        String errorSheetEntry = newEntryName(entryNames, "xl/worksheets/sheet", ".xml");
+        String errorCommentsEntry = newEntryName(entryNames, "xl/comments", ".xml");
+        String errorVmlEntry = newEntryName(entryNames, "xl/drawings/vmlDrawing", ".vml");
+        out.putNextEntry(new ZipEntry(errorSheetEntry));
+        errorSheet.write(out, "rId2");
+        out.closeEntry();
+        Document errorSheetRels = newDocument(PACKAGE_REL_NS, "Relationships");
+        addRelationship(errorSheetRels, "rId1", REL_COMMENTS, "/" + errorCommentsEntry);
+        addRelationship(errorSheetRels, "rId2", REL_VML_DRAWING, "/" + errorVmlEntry);
+        writeXml(out, getRelsEntryName(errorSheetEntry), errorSheetRels);
+        Document errorComments = newDocument(MAIN_NS, "comments");
+        setComments(errorComments, errorSheet.comments);
+        writeXml(out, errorCommentsEntry, errorComments);
+        writeEntry(out, errorVmlEntry, newVmlDrawing(errorSheet.comments).getBytes(StandardCharsets.ISO_8859_1));
+        addOverride(contentTypes, errorSheetEntry, CONTENT_TYPE_WORKSHEET);
+        addOverride(contentTypes, errorCommentsEntry, CONTENT_TYPE_COMMENTS);
+        addOverride(contentTypes, errorVmlEntry, CONTENT_TYPE_VML_DRAWING);
+
+        // 5. the workbook, listing the errors sheet first
+        addErrorSheet(workbook, workbookRels, workbookEntry, errorSheetEntry, errorSheet.active);
+        writeXml(out, workbookEntry, workbook);
+        writeXml(out, workbookRelsEntry, workbookRels);
+        writeXml(out, CONTENT_TYPES_ENTRY, contentTypes);
+    }
+
+    /**
+     * Copies the sheet, adding a legacy drawing for the comments when it has none, and copies the header rows and the rows with
+     * errors into the errors sheet.
+     * @return the relationship id of the legacy drawing of the sheet, the given new one when it has been added
+     */
+    private String copySheet(InputStream in, OutputStream out, String newVmlRelId, boolean active, ErrorSheet errorSheet)
+            throws XMLStreamException, IOException {
+        XMLEventReader reader = inputFactory.createXMLEventReader(in);
+        XMLEventWriter writer = outputFactory.createXMLEventWriter(out, StandardCharsets.UTF_8.name());
+        errorSheet.active = active;
+        String vmlRelId = null;
+        String prefix = "";
+        int depth = 0;
+        int nextRowNum = 0;
+        FragmentWriter fragment = null;
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                String name = start.getName().getLocalPart();
+                depth++;
+                if (depth == 1) {
+                    prefix = start.getName().getPrefix();
+                } else if (depth == 2 && vmlRelId == null && AFTER_LEGACY_DRAWING.contains(name)) {
+                    vmlRelId = addLegacyDrawing(writer, prefix, newVmlRelId);
+                }
+                if (depth == 2 && "legacyDrawing".equals(name)) {
+                    Attribute id = start.getAttributeByName(new QName(REL_NS, "id"));
+                    vmlRelId = id != null ? id.getValue() : null;
+                } else if (depth == 2 && "cols".equals(name)) {
+                    fragment = errorSheet.startCols();
+                } else if (depth == 3 && "row".equals(name)) {
+                    Attribute r = start.getAttributeByName(new QName("r"));
+                    int rowNum = r != null ? Integer.parseInt(r.getValue()) - 1 : nextRowNum;
+                    nextRowNum = rowNum + 1;
+                    fragment = errorSheet.startRow(rowNum);
+                } else if ("mergeCell".equals(name)) {
+                    Attribute ref = start.getAttributeByName(new QName("ref"));
+                    errorSheet.addMergedRegion(ref != null ? ref.getValue() : null);
+                } else if (active && "sheetView".equals(name)) {
+                    // the errors sheet is the selected one
+                    event = removeAttribute(start, "tabSelected");
+                }
+            } else if (event.isEndElement()) {
+                if (depth == 1 && vmlRelId == null) {
+                    vmlRelId = addLegacyDrawing(writer, prefix, newVmlRelId);
+                }
+                if (depth == 2 && "sheetData".equals(event.asEndElement().getName().getLocalPart())) {
+                    errorSheet.endRows();
+                }
+                depth--;
+            }
+            writer.add(event);
+            if (fragment != null) {
+                fragment.add(event);
+                if (fragment.isDone()) {
+                    fragment = null;
+                }
+            }
+        }
+        writer.flush();
+        errorSheet.endRows();
+        return vmlRelId != null ? vmlRelId : newVmlRelId;
+    }
+
+    private String addLegacyDrawing(XMLEventWriter writer, String prefix, String vmlRelId) throws XMLStreamException {
+        Iterator<Attribute> attributes = Collections.singletonList(eventFactory.createAttribute("r", REL_NS, "id", vmlRelId)).iterator();
+        writer.add(eventFactory.createStartElement(prefix, MAIN_NS, "legacyDrawing", attributes,
+                Collections.singletonList(eventFactory.createNamespace("r", REL_NS)).iterator()));
+        writer.add(eventFactory.createEndElement(prefix, MAIN_NS, "legacyDrawing"));
+        return vmlRelId;
+    }
+
+    private StartElement removeAttribute(StartElement start, String name) {
+        List<Attribute> attributes = new ArrayList<>();
+        for (Iterator<?> i = start.getAttributes(); i.hasNext();) {
+            Attribute attribute = (Attribute) i.next();
+            if (!name.equals(attribute.getName().getLocalPart()) || !attribute.getName().getNamespaceURI().isEmpty()) {
+                attributes.add(attribute);
+            }
+        }
+        return eventFactory.createStartElement(start.getName(), attributes.iterator(), start.getNamespaces());
+    }
+
+    /**
+     * Sets the error messages as comments, replacing the existing comments of the same cells.
+     * @return the cells having a comment before
+     */
+    private static Set<String> setComments(Document comments, Map<Integer, TreeMap<Integer, String>> messages) {
+        Element root = comments.getDocumentElement();
+        Element authors = getOrAddChild(root, "authors", root.getFirstChild());
+        Element commentList = getOrAddChild(root, "commentList", null);
+        int authorId = 0;
+        boolean authorFound = false;
+        for (Element author : getChildren(authors, "author")) {
+            if (COMMENT_AUTHOR.equals(author.getTextContent())) {
+                authorFound = true;
+                break;
+            }
+            authorId++;
+        }
+        if (!authorFound) {
+            addChild(authors, "author", null).setTextContent(COMMENT_AUTHOR);
+        }
+        String commentAuthorId = String.valueOf(authorId);
+        Map<String, Element> existing = new HashMap<>();
+        for (Element comment : getChildren(commentList, "comment")) {
+            existing.put(comment.getAttribute("ref"), comment);
+        }
+        messages.forEach((row, rowMessages) -> rowMessages.forEach((col, message) -> {
+            String ref = new CellReference(row, col).formatAsString();
+            Element comment = existing.get(ref);
+            if (comment == null) {
+                comment = addChild(commentList, "comment", null);
+                comment.setAttribute("ref", ref);
+            }
+            for (Node child = comment.getFirstChild(); child != null; child = comment.getFirstChild()) {
+                comment.removeChild(child);
+            }
+            comment.setAttribute("authorId", commentAuthorId);
+            Element text = addChild(comment, "text", null);
+            addRun(text, COMMENT_TITLE, true);
+            addRun(text, message, false);
+        }));
+        return existing.keySet();
+    }
+
+    private static void addRun(Element text, String value, boolean bold) {
+        Element run = addChild(text, "r", null);
+        Element properties = addChild(run, "rPr", null);
+        if (bold) {
+            addChild(properties, "b", null);
+        }
+        addChild(properties, "sz", null).setAttribute("val", "9");
+        addChild(properties, "rFont", null).setAttribute("val", "Arial");
+        addChild(properties, "charset", null).setAttribute("val", "134");
+        Element t = addChild(run, "t", null);
+        t.setAttributeNS(XMLConstants.XML_NS_URI, "xml:space", "preserve");
+        t.setTextContent(value);
+    }
+
+    private static String newVmlDrawing(Map<Integer, TreeMap<Integer, String>> comments) {
+        StringBuilder vml = new StringBuilder("<xml xmlns:v=\"urn:schemas-microsoft-com:vml\" xmlns:o=\"urn:schemas-microsoft-com:office:office\""
+                + " xmlns:x=\"urn:schemas-microsoft-com:office:excel\"><o:shapelayout v:ext=\"edit\"><o:idmap v:ext=\"edit\" data=\"1\"/>"
+                + "</o:shapelayout>").append(VML_SHAPE_TYPE);
+        appendShapes(vml, comments, 1025);
+        return vml.append("</xml>").toString();
+    }
+
+    private static String appendCommentShapes(String vml, Map<Integer, TreeMap<Integer, String>> comments) {
+        int end = vml.lastIndexOf("</xml>");
+        if (end < 0) {
+            end = vml.length();
+        }
+        int nextShapeId = 1025;
+        Matcher matcher = SHAPE_ID.matcher(vml);
+        while (matcher.find()) {
+            nextShapeId = Math.max(nextShapeId, Integer.parseInt(matcher.group(1)) + 1);
+        }
+        StringBuilder shapes = new StringBuilder();
+        if (!vml.contains("\"_x0000_t202\"")) {
+            shapes.append(VML_SHAPE_TYPE);
+        }
+        appendShapes(shapes, comments, nextShapeId);
+        return vml.substring(0, end) + shapes + vml.substring(end);
+    }
+
+    /**
+     * Appends the hidden note shapes of the comments, the comments are shown when the mouse is over their cell.
+     */
+    private static void appendShapes(StringBuilder vml, Map<Integer, TreeMap<Integer, String>> comments, int firstShapeId) {
+        int shapeId = firstShapeId;
+        for (Map.Entry<Integer, TreeMap<Integer, String>> row : comments.entrySet()) {
+            for (Integer col : row.getValue().keySet()) {
+                vml.append("<v:shape id=\"_x0000_s").append(shapeId++).append("\" type=\"#_x0000_t202\"")
+                        .append(" style=\"position:absolute;visibility:hidden\" fillcolor=\"#ffffe1\" o:insetmode=\"auto\">")
+                        .append("<v:fill color2=\"#ffffe1\"/><v:shadow on=\"t\" color=\"black\" obscured=\"t\"/>")
+                        .append("<v:path o:connecttype=\"none\"/><v:textbox style=\"mso-direction-alt:auto\"><div style=\"text-align:left\">")
+                        .append("</div></v:textbox><x:ClientData ObjectType=\"Note\"><x:Anchor>").append(col).append(", 15, ")
+                        .append(row.getKey()).append(", 2, ").append(col + 4).append(", 15, ").append(row.getKey() + 4)
+                        .append(", 16</x:Anchor><x:AutoFill>False</x:AutoFill><x:Row>").append(row.getKey()).append("</x:Row><x:Column>")
+                        .append(col).append("</x:Column></x:ClientData></v:shape>");
+            }
+        }
+    }
+
+    /**
+     * @return whether the sheet is the active sheet of the workbook, the errors sheet replacing it then
+     */
+    private boolean isActive(Document workbook, Document workbookRels, String workbookEntry) {
+        Element workbookView = getFirstElement(workbook, "workbookView");
+        String activeTab = workbookView != null ? workbookView.getAttribute("activeTab") : "";
+        int activeIndex = activeTab.isEmpty() ? 0 : Integer.parseInt(activeTab);
+        int index = 0;
+        for (Element sheet : getChildren(getFirstElement(workbook, "sheets"), "sheet")) {
+            if (index++ == activeIndex) {
+                String target = findTarget(workbookRels, workbookEntry, null, sheet.getAttributeNS(REL_NS, "id"));
+                return sheetEntry.equals(target);
+            }
+        }
+        return false;
+    }
+
+    private void addErrorSheet(Document workbook, Document workbookRels, String workbookEntry, String errorSheetEntry, boolean active) {
+        Element sheets = getFirstElement(workbook, "sheets");
+        Set<String> sheetNames = new HashSet<>();
+        long maxSheetId = 0;
+        for (Element sheet : getChildren(sheets, "sheet")) {
+            sheetNames.add(sheet.getAttribute("name").toLowerCase(Locale.ROOT));
+            maxSheetId = Math.max(maxSheetId, Long.parseLong(sheet.getAttribute("sheetId")));
+        }
+        String name = errorSheetName;
+        for (int i = 2; sheetNames.contains(name.toLowerCase(Locale.ROOT)); i++) {
+            String suffix = " (" + i + ")";
+            name = errorSheetName.substring(0, Math.min(errorSheetName.length(), 31 - suffix.length())) + suffix;
+        }
+        String relId = addRelationship(workbookRels, null, REL_WORKSHEET, "/" + errorSheetEntry);
+        Element errorSheet = workbook.createElementNS(MAIN_NS, qualify(sheets, "sheet"));
+        errorSheet.setAttribute("name", name);
+        errorSheet.setAttribute("sheetId", String.valueOf(maxSheetId + 1));
+        String relPrefix = sheets.lookupPrefix(REL_NS);
+        if (relPrefix == null) {
+            relPrefix = "r";
+            errorSheet.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:r", REL_NS);
+        }
+        errorSheet.setAttributeNS(REL_NS, relPrefix + ":id", relId);
+        sheets.insertBefore(errorSheet, sheets.getFirstChild());
+
+        // the sheets are shifted by one
+        Element workbookView = getFirstElement(workbook, "workbookView");
+        if (workbookView != null) {
+            String activeTab = workbookView.getAttribute("activeTab");
+            workbookView.setAttribute("activeTab", active ? "0" : String.valueOf((activeTab.isEmpty() ? 0 : Integer.parseInt(activeTab)) + 1));
+            if (workbookView.hasAttribute("firstSheet")) {
+                workbookView.setAttribute("firstSheet", "0");
+            }
+        }
+        NodeList definedNames = workbook.getElementsByTagNameNS(MAIN_NS, "definedName");
+        for (int i = 0; i < definedNames.getLength(); i++) {
+            Element definedName = (Element) definedNames.item(i);
+            if (definedName.hasAttribute("localSheetId")) {
+                definedName.setAttribute("localSheetId", String.valueOf(Integer.parseInt(definedName.getAttribute("localSheetId")) + 1));
+            }
+        }
+    }
+
+    private static void addOverride(Document contentTypes, String entryName, String contentType) {
+        Element override = contentTypes.createElementNS(CONTENT_TYPES_NS, qualify(contentTypes.getDocumentElement(), "Override"));
+        override.setAttribute("PartName", "/" + entryName);
+        override.setAttribute("ContentType", contentType);
+        contentTypes.getDocumentElement().appendChild(override);
+    }
+
+    /**
+     * Adds a relationship.
+     * @param id the id of the relationship, null for a new one
+     * @return the id of the relationship
+     */
+    private static String addRelationship(Document relationships, String id, String type, String target) {
+        String relId = id != null ? id : newRelationshipId(relationships);
+        Element relationship = relationships.createElementNS(PACKAGE_REL_NS, qualify(relationships.getDocumentElement(), "Relationship"));
+        relationship.setAttribute("Id", relId);
+        relationship.setAttribute("Type", type);
+        relationship.setAttribute("Target", target);
+        relationships.getDocumentElement().appendChild(relationship);
+        return relId;
+    }
+
+    private static String newRelationshipId(Document relationships) {
+        Set<String> ids = new HashSet<>();
+        for (Element relationship : getChildren(relationships.getDocumentElement(), "Relationship")) {
+            ids.add(relationship.getAttribute("Id"));
+        }
+        int i = 1;
+        while (ids.contains("rId" + i)) {
+            i++;
+        }
+        return "rId" + i;
+    }
+
+    /**
+     * Finds the target of a relationship by type or by id.
+     * @param relationships the relationships, may be null
+     * @param sourceEntry the name of the entry of the source of the relationships, to resolve relative targets
+     * @return the name of the entry of the target, or null if there is no such internal relationship
+     */
+    private static String findTarget(Document relationships, String sourceEntry, String type, String id) {
+        if (relationships == null) {
+            return null;
+        }
+        for (Element relationship : getChildren(relationships.getDocumentElement(), "Relationship")) {
+            if ((type == null || type.equals(relationship.getAttribute("Type"))) && (id == null || id.equals(relationship.getAttribute("Id")))
+                    && !"External".equals(relationship.getAttribute("TargetMode"))) {
+                String path = URI.create("/" + sourceEntry).resolve(relationship.getAttribute("Target").replace(" ", "%20")).getPath();
+                return path.startsWith("/") ? path.substring(1) : path;
+            }
+        }
+        return null;
+    }
+
+    private static String getRelsEntryName(String entryName) {
+        int slash = entryName.lastIndexOf('/');
+        return entryName.substring(0, slash + 1) + "_rels/" + entryName.substring(slash + 1) + ".rels";
+    }
+
+    private static String newEntryName(Set<String> entryNames, String prefix, String suffix) {
+        int i = 1;
+        while (entryNames.contains((prefix + i + suffix).toLowerCase(Locale.ROOT))) {
+            i++;
+        }
+        String entryName = prefix + i + suffix;
+        entryNames.add(entryName.toLowerCase(Locale.ROOT));
+        return entryName;
+    }
+
+    private static String qualify(Element element, String localName) {
+        return element.getPrefix() != null ? element.getPrefix() + ":" + localName : localName;
+    }
+
+    private static Element getFirstElement(Document document, String localName) {
+        NodeList elements = document.getElementsByTagNameNS(MAIN_NS, localName);
+        return elements.getLength() > 0 ? (Element) elements.item(0) : null;
+    }
+
+    private static List<Element> getChildren(Element parent, String localName) {
+        List<Element> children = new ArrayList<>();
+        if (parent != null) {
+            for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child instanceof Element && localName.equals(child.getLocalName())) {
+                    children.add((Element) child);
+                }
+            }
+        }
+        return children;
+    }
+
+    private static Element getOrAddChild(Element parent, String localName, Node before) {
+        List<Element> children = getChildren(parent, localName);
+        return children.isEmpty() ? addChild(parent, localName, before) : children.get(0);
+    }
+
+    private static Element addChild(Element parent, String localName, Node before) {
+        Element child = parent.getOwnerDocument().createElementNS(parent.getNamespaceURI(), qualify(parent, localName));
+        parent.insertBefore(child, before);
+        return child;
+    }
+
+    private static Document newDocument(String namespace, String rootName) throws SAXException {
+        Document document = newDocumentBuilder().newDocument();
+        document.appendChild(document.createElementNS(namespace, rootName));
+        return document;
+    }
+
+    private static Document readXml(ZipFile zip, String entryName) throws IOException, SAXException {
+        ZipEntry entry = entryName != null ? zip.getEntry(entryName) : null;
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return newDocumentBuilder().parse(in);
+        }
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws SAXException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setExpandEntityReferences(false);
+        try {
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private static byte[] readBytes(ZipFile zip, String entryName) throws IOException {
+        try (InputStream in = zip.getInputStream(zip.getEntry(entryName))) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream out, String entryName, byte[] content) throws IOException {
+        out.putNextEntry(new ZipEntry(entryName));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static void writeXml(ZipOutputStream out, String entryName, Document document) throws IOException, TransformerException {
+        out.putNextEntry(new ZipEntry(entryName));
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, StandardCharsets.UTF_8.name());
+        document.setXmlStandalone(true);
+        transformer.transform(new DOMSource(document), new StreamResult(out));
+        out.closeEntry();
+    }
+
+    /**
+     * Writes XML events of the sheet as a fragment of the errors sheet: the elements and attributes of other namespaces and the
+     * formulas are left out, the string formula results are written as inline strings.
+     */
+    private final class FragmentWriter {
+        private final XMLStreamWriter writer;
+        private final int rowNum;
+        private int depth;
+        private int skippedDepth;
+        private boolean stringCell;
+        private boolean inStringValue;
+
+        private FragmentWriter(XMLStreamWriter writer, int rowNum) {
+            this.writer = writer;
+            this.rowNum = rowNum;
+        }
+
+        private void add(XMLEvent event) throws XMLStreamException {
+            if (event.isStartElement()) {
+                StartElement start = event.asStartElement();
+                String name = start.getName().getLocalPart();
+                depth++;
+                if (skippedDepth > 0 || !MAIN_NS.equals(start.getName().getNamespaceURI()) || "f".equals(name)) {
+                    skippedDepth++;
+                    return;
+                }
+                if ("v".equals(name) && stringCell) {
+                    writer.writeStartElement("is");
+                    writer.writeStartElement("t");
+                    writer.writeAttribute("xml", XMLConstants.XML_NS_URI, "space", "preserve");
+                    inStringValue = true;
+                    return;
+                }
+                writer.writeStartElement(name);
+                if ("c".equals(name)) {
+                    Attribute type = start.getAttributeByName(new QName("t"));
+                    stringCell = type != null && "str".equals(type.getValue());
+                }
+                for (Iterator<?> i = start.getAttributes(); i.hasNext();) {
+                    writeAttribute(name, (Attribute) i.next());
+                }
+            } else if (event.isEndElement()) {
+                depth--;
+                if (skippedDepth > 0) {
+                    skippedDepth--;
+                } else if (inStringValue) {
+                    writer.writeEndElement();
+                    writer.writeEndElement();
+                    inStringValue = false;
+                } else {
+                    writer.writeEndElement();
+                }
+            } else if (event.isCharacters() && skippedDepth == 0 && depth > 0) {
+                writer.writeCharacters(event.asCharacters().getData());
+            }
+        }
+
+        private void writeAttribute(String elementName, Attribute attribute) throws XMLStreamException {
+            QName name = attribute.getName();
+            String value = attribute.getValue();
+            if (XMLConstants.XML_NS_URI.equals(name.getNamespaceURI())) {
+                writer.writeAttribute("xml", XMLConstants.XML_NS_URI, name.getLocalPart(), value);
+                return;
+            }
+            if (!name.getNamespaceURI().isEmpty()) {
+                return;
+            }
+            if ("r".equals(name.getLocalPart()) && "row".equals(elementName)) {
+                value = String.valueOf(rowNum + 1);
+            } else if ("r".equals(name.getLocalPart()) && "c".equals(elementName)) {
+                value = new CellReference(rowNum, new CellReference(value).getCol()).formatAsString();
+            } else if ("t".equals(name.getLocalPart()) && "c".equals(elementName) && "str".equals(value)) {
+                value = "inlineStr";
+            }
+            writer.writeAttribute(name.getLocalPart(), value);
+        }
+
+        private boolean isDone() {
+            return depth == 0;
+        }
+    }
+
+    /**
+     * The errors sheet, written once the sheet has been copied. Its rows are written aside while the sheet is copied.
+     */
+    private final class ErrorSheet {
+        private final Map<Integer, TreeMap<Integer, String>> comments = new TreeMap<>();
+        private final List<String> mergedRegions = new ArrayList<>();
+        private final StringWriter cols = new StringWriter();
+        private final Iterator<Map.Entry<Integer, TreeMap<Integer, String>>> errorRows = errorsByRow.entrySet().iterator();
+        private Map.Entry<Integer, TreeMap<Integer, String>> nextErrorRow;
+        private File rowsFile;
+        private OutputStream rowsOut;
+        private XMLStreamWriter rowsWriter;
+        private int nextRowNum = headerRows;
+        private boolean active;
+
+        private FragmentWriter startCols() throws XMLStreamException {
+            return new FragmentWriter(outputFactory.createXMLStreamWriter(cols), -1);
+        }
+
+        /**
+         * @return the writer of the row into the errors sheet, or null when the row is not copied
+         */
+        private FragmentWriter startRow(int rowNum) throws XMLStreamException, IOException {
+            writeEmptyErrorRows(rowNum);
+            if (rowNum < headerRows) {
+                comments.put(rowNum, errorsByRow.getOrDefault(rowNum, new TreeMap<>()));
+                return new FragmentWriter(getRowsWriter(), rowNum);
+            }
+            if (nextErrorRow == null || nextErrorRow.getKey() != rowNum) {
+                return null;
+            }
+            int errorRowNum = nextRowNum++;
+            comments.put(errorRowNum, nextErrorRow.getValue());
+            nextErrorRow = null;
+            return new FragmentWriter(getRowsWriter(), errorRowNum);
+        }
+
+        /**
+         * Writes the rows with errors missing from the sheet, up to a row, as empty rows.
+         */
+        private void writeEmptyErrorRows(int rowNum) throws XMLStreamException, IOException {
+            while (true) {
+                if (nextErrorRow == null) {
+                    if (!errorRows.hasNext()) {
+                        return;
+                    }
+                    nextErrorRow = errorRows.next();
+                }
+                if (nextErrorRow.getKey() >= rowNum) {
+                    return;
+                }
+                if (nextErrorRow.getKey() >= headerRows) {
+                    int errorRowNum = nextRowNum++;
+                    comments.put(errorRowNum, nextErrorRow.getValue());
+                    getRowsWriter().writeStartElement("row");
+                    rowsWriter.writeAttribute("r", String.valueOf(errorRowNum + 1));
+                    rowsWriter.writeEndElement();
+                } else {
+                    comments.put(nextErrorRow.getKey(), nextErrorRow.getValue());
+                }
+                nextErrorRow = null;
+            }
+        }
+
+        private void endRows() throws XMLStreamException, IOException {
+            writeEmptyErrorRows(Integer.MAX_VALUE);
+            if (rowsWriter != null) {
+                rowsWriter.flush();
+            }
+        }
+
+        private void addMergedRegion(String ref) {
+            if (ref != null) {
+                String last = ref.substring(ref.indexOf(':') + 1);
+                if (new CellReference(last).getRow() < headerRows) {
+                    mergedRegions.add(ref);
+                }
+            }
+        }
+
+        private XMLStreamWriter getRowsWriter() throws XMLStreamException, IOException {
+            if (rowsWriter == null) {
+                rowsFile = File.createTempFile("pricat-errors", ".xml");
+                rowsOut = new BufferedOutputStream(new FileOutputStream(rowsFile));
+                rowsWriter = outputFactory.createXMLStreamWriter(rowsOut, StandardCharsets.UTF_8.name());
+            }
+            return rowsWriter;
+        }
+
+        private void write(OutputStream out, String vmlRelId) throws IOException, XMLStreamException {
+            try {
+                StringBuilder head = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+                        .append("<worksheet xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\">")
+                        .append("<sheetViews><sheetView ").append(active ? "tabSelected=\"1\" " : "").append("workbookViewId=\"0\"/></sheetViews>")
+                        .append(cols).append("<sheetData>");
+                out.write(head.toString().getBytes(StandardCharsets.UTF_8));
+                if (rowsWriter != null) {
+                    rowsWriter.close();
+                    rowsOut.close();
+                    Files.copy(rowsFile.toPath(), out);
+                }
+                StringBuilder tail = new StringBuilder("</sheetData>");
+                if (!mergedRegions.isEmpty()) {
+                    tail.append("<mergeCells count=\"").append(mergedRegions.size()).append("\">");
+                    for (String ref : mergedRegions) {
+                        tail.append("<mergeCell ref=\"").append(ref).append("\"/>");
+                    }
+                    tail.append("</mergeCells>");
+                }
+                tail.append("<legacyDrawing r:id=\"").append(vmlRelId).append("\"/></worksheet>");
+                out.write(tail.toString().getBytes(StandardCharsets.UTF_8));
+            } finally {
+                if (rowsFile != null && !rowsFile.delete()) {
+                    rowsFile.deleteOnExit();
+                }
+            }
+        }
+    }
+}
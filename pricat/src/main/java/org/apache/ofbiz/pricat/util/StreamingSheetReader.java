@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.pricat.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellType;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads a sheet of a xlsx file with a SAX handler, row by row, so that the memory used does not depend on
+ * the number of rows.
+ * <p>
+ * Each row is rebuilt as a XSSFRow of a scratch sheet, holding the cell types, values and data formats of
+ * the original row, so that it can be checked like a row of a XSSFWorkbook. The handler removes the row from
+ * the scratch sheet with {@link #removeRow(XSSFRow)} once done with it, the first <code>keptRows</code> rows, which
+ * hold the header of the sheet, are kept. Formula cells are rebuilt as cells of the type of their cached result.
+ * <p>
+ * The rows can be read by other threads than the reading one: strings are stored inline rather than in the shared
+ * strings table of the scratch workbook, and the cell styles are all created beforehand.
+ */
+public final class StreamingSheetReader {
+
+    private static final String MODULE = StreamingSheetReader.class.getName();
+
+    private final ReadOnlySharedStringsTable sharedStrings;
+    private final StylesTable styles;
+    private final int keptRows;
+    private final XSSFWorkbook workbook = new XSSFWorkbook();
+    private final XSSFSheet sheet;
+    private final Map<Integer, XSSFCellStyle> cellStyles = new HashMap<>();
+
+    /**
+     * Handler of the rows of a sheet.
+     */
+    public interface RowHandler {
+        /**
+         * Handles a row of the sheet, rows missing from the sheet are not handled.
+         * @param row the row
+         * @return false to stop reading the sheet
+         */
+        boolean handleRow(XSSFRow row);
+
+        /**
+         * Called once every row of the sheet has been handled.
+         */
+        void endSheet();
+    }
+
+    public StreamingSheetReader(ReadOnlySharedStringsTable sharedStrings, StylesTable styles, String sheetName, int keptRows) {
+        this.sharedStrings = sharedStrings;
+        this.styles = styles;
+        this.keptRows = keptRows;
+        this.sheet = workbook.createSheet(sheetName);
+        for (int i = 0; i < styles.getNumCellStyles(); i++) {
+            XSSFCellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat(styles.getStyleAt(i).getDataFormatString()));
+            cellStyles.put(i, style);
+        }
+    }
+
+    /**
+     * Gets the scratch sheet, holding the kept rows.
+     * @return the sheet
+     */
+    public XSSFSheet getSheet() {
+        return sheet;
+    }
+
+    /**
+     * Reads the rows of a sheet.
+     * @param sheetData the sheet part of the xlsx file
+     * @param rowHandler the handler of the rows
+     * @throws IOException
+     * @throws SAXException
+     */
+    public void read(InputStream sheetData, RowHandler rowHandler) throws IOException, SAXException {
+        try {
+            parse(sheetData, new SheetHandler(rowHandler));
+        } catch (StopReadingException e) {
+            Debug.logVerbose("Stopped reading sheet " + sheet.getSheetName(), MODULE);
+        }
+    }
+
+    /**
+     * Removes a row from the scratch sheet, unless it is one of the first <code>keptRows</code> rows; the row cannot be
+     * used afterwards.
+     * @param row the row
+     */
+    public void removeRow(XSSFRow row) {
+        if (row.getRowNum() >= keptRows) {
+            synchronized (sheet) {
+                sheet.removeRow(row);
+            }
+        }
+    }
+
+    /**
+     * Closes the scratch workbook.
+     */
+    public void close() {
+        try {
+            workbook.close();
+        } catch (IOException e) {
+            Debug.logError(e, MODULE);
+        }
+    }
+
+    private static void parse(InputStream sheetData, DefaultHandler handler) throws IOException, SAXException {
+        XMLReader reader;
+        try {
+            reader = SAXHelper.newXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+        reader.setContentHandler(handler);
+        reader.parse(new InputSource(sheetData));
+    }
+
+    private XSSFCellStyle getCellStyle(int styleIndex) {
+        XSSFCellStyle style = cellStyles.get(styleIndex);
+        return style != null ? style : cellStyles.get(0);
+    }
+
+    /**
+     * Thrown by the handler to stop reading when the row handler asks for it.
+     */
+    private static final class StopReadingException extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final class SheetHandler extends DefaultHandler {
+        private final RowHandler rowHandler;
+        private final StringBuilder value = new StringBuilder();
+        private XSSFRow row;
+        private int nextRowNum;
+        private int nextColNum;
+        private int colNum;
+        private String cellType;
+        private int styleIndex;
+        private boolean hasValue;
+        private boolean inInlineString;
+        private boolean readingValue;
+
+        private SheetHandler(RowHandler rowHandler) {
+            this.rowHandler = rowHandler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+            case "row":
+                String rowRef = attributes.getValue("r");
+                int rowNum = rowRef != null ? Integer.parseInt(rowRef) - 1 : nextRowNum;
+                synchronized (sheet) {
+                    row = sheet.createRow(rowNum);
+                }
+                String height = attributes.getValue("ht");
+                if (height != null) {
+                    row.setHeightInPoints(Float.parseFloat(height));
+                }
+                nextRowNum = rowNum + 1;
+                nextColNum = 0;
+                break;
+            case "c":
+                String cellRef = attributes.getValue("r");
+                colNum = cellRef != null ? new CellReference(cellRef).getCol() : nextColNum;
+                nextColNum = colNum + 1;
+                cellType = attributes.getValue("t");
+                String style = attributes.getValue("s");
+                styleIndex = style != null ? Integer.parseInt(style) : 0;
+                value.setLength(0);
+                hasValue = false;
+                break;
+            case "v":
+                readingValue = true;
+                hasValue = true;
+                break;
+            case "is":
+                inInlineString = true;
+                hasValue = true;
+                break;
+            case "t":
+                readingValue = inInlineString;
+                break;
+            default:
+                break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (readingValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+            case "v":
+            case "t":
+                readingValue = false;
+                break;
+            case "is":
+                inInlineString = false;
+                break;
+            case "c":
+                createCell();
+                break;
+            case "row":
+                boolean goOn = rowHandler.handleRow(row);
+                row = null;
+                if (!goOn) {
+                    throw new StopReadingException();
+                }
+                break;
+            case "sheetData":
+                rowHandler.endSheet();
+                break;
+            default:
+                break;
+            }
+        }
+
+        private void createCell() {
+            XSSFCell cell = row.createCell(colNum);
+            cell.setCellStyle(getCellStyle(styleIndex));
+            if (!hasValue) {
+                return;
+            }
+            String text = value.toString();
+            if ("s".equals(cellType)) {
+                setStringValue(cell, sharedStrings.getItemAt(Integer.parseInt(text)).getString());
+            } else if ("inlineStr".equals(cellType) || "str".equals(cellType)) {
+                setStringValue(cell, text);
+            } else if ("b".equals(cellType)) {
+                cell.setCellValue("1".equals(text));
+            } else if ("e".equals(cellType)) {
+                try {
+                    cell.setCellErrorValue(FormulaError.forString(text));
+                } catch (IllegalArgumentException e) {
+                    setStringValue(cell, text);
+                }
+            } else if (!text.isEmpty()) {
+                cell.setCellValue(Double.parseDouble(text));
+            }
+        }
+
+        private void setStringValue(XSSFCell cell, String text) {
+            // an inline string cell keeps its value, instead of adding it to the shared strings table
+            cell.getCTCell().setT(STCellType.INLINE_STR);
+            cell.setCellValue(text);
+        }
+    }
+}
@@ -179,6 +179,13 @@ var FORMAT_ERROR = 7;
 // flag indicating that the button rows are initialized
 var buttonsInitialized = false;
 
+// the report output is pushed as server-sent events, browsers without EventSource poll it through the updateWin frame
+<#assign eventsUri = report.getDialogRealUri(request)?keep_before_last("/") + "/reportEvents?thread=" + report.getParamThread(request)>
+var eventSource = null;
+
+// flag indicating that an update of the report is scheduled
+var updateScheduled = false;
+
 function append(message) {
     reportOutputFormats.push(FORMAT_DEFAULT);
     reportOutputMessages.push(message);
@@ -272,6 +279,53 @@ function start() {
     isRunning = true;
 
     initButtons();
+
+    if (!listen()) {
+        updateWin.location.href = document.getElementById("updateWin").getAttribute("data-src");
+    }
+}
+
+// listens to the events of the report output, returns false if the browser does not support server-sent events
+function listen() {
+    if (!window.EventSource) {
+        return false;
+    }
+    var handlers = {"a": append, "aH": appendHead, "aW": appendWarning, "aE": appendError, "aN": appendNote, "aO": appendOk,
+        "aT": appendThrowable, "aB": appendBr};
+    eventSource = new EventSource("${StringUtil.wrapString(eventsUri)}");
+    for (var name in handlers) {
+        eventSource.addEventListener(name, reportEventListener(handlers[name]));
+    }
+    eventSource.addEventListener("end", function() {
+        eventSource.close();
+        flushUpdate();
+        stop();
+    });
+    eventSource.onerror = function() {
+        // the browser reconnects by itself, unless the report is not found
+        if (eventSource.readyState == EventSource.CLOSED) {
+            flushUpdate();
+            stop();
+        }
+    };
+    return true;
+}
+
+function reportEventListener(handler) {
+    return function(event) {
+        handler(event.data);
+        if (!updateScheduled) {
+            updateScheduled = true;
+            setTimeout('flushUpdate();', 250);
+        }
+    };
+}
+
+// writes the received messages to the report
+function flushUpdate() {
+    updateScheduled = false;
+    update();
+    flushArray();
 }
 
 function stop() {
@@ -506,7 +560,7 @@ function downloadPricat(sequenceNum) {
   <#if report.getResourceListAsParam(request)?has_content>
     <#assign resources = report.getResourceListAsParam(request)>
   </#if>
-    <iframe src="${StringUtil.wrapString(report.getDialogRealUri(request))}?action=reportupdate&thread=${report.getParamThread(request)}&threadhasnext=${report.getParamThreadHasNext(request)}<#if resourceParam?has_content>${"&" + resourceParam + "=" + resources}<#else>${""}</#if>" name="updateWin" style="width:20px; height:20px; margin: 0px;" marginwidth="0" 
+    <iframe id="updateWin" src="about:blank" data-src="${StringUtil.wrapString(report.getDialogRealUri(request))}?action=reportupdate&thread=${report.getParamThread(request)}&threadhasnext=${report.getParamThreadHasNext(request)}<#if resourceParam?has_content>${"&" + resourceParam + "=" + resources}<#else>${""}</#if>" name="updateWin" style="width:20px; height:20px; margin: 0px;" marginwidth="0" 
             marginheight="0" frameborder="0" framespacing="0" scrolling="no" class='hide'></iframe>
   </td></tr>
 </table>
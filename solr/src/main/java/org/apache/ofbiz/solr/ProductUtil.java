@@ -59,6 +59,7 @@ public final class ProductUtil {
         if (Debug.verboseOn()) {
             Debug.logVerbose("Solr: Getting product content for productId '" + productId + "'", MODULE);
         }
+        long startNanos = System.nanoTime();
         try {
             // Generate special ProductContentWrapper for the supported languages (de/en/fr)
             ProductContentWrapper productContentEn = new ProductContentWrapper(dispatcher, product, new Locale("en"), null);
@@ -85,6 +86,7 @@ public final class ProductUtil {
                 // if (product.get("productWeight") != null) dispatchContext.put("weight", "");
 
                 // Trying to set a correctand trail
+                long stepNanos = System.nanoTime();
                 List<GenericValue> category = delegator.findList("ProductCategoryMember",
                         EntityCondition.makeCondition(UtilMisc.toMap("productId", productId)), null, null, null, false);
                 List<String> trails = new ArrayList<>();
@@ -127,22 +129,29 @@ public final class ProductUtil {
                     }
                 }
                 dispatchContext.put("catalog", catalogs);
+                SolrStatistics.recordTime("document.generate.categories", stepNanos);
 
                 // Alternative
                 // if (category.size()>0) dispatchContext.put("category", category);
                 // if (product.get("popularity") != null) dispatchContext.put("popularity", "");
 
+                stepNanos = System.nanoTime();
                 Map<String, Object> featureSet = dispatcher.runSync("getProductFeatureSet", UtilMisc.toMap("productId", productId));
                 if (ServiceUtil.isError(featureSet)) {
+                    SolrStatistics.recordError("document.generate");
                     return ServiceUtil.returnError(ServiceUtil.getErrorMessage(featureSet));
                 }
                 if (featureSet != null) {
                     dispatchContext.put("features", featureSet.get("featureSet"));
                 }
+                SolrStatistics.recordTime("document.generate.features", stepNanos);
+
+                stepNanos = System.nanoTime();
 
                 Map<String, Object> productInventoryAvailable = dispatcher.runSync("getProductInventoryAvailable",
                         UtilMisc.toMap("productId", productId));
                 if (ServiceUtil.isError(productInventoryAvailable)) {
+                    SolrStatistics.recordError("document.generate");
                     return ServiceUtil.returnError(ServiceUtil.getErrorMessage(productInventoryAvailable));
                 }
                 String inStock = null;
@@ -151,6 +160,7 @@ public final class ProductUtil {
                     inStock = availableToPromiseTotal.toBigInteger().toString();
                 }
                 dispatchContext.put("inStock", inStock);
+                SolrStatistics.recordTime("document.generate.inventory", stepNanos);
 
                 Boolean isVirtual = ProductWorker.isVirtual(delegator, productId);
                 if (isVirtual) {
@@ -165,6 +175,7 @@ public final class ProductUtil {
                     dispatchContext.put("isPhysical", isPhysical);
                 }
 
+                stepNanos = System.nanoTime();
                 Map<String, String> title = new HashMap<>();
                 String detitle = productContentDe.get("PRODUCT_NAME", "html").toString();
                 if (detitle != null) {
@@ -215,11 +226,13 @@ public final class ProductUtil {
                     longDescription.put("fr", frlongDescription);
                 }
                 dispatchContext.put("longDescription", longDescription);
+                SolrStatistics.recordTime("document.generate.content", stepNanos);
 
                 // dispatchContext.put("comments", "");
                 // dispatchContext.put("keywords", "");
                 // dispatchContext.put("last_modified", "");
 
+                stepNanos = System.nanoTime();
                 if ("AGGREGATED".equals(product.getString("productTypeId"))) {
                     ProductConfigWrapper configWrapper = new ProductConfigWrapper(delegator, dispatcher, productId, null,
                             null, null, null, locale, userLogin);
@@ -235,7 +248,8 @@ public final class ProductUtil {
                     Map<String, GenericValue> priceContext = UtilMisc.toMap("product", product);
                     Map<String, Object> priceMap = dispatcher.runSync("calculateProductPrice", priceContext);
                     if (ServiceUtil.isError(priceMap)) {
-                        return ServiceUtil.returnError(ServiceUtil.getErrorMessage(priceMap));
+                        SolrStatistics.recordError("document.generate");
+                    return ServiceUtil.returnError(ServiceUtil.getErrorMessage(priceMap));
                     }
                     if (priceMap.get("listPrice") != null) {
                         String listPrice = ((BigDecimal) priceMap.get("listPrice")).setScale(2, RoundingMode.HALF_DOWN).toString();
@@ -248,9 +262,14 @@ public final class ProductUtil {
                         }
                     }
                 }
+                SolrStatistics.recordTime("document.generate.price", stepNanos);
             }
         } catch (Exception e) {
+            SolrStatistics.recordError("document.generate");
             Debug.logError(e, e.getMessage(), MODULE);
+        } finally {
+            // also timed when a step returns an error
+            SolrStatistics.recordTime("document.generate", startNanos);
         }
         return dispatchContext;
     }
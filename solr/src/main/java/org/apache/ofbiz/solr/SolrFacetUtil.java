@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.solr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.params.FacetParams;
+
+/**
+ * Compiles the SolrFacetDefinition records of a product store into Solr request parameters.
+ * <p>
+ * Compiled facets are cached per product store; the cache is cleared by an entity ECA
+ * whenever a SolrFacetDefinition is created, updated or removed.
+ */
+public final class SolrFacetUtil {
+
+    private static final String MODULE = SolrFacetUtil.class.getName();
+    private static final UtilCache<String, List<SolrFacet>> FACET_CACHE = UtilCache.createUtilCache("solr.FacetDefinitions", 0, 0);
+
+    /** Product store id of the definitions used by stores without their own facets. */
+    public static final String DEFAULT_PRODUCT_STORE_ID = "_NA_";
+
+    private SolrFacetUtil() { }
+
+    /**
+     * Returns the compiled facets of a product store, falling back to the default definitions.
+     */
+    public static List<SolrFacet> getFacets(Delegator delegator, String productStoreId) throws GenericEntityException {
+        String storeId = UtilValidate.isNotEmpty(productStoreId) ? productStoreId : DEFAULT_PRODUCT_STORE_ID;
+        List<SolrFacet> facets = FACET_CACHE.get(storeId);
+        if (facets == null) {
+            facets = compileFacets(delegator, storeId);
+            if (facets.isEmpty() && !DEFAULT_PRODUCT_STORE_ID.equals(storeId)) {
+                facets = getFacets(delegator, DEFAULT_PRODUCT_STORE_ID);
+            }
+            facets = FACET_CACHE.putIfAbsentAndGet(storeId, facets);
+        }
+        return facets;
+    }
+
+    /**
+     * Adds the given facets to a query; when facetIds is not empty only the facets it names are added.
+     */
+    public static void applyFacets(SolrQuery solrQuery, List<SolrFacet> facets, Collection<String> facetIds) {
+        boolean applied = false;
+        for (SolrFacet facet : facets) {
+            if (UtilValidate.isEmpty(facetIds) || facetIds.contains(facet.getFacetId())) {
+                for (String[] param : facet.getParams()) {
+                    solrQuery.add(param[0], param[1]);
+                }
+                applied = true;
+            }
+        }
+        if (applied) {
+            solrQuery.setFacet(true);
+        }
+    }
+
+    public static void clearCache(String productStoreId) {
+        if (UtilValidate.isEmpty(productStoreId) || DEFAULT_PRODUCT_STORE_ID.equals(productStoreId)) {
+            // stores without own definitions hold the default facets under their own key
+            FACET_CACHE.clear();
+        } else {
+            FACET_CACHE.remove(productStoreId);
+        }
+    }
+
+    /**
+     * Clears the compiled facets cache - intended for use with ECAs.
+     */
+    public static Map<String, Object> clearSolrFacetDefinitionCache(DispatchContext dctx, Map<String, Object> context) {
+        clearCache((String) context.get("productStoreId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static List<SolrFacet> compileFacets(Delegator delegator, String productStoreId) throws GenericEntityException {
+        List<GenericValue> definitions = EntityQuery.use(delegator).from("SolrFacetDefinition")
+                .where("productStoreId", productStoreId).orderBy("sequenceNum", "facetId").queryList();
+        List<SolrFacet> facets = new ArrayList<>(definitions.size());
+        for (GenericValue definition : definitions) {
+            SolrFacet facet = compileFacet(definition);
+            if (facet != null) {
+                facets.add(facet);
+            }
+        }
+        return Collections.unmodifiableList(facets);
+    }
+
+    private static SolrFacet compileFacet(GenericValue definition) {
+        String facetId = definition.getString("facetId");
+        String facetTypeId = definition.getString("facetTypeId");
+        String fieldName = definition.getString("fieldName");
+        Long facetLimit = definition.getLong("facetLimit");
+        Long minCount = definition.getLong("minCount");
+        List<String[]> params = new ArrayList<>();
+
+        if ("FIELD".equals(facetTypeId) && UtilValidate.isNotEmpty(fieldName)) {
+            params.add(new String[] {FacetParams.FACET_FIELD, fieldName});
+            addFieldParam(params, fieldName, FacetParams.FACET_LIMIT, facetLimit);
+            addFieldParam(params, fieldName, FacetParams.FACET_MINCOUNT, minCount);
+        } else if ("RANGE".equals(facetTypeId) && UtilValidate.isNotEmpty(fieldName)
+                && UtilValidate.isNotEmpty(definition.getString("rangeStart"))
+                && UtilValidate.isNotEmpty(definition.getString("rangeEnd"))
+                && UtilValidate.isNotEmpty(definition.getString("rangeGap"))) {
+            params.add(new String[] {FacetParams.FACET_RANGE, fieldName});
+            addFieldParam(params, fieldName, FacetParams.FACET_RANGE_START, definition.getString("rangeStart"));
+            addFieldParam(params, fieldName, FacetParams.FACET_RANGE_END, definition.getString("rangeEnd"));
+            addFieldParam(params, fieldName, FacetParams.FACET_RANGE_GAP, definition.getString("rangeGap"));
+            addFieldParam(params, fieldName, FacetParams.FACET_MINCOUNT, minCount);
+        } else if ("QUERY".equals(facetTypeId) && UtilValidate.isNotEmpty(definition.getString("facetQuery"))) {
+            params.add(new String[] {FacetParams.FACET_QUERY, definition.getString("facetQuery")});
+        } else if ("PIVOT".equals(facetTypeId) && UtilValidate.isNotEmpty(fieldName)) {
+            params.add(new String[] {FacetParams.FACET_PIVOT, fieldName});
+            for (String pivotField : fieldName.split(",")) {
+                addFieldParam(params, pivotField.trim(), FacetParams.FACET_LIMIT, facetLimit);
+            }
+            if (minCount != null) {
+                params.add(new String[] {FacetParams.FACET_PIVOT_MINCOUNT, minCount.toString()});
+            }
+        } else {
+            Debug.logWarning("Solr: Ignoring incomplete facet definition " + definition.getPrimaryKey(), MODULE);
+            return null;
+        }
+        return new SolrFacet(facetId, params);
+    }
+
+    private static void addFieldParam(List<String[]> params, String fieldName, String paramName, Object value) {
+        if (value != null) {
+            params.add(new String[] {"f." + fieldName + "." + paramName, value.toString()});
+        }
+    }
+
+    /**
+     * A facet definition compiled into the request parameters it adds to a Solr query.
+     */
+    public static final class SolrFacet {
+        private final String facetId;
+        private final List<String[]> params;
+
+        private SolrFacet(String facetId, List<String[]> params) {
+            this.facetId = facetId;
+            this.params = Collections.unmodifiableList(params);
+        }
+
+        public String getFacetId() {
+            return facetId;
+        }
+
+        public List<String[]> getParams() {
+            return params;
+        }
+    }
+}
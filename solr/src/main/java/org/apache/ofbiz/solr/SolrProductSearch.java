@@ -19,17 +19,28 @@
 package org.apache.ofbiz.solr;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.ConnectException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -37,10 +48,15 @@ import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.response.FacetField;
 import org.apache.solr.client.solrj.response.FacetField.Count;
+import org.apache.solr.client.solrj.response.PivotField;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.response.RangeFacet;
 import org.apache.solr.client.solrj.response.SpellCheckResponse.Suggestion;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.ofbiz.base.lang.JSON;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
@@ -49,6 +65,8 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericDelegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
@@ -62,12 +80,18 @@ public abstract class SolrProductSearch {
 
     private static final String MODULE = SolrProductSearch.class.getName();
     private static final String RESOURCE = "SolrUiLabels";
+    private static final String SOLR_CONFIG_NAME = "solrconfig.properties";
+    private static final String[] DELTA_ENTITIES = {"Product", "ProductPrice", "ProductCategoryMember", "ProductContent", "InventoryItem"};
+    private static final long DELTA_OVERLAP = UtilProperties.getPropertyAsLong(SOLR_CONFIG_NAME, "solr.delta.overlap", 60000);
+    private static final int DELTA_BATCH_SIZE = UtilProperties.getPropertyAsInteger(SOLR_CONFIG_NAME, "solr.delta.batchSize", 500);
+    private static final String EXPORT_DIR = UtilProperties.getPropertyValue(SOLR_CONFIG_NAME, "solr.export.dir", "runtime/solr/export");
 
     /**
      * Adds product to solr, with product denoted by productId field in instance attribute
      * - intended for use with ECAs/SECAs.
      */
     public static Map<String, Object> addToSolr(DispatchContext dctx, Map<String, Object> context) throws GenericEntityException {
+        long startNanos = System.nanoTime();
         Map<String, Object> result;
         LocalDispatcher dispatcher = dctx.getDispatcher();
         Delegator delegator = dctx.getDelegator();
@@ -105,6 +129,7 @@ public abstract class SolrProductSearch {
             }
             result = ServiceUtil.returnSuccess();
         }
+        SolrStatistics.recordOperation("addToSolr", startNanos, result);
         return result;
     }
 
@@ -112,6 +137,7 @@ public abstract class SolrProductSearch {
      * Adds product to solr index.
      */
     public static Map<String, Object> addToSolrIndex(DispatchContext dctx, Map<String, Object> context) throws GenericEntityException {
+        long startNanos = System.nanoTime();
         HttpSolrClient client = null;
         Locale locale = (Locale) context.get("locale");
         Map<String, Object> result;
@@ -137,8 +163,13 @@ public abstract class SolrProductSearch {
             docs.add(doc1);
 
             // push Documents to server
+            long updateNanos = System.nanoTime();
             client.add(docs);
+            SolrStatistics.recordTime("update.add", updateNanos);
+            updateNanos = System.nanoTime();
             client.commit();
+            SolrStatistics.recordTime("update.commit", updateNanos);
+            SolrQueryCache.indexChanged(solrIndexName);
 
             final String statusStr = UtilProperties.getMessage(RESOURCE, "SolrDocumentForProductIdAddedToSolrIndex",
                     UtilMisc.toMap("productId", context.get("productId")), locale);
@@ -178,6 +209,7 @@ public abstract class SolrProductSearch {
                 }
             }
         }
+        SolrStatistics.recordOperation("addToSolrIndex", startNanos, result);
         return result;
     }
 
@@ -187,6 +219,7 @@ public abstract class SolrProductSearch {
      * This is faster than reflushing the index each time.
      */
     public static Map<String, Object> addListToSolrIndex(DispatchContext dctx, Map<String, Object> context) throws GenericEntityException {
+        long startNanos = System.nanoTime();
         String solrIndexName = (String) context.get("indexName");
         Locale locale = (Locale) context.get("locale");
         HttpSolrClient client = null;
@@ -210,8 +243,13 @@ public abstract class SolrProductSearch {
             SolrUtil.getInstance();
             // push Documents to server
             client = SolrUtil.getHttpSolrClient(solrIndexName);
+            long updateNanos = System.nanoTime();
             client.add(docs);
+            SolrStatistics.recordTime("update.add", updateNanos);
+            updateNanos = System.nanoTime();
             client.commit();
+            SolrStatistics.recordTime("update.commit", updateNanos);
+            SolrQueryCache.indexChanged(solrIndexName);
 
             final String statusStr = UtilProperties.getMessage(RESOURCE, "SolrAddedDocumentsToSolrIndex",
                     UtilMisc.toMap("fieldList", fieldList.size()), locale);
@@ -251,6 +289,7 @@ public abstract class SolrProductSearch {
                 }
             }
         }
+        SolrStatistics.recordOperation("addListToSolrIndex", startNanos, result);
         return result;
     }
 
@@ -261,6 +300,7 @@ public abstract class SolrProductSearch {
      * groovy files (As a decent example on how to use it, however, use keywordSearch instead).
      */
     public static Map<String, Object> runSolrQuery(DispatchContext dctx, Map<String, Object> context) {
+        long startNanos = System.nanoTime();
         // get Connection
         HttpSolrClient client = null;
         String solrIndexName = (String) context.get("indexName");
@@ -273,22 +313,9 @@ public abstract class SolrProductSearch {
             solrQuery.setQuery((String) context.get("query"));
             boolean faceted = (Boolean) context.get("facet");
             if (faceted) {
-                solrQuery.setFacet(faceted);
-                solrQuery.addFacetField("manu");
-                solrQuery.addFacetField("cat");
-                solrQuery.setFacetMinCount(1);
-                solrQuery.setFacetLimit(8);
-
-                solrQuery.addFacetQuery("listPrice:[0 TO 50]");
-                solrQuery.addFacetQuery("listPrice:[50 TO 100]");
-                solrQuery.addFacetQuery("listPrice:[100 TO 250]");
-                solrQuery.addFacetQuery("listPrice:[250 TO 500]");
-                solrQuery.addFacetQuery("listPrice:[500 TO 1000]");
-                solrQuery.addFacetQuery("listPrice:[1000 TO 2500]");
-                solrQuery.addFacetQuery("listPrice:[2500 TO 5000]");
-                solrQuery.addFacetQuery("listPrice:[5000 TO 10000]");
-                solrQuery.addFacetQuery("listPrice:[10000 TO 50000]");
-                solrQuery.addFacetQuery("listPrice:[50000 TO *]");
+                List<String> facetIds = UtilGenerics.cast(context.get("facetIds"));
+                SolrFacetUtil.applyFacets(solrQuery, SolrFacetUtil.getFacets(dctx.getDelegator(), (String) context.get("productStoreId")),
+                        facetIds);
             }
 
             boolean spellCheck = (Boolean) context.get("spellcheck");
@@ -308,7 +335,8 @@ public abstract class SolrProductSearch {
             // Set additional Parameter
             // SolrQuery.ORDER order = SolrQuery.ORDER.desc;
 
-            if (context.get("viewIndex") != null && (Integer) context.get("viewIndex") > 0) {
+            String cursorMark = (String) context.get("cursorMark");
+            if (UtilValidate.isEmpty(cursorMark) && context.get("viewIndex") != null && (Integer) context.get("viewIndex") > 0) {
                 solrQuery.setStart((Integer) context.get("viewIndex"));
             }
             if (context.get("viewSize") != null && (Integer) context.get("viewSize") > 0) {
@@ -347,9 +375,20 @@ public abstract class SolrProductSearch {
                 solrQuery.addFacetQuery((String) context.get("facetQuery"));
             }
 
+            // cursor based paging needs a sort ending with the uniqueKey, and no start offset
+            if (UtilValidate.isNotEmpty(cursorMark)) {
+                SolrUtil.addCursorSort(solrQuery);
+                solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            }
+
+            long queryNanos = System.nanoTime();
             QueryResponse rsp = client.query(solrQuery);
+            SolrStatistics.recordQueryTime(solrQuery, queryNanos);
             result = ServiceUtil.returnSuccess();
             result.put("queryResult", rsp);
+            if (rsp.getNextCursorMark() != null) {
+                result.put("nextCursorMark", rsp.getNextCursorMark());
+            }
         } catch (Exception e) {
             Debug.logError(e, e.getMessage(), MODULE);
             result = ServiceUtil.returnError(e.toString());
@@ -362,6 +401,7 @@ public abstract class SolrProductSearch {
                 }
             }
         }
+        SolrStatistics.recordOperation("runSolrQuery", startNanos, result);
         return result;
     }
 
@@ -374,6 +414,18 @@ public abstract class SolrProductSearch {
         LocalDispatcher dispatcher = dctx.getDispatcher();
         String solrIndexName = (String) context.get("indexName");
 
+        String cacheKey = null;
+        long cacheGeneration = 0;
+        if (SolrQueryCache.isEnabled()) {
+            cacheGeneration = SolrQueryCache.getIndexGeneration(solrIndexName);
+            cacheKey = SolrQueryCache.makeKey("productsSearch", solrIndexName, cacheGeneration, context, "productCategoryId", "viewSize",
+                    "viewIndex", "queryFilter", "cursor");
+            Map<String, Object> cachedResult = SolrQueryCache.get("productsSearch", cacheKey);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+        }
+
         try {
             Map<String, Object> dispatchMap = new HashMap<>();
             if (UtilValidate.isNotEmpty(context.get("productCategoryId"))) {
@@ -391,6 +443,16 @@ public abstract class SolrProductSearch {
             if (context.get("queryFilter") != null) {
                 dispatchMap.put("queryFilter", context.get("queryFilter"));
             }
+            if (context.get("cursor") != null) {
+                String cursorMark;
+                try {
+                    cursorMark = SolrUtil.decodeCursor((String) context.get("cursor"));
+                } catch (IllegalArgumentException e) {
+                    return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "SolrInvalidCursor",
+                            UtilMisc.toMap("cursor", context.get("cursor")), locale));
+                }
+                dispatchMap.put("cursorMark", cursorMark);
+            }
             dispatchMap.put("facet", false);
             dispatchMap.put("spellcheck", true);
             dispatchMap.put("highlight", true);
@@ -409,6 +471,12 @@ public abstract class SolrProductSearch {
                 result.put("listSize", queryResult.getResults().getNumFound());
                 result.put("viewIndex", queryResult.getResults().getStart());
                 result.put("viewSize", queryResult.getResults().size());
+                if (context.get("cursor") != null) {
+                    result.put("nextCursor", SolrUtil.encodeCursor(queryResult.getNextCursorMark()));
+                }
+                if (cacheKey != null) {
+                    SolrQueryCache.put(cacheKey, solrIndexName, cacheGeneration, result);
+                }
             } else {
                 result = ServiceUtil.returnFailure();
             }
@@ -426,6 +494,7 @@ public abstract class SolrProductSearch {
      */
     public static Map<String, Object> keywordSearch(DispatchContext dctx, Map<String, Object> context) {
         Map<String, Object> result;
+        Locale locale = (Locale) context.get("locale");
         LocalDispatcher dispatcher = dctx.getDispatcher();
         String solrIndexName = (String) context.get("indexName");
 
@@ -434,6 +503,18 @@ public abstract class SolrProductSearch {
                 context.put("query", "*:*");
             }
 
+            String cacheKey = null;
+            long cacheGeneration = 0;
+            if (SolrQueryCache.isEnabled()) {
+                cacheGeneration = SolrQueryCache.getIndexGeneration(solrIndexName);
+                cacheKey = SolrQueryCache.makeKey("keywordSearch", solrIndexName, cacheGeneration, context, "query", "viewSize", "viewIndex",
+                        "queryFilter", "productStoreId", "facetIds", "cursor");
+                Map<String, Object> cachedResult = SolrQueryCache.get("keywordSearch", cacheKey);
+                if (cachedResult != null) {
+                    return cachedResult;
+                }
+            }
+
             Map<String, Object> dispatchMap = new HashMap<>();
             if (context.get("viewSize") != null) {
                 dispatchMap.put("viewSize", Integer.parseInt(((String) context.get("viewSize"))));
@@ -447,6 +528,22 @@ public abstract class SolrProductSearch {
             if (context.get("queryFilter") != null) {
                 dispatchMap.put("queryFilter", context.get("queryFilter"));
             }
+            if (context.get("productStoreId") != null) {
+                dispatchMap.put("productStoreId", context.get("productStoreId"));
+            }
+            if (context.get("facetIds") != null) {
+                dispatchMap.put("facetIds", context.get("facetIds"));
+            }
+            if (context.get("cursor") != null) {
+                String cursorMark;
+                try {
+                    cursorMark = SolrUtil.decodeCursor((String) context.get("cursor"));
+                } catch (IllegalArgumentException e) {
+                    return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "SolrInvalidCursor",
+                            UtilMisc.toMap("cursor", context.get("cursor")), locale));
+                }
+                dispatchMap.put("cursorMark", cursorMark);
+            }
             dispatchMap.put("spellcheck", true);
             dispatchMap.put("indexName", solrIndexName);
 
@@ -495,14 +592,40 @@ public abstract class SolrProductSearch {
                 }
             }
 
+            Map<String, Map<String, Long>> facetRanges = new HashMap<>();
+            if (queryResult.getFacetRanges() != null) {
+                for (RangeFacet<?, ?> range : queryResult.getFacetRanges()) {
+                    Map<String, Long> rangeEntry = new LinkedHashMap<>();
+                    for (RangeFacet.Count rcount : range.getCounts()) {
+                        rangeEntry.put(rcount.getValue(), (long) rcount.getCount());
+                    }
+                    facetRanges.put(range.getName(), rangeEntry);
+                }
+            }
+
+            Map<String, List<Map<String, Object>>> facetPivots = new HashMap<>();
+            if (queryResult.getFacetPivot() != null) {
+                for (Map.Entry<String, List<PivotField>> pivot : queryResult.getFacetPivot()) {
+                    facetPivots.put(pivot.getKey(), getPivotEntries(pivot.getValue()));
+                }
+            }
+
             result.put("results", queryResult.getResults());
             result.put("facetFields", facetFields);
             result.put("facetQueries", facetQueries);
+            result.put("facetRanges", facetRanges);
+            result.put("facetPivots", facetPivots);
             result.put("queryTime", queryResult.getElapsedTime());
             result.put("listSize", queryResult.getResults().getNumFound());
             result.put("viewIndex", queryResult.getResults().getStart());
             result.put("viewSize", queryResult.getResults().size());
             result.put("suggestions", suggestions);
+            if (context.get("cursor") != null) {
+                result.put("nextCursor", SolrUtil.encodeCursor(queryResult.getNextCursorMark()));
+            }
+            if (cacheKey != null) {
+                SolrQueryCache.put(cacheKey, solrIndexName, cacheGeneration, result);
+            }
 
         } catch (Exception e) {
             Debug.logError(e, e.getMessage(), MODULE);
@@ -511,6 +634,103 @@ public abstract class SolrProductSearch {
         return result;
     }
 
+    /**
+     * Exports all documents matching a query to a file, one JSON object per line.
+     * <p>
+     * The result is walked with a solr cursor and each page is streamed, so memory use is independent of the result size.
+     * The output file name is resolved within the <code>solr.export.dir</code> directory, absolute names and names
+     * leading out of it are rejected.
+     */
+    public static Map<String, Object> exportProducts(DispatchContext dctx, Map<String, Object> context) {
+        Map<String, Object> result;
+        Locale locale = (Locale) context.get("locale");
+        String solrIndexName = (String) context.get("indexName");
+        String outputFileName = (String) context.get("outputFileName");
+        Integer batchSize = (Integer) context.get("batchSize");
+        Path outputFile = resolveExportFile(outputFileName);
+        if (outputFile == null) {
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "SolrExportFileNameNotAllowed",
+                    UtilMisc.toMap("outputFileName", outputFileName), locale));
+        }
+
+        SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery((String) context.get("query"));
+        String queryFilter = (String) context.get("queryFilter");
+        if (UtilValidate.isNotEmpty(queryFilter)) {
+            solrQuery.setFilterQueries(queryFilter.split(" "));
+        }
+        if (UtilValidate.isNotEmpty(context.get("returnFields"))) {
+            solrQuery.setFields((String) context.get("returnFields"));
+        }
+
+        try {
+            Files.createDirectories(outputFile.getParent());
+        } catch (IOException e) {
+            Debug.logError(e, e.getMessage(), MODULE);
+            return ServiceUtil.returnError(e.toString());
+        }
+        try (Writer writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+            long numExported = SolrUtil.exportDocuments(solrIndexName, solrQuery, batchSize, doc -> {
+                try {
+                    writer.write(JSON.from(doc).toString());
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            final String statusMsg = UtilProperties.getMessage(RESOURCE, "SolrExportedDocuments",
+                    UtilMisc.toMap("numDocs", numExported, "outputFileName", outputFileName), locale);
+            Debug.logInfo("Solr: " + statusMsg, MODULE);
+            result = ServiceUtil.returnSuccess(statusMsg);
+            result.put("numExported", numExported);
+        } catch (IOException | UncheckedIOException | SolrServerException e) {
+            Debug.logError(e, e.getMessage(), MODULE);
+            result = ServiceUtil.returnError(e.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Resolves an export file name within the export directory.
+     * @return the export file, or null if the name is absolute or leads out of the export directory
+     */
+    private static Path resolveExportFile(String outputFileName) {
+        Path exportDir = Paths.get(EXPORT_DIR).toAbsolutePath().normalize();
+        Path fileName;
+        try {
+            fileName = Paths.get(outputFileName);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (fileName.isAbsolute() || fileName.getRoot() != null) {
+            return null;
+        }
+        for (Path part : fileName) {
+            if ("..".equals(part.toString())) {
+                return null;
+            }
+        }
+        Path outputFile = exportDir.resolve(fileName).normalize();
+        return outputFile.startsWith(exportDir) && !outputFile.equals(exportDir) ? outputFile : null;
+    }
+
+    private static List<Map<String, Object>> getPivotEntries(List<PivotField> pivotFields) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        if (pivotFields != null) {
+            for (PivotField pivotField : pivotFields) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("field", pivotField.getField());
+                entry.put("value", pivotField.getValue());
+                entry.put("count", (long) pivotField.getCount());
+                if (pivotField.getPivot() != null) {
+                    entry.put("pivot", getPivotEntries(pivotField.getPivot()));
+                }
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
     /**
      * Returns a map of the categories currently available under the root element.
      */
@@ -646,6 +866,7 @@ public abstract class SolrProductSearch {
      * Rebuilds the solr index.
      */
     public static Map<String, Object> rebuildSolrIndex(DispatchContext dctx, Map<String, Object> context) throws GenericEntityException {
+        long startNanos = System.nanoTime();
         HttpSolrClient client = null;
         Map<String, Object> result;
         GenericDelegator delegator = (GenericDelegator) dctx.getDelegator();
@@ -655,6 +876,7 @@ public abstract class SolrProductSearch {
         String solrIndexName = (String) context.get("indexName");
 
         Boolean treatConnectErrorNonFatal = (Boolean) context.get("treatConnectErrorNonFatal");
+        Timestamp rebuildStartStamp = UtilDateTime.nowTimestamp();
 
         try {
             SolrUtil.getInstance();
@@ -678,16 +900,18 @@ public abstract class SolrProductSearch {
             }
 
             // this removes everything from the index
+            long updateNanos = System.nanoTime();
             client.deleteByQuery("*:*");
+            SolrStatistics.recordTime("update.delete", updateNanos);
+            updateNanos = System.nanoTime();
             client.commit();
+            SolrStatistics.recordTime("update.commit", updateNanos);
+            SolrQueryCache.indexChanged(solrIndexName);
 
             // THis adds all products to the Index (instantly)
             Map<String, Object> runResult = dispatcher.runSync("addListToSolrIndex",
                     UtilMisc.toMap("fieldList", solrDocs, "userLogin", userLogin, "locale", locale, "indexName",
                     solrIndexName, "treatConnectErrorNonFatal", treatConnectErrorNonFatal));
-            if (ServiceUtil.isError(runResult)) {
-                return ServiceUtil.returnError(ServiceUtil.getErrorMessage(runResult));
-            }
             String runMsg = ServiceUtil.getErrorMessage(runResult);
             if (UtilValidate.isEmpty(runMsg)) {
                 runMsg = null;
@@ -697,6 +921,7 @@ public abstract class SolrProductSearch {
             } else if (ServiceUtil.isFailure(runResult)) {
                 result = ServiceUtil.returnFailure(runMsg);
             } else {
+                storeIndexStatus(delegator, solrIndexName, rebuildStartStamp, numDocs, 0);
                 final String statusMsg = UtilProperties.getMessage(RESOURCE, "SolrClearedSolrIndexAndReindexedDocuments",
                         UtilMisc.toMap("numDocs", numDocs), locale);
                 result = ServiceUtil.returnSuccess(statusMsg);
@@ -727,6 +952,165 @@ public abstract class SolrProductSearch {
                 }
             }
         }
+        SolrStatistics.recordOperation("rebuildSolrIndex", startNanos, result);
+        return result;
+    }
+
+    /**
+     * Reindexes the products changed since the previous delta import of the index and removes the documents
+     * of discontinued or deleted products.
+     * <p>
+     * A product is considered changed when its Product, ProductPrice, ProductCategoryMember, ProductContent or
+     * InventoryItem rows have a lastUpdatedStamp after the high-water mark stored in SolrIndexStatus.
+     * Products deleted from the database without leaving any of these rows can not be detected; use
+     * rebuildSolrIndex to reconcile them.
+     */
+    public static Map<String, Object> deltaImportSolrIndex(DispatchContext dctx, Map<String, Object> context) {
+        long startNanos = System.nanoTime();
+        HttpSolrClient client = null;
+        Map<String, Object> result;
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        Locale locale = (Locale) context.get("locale");
+        String solrIndexName = (String) context.get("indexName");
+        Boolean treatConnectErrorNonFatal = (Boolean) context.get("treatConnectErrorNonFatal");
+        Timestamp importStartStamp = UtilDateTime.nowTimestamp();
+
+        try {
+            GenericValue indexStatus = EntityQuery.use(delegator).from("SolrIndexStatus").where("indexName", solrIndexName).queryOne();
+            Timestamp sinceStamp = indexStatus != null ? indexStatus.getTimestamp("lastDeltaImportStamp") : null;
+            if (sinceStamp != null) {
+                sinceStamp = new Timestamp(sinceStamp.getTime() - DELTA_OVERLAP);
+            }
+
+            Set<String> productIds = new TreeSet<>();
+            for (String entityName : DELTA_ENTITIES) {
+                productIds.addAll(getChangedProductIds(delegator, entityName, "lastUpdatedStamp", sinceStamp, importStartStamp));
+            }
+            // products reaching their sales discontinuation date do not get a new lastUpdatedStamp
+            productIds.addAll(getChangedProductIds(delegator, "Product", "salesDiscontinuationDate", sinceStamp, importStartStamp));
+
+            Debug.logInfo("Solr: Delta import of " + productIds.size() + " products changed since " + sinceStamp, MODULE);
+
+            List<String> deletedProductIds = new ArrayList<>();
+            List<Map<String, Object>> solrDocs = new ArrayList<>();
+            int numIndexed = 0;
+            for (String productId : productIds) {
+                GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne();
+                Timestamp discontinuationDate = product != null ? product.getTimestamp("salesDiscontinuationDate") : null;
+                if (product == null || (discontinuationDate != null && !discontinuationDate.after(importStartStamp))) {
+                    deletedProductIds.add(productId);
+                    continue;
+                }
+                solrDocs.add(ProductUtil.getProductContent(product, dctx, context));
+                if (solrDocs.size() >= DELTA_BATCH_SIZE) {
+                    Map<String, Object> runResult = addDeltaDocuments(dispatcher, solrDocs, userLogin, locale, solrIndexName,
+                            treatConnectErrorNonFatal);
+                    if (runResult != null) {
+                        return runResult;
+                    }
+                    numIndexed += solrDocs.size();
+                    solrDocs.clear();
+                }
+            }
+            if (!solrDocs.isEmpty()) {
+                Map<String, Object> runResult = addDeltaDocuments(dispatcher, solrDocs, userLogin, locale, solrIndexName,
+                        treatConnectErrorNonFatal);
+                if (runResult != null) {
+                    return runResult;
+                }
+                numIndexed += solrDocs.size();
+            }
+
+            if (!deletedProductIds.isEmpty()) {
+                SolrUtil.getInstance();
+                client = SolrUtil.getHttpSolrClient(solrIndexName);
+                long updateNanos = System.nanoTime();
+                client.deleteById(deletedProductIds);
+                SolrStatistics.recordTime("update.delete", updateNanos);
+                updateNanos = System.nanoTime();
+                client.commit();
+                SolrStatistics.recordTime("update.commit", updateNanos);
+                SolrQueryCache.indexChanged(solrIndexName);
+            }
+
+            storeIndexStatus(delegator, solrIndexName, importStartStamp, numIndexed, deletedProductIds.size());
+            final String statusMsg = UtilProperties.getMessage(RESOURCE, "SolrDeltaImportedDocuments",
+                    UtilMisc.toMap("numIndexed", numIndexed, "numDeleted", deletedProductIds.size()), locale);
+            Debug.logInfo("Solr: " + statusMsg, MODULE);
+            result = ServiceUtil.returnSuccess(statusMsg);
+            result.put("numIndexed", numIndexed);
+            result.put("numDeleted", deletedProductIds.size());
+        } catch (GenericEntityException | GenericServiceException | IOException e) {
+            Debug.logError(e, e.getMessage(), MODULE);
+            result = ServiceUtil.returnError(e.toString());
+        } catch (SolrServerException e) {
+            if (e.getCause() != null && e.getCause() instanceof ConnectException) {
+                final String statusStr = UtilProperties.getMessage(RESOURCE, "SolrFailureConnectingToSolrServerToDeltaImport", locale);
+                if (Boolean.TRUE.equals(treatConnectErrorNonFatal)) {
+                    Debug.logWarning(e, "Solr: " + statusStr, MODULE);
+                    result = ServiceUtil.returnFailure(statusStr);
+                } else {
+                    Debug.logError(e, "Solr: " + statusStr, MODULE);
+                    result = ServiceUtil.returnError(statusStr);
+                }
+            } else {
+                Debug.logError(e, e.getMessage(), MODULE);
+                result = ServiceUtil.returnError(e.toString());
+            }
+        } finally {
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // do nothing
+                }
+            }
+        }
+        SolrStatistics.recordOperation("deltaImportSolrIndex", startNanos, result);
         return result;
     }
+
+    /**
+     * Sends a batch of delta import documents to solr, returns the service result to abort with or null on success.
+     */
+    private static Map<String, Object> addDeltaDocuments(LocalDispatcher dispatcher, List<Map<String, Object>> solrDocs,
+            GenericValue userLogin, Locale locale, String solrIndexName, Boolean treatConnectErrorNonFatal) throws GenericServiceException {
+        Map<String, Object> runResult = dispatcher.runSync("addListToSolrIndex",
+                UtilMisc.toMap("fieldList", new ArrayList<>(solrDocs), "userLogin", userLogin, "locale", locale, "indexName",
+                solrIndexName, "treatConnectErrorNonFatal", treatConnectErrorNonFatal));
+        if (ServiceUtil.isError(runResult)) {
+            return ServiceUtil.returnError(ServiceUtil.getErrorMessage(runResult));
+        } else if (ServiceUtil.isFailure(runResult)) {
+            return ServiceUtil.returnFailure(ServiceUtil.getErrorMessage(runResult));
+        }
+        return null;
+    }
+
+    private static Set<String> getChangedProductIds(Delegator delegator, String entityName, String stampField, Timestamp sinceStamp,
+            Timestamp untilStamp) throws GenericEntityException {
+        List<EntityCondition> conditions = new ArrayList<>();
+        conditions.add(EntityCondition.makeCondition("productId", EntityOperator.NOT_EQUAL, null));
+        conditions.add(EntityCondition.makeCondition(stampField, EntityOperator.LESS_THAN_EQUAL_TO, untilStamp));
+        if (sinceStamp != null) {
+            conditions.add(EntityCondition.makeCondition(stampField, EntityOperator.GREATER_THAN, sinceStamp));
+        }
+        Set<String> productIds = new HashSet<>();
+        List<GenericValue> changedValues = EntityQuery.use(delegator).select("productId").from(entityName)
+                .where(conditions).distinct().queryList();
+        for (GenericValue changedValue : changedValues) {
+            productIds.add(changedValue.getString("productId"));
+        }
+        return productIds;
+    }
+
+    private static void storeIndexStatus(Delegator delegator, String solrIndexName, Timestamp importStartStamp, int numIndexed,
+            int numDeleted) throws GenericEntityException {
+        GenericValue indexStatus = delegator.makeValue("SolrIndexStatus", UtilMisc.toMap("indexName", solrIndexName));
+        indexStatus.set("lastDeltaImportStamp", importStartStamp);
+        indexStatus.set("lastIndexedCount", (long) numIndexed);
+        indexStatus.set("lastDeletedCount", (long) numDeleted);
+        delegator.createOrStore(indexStatus);
+    }
 }
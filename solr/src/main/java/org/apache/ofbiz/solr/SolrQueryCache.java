@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.solr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+
+/**
+ * OFBiz side cache of solr search service results.
+ * <p>
+ * Entries are keyed by the query type, the index name, the current index generation and the
+ * normalized query parameters. The generation of an index is incremented whenever a new searcher
+ * is opened on it (see {@link SolrQueryCacheListener}) or a commit is sent from OFBiz, so results
+ * computed against an older index version are never returned.
+ * <p>
+ * Results are deep copied when put and when returned, so that callers may modify the documents and maps they get.
+ */
+public final class SolrQueryCache {
+
+    private static final String MODULE = SolrQueryCache.class.getName();
+    private static final String SOLR_CONFIG_NAME = "solrconfig.properties";
+
+    private static final boolean ENABLED = UtilProperties.getPropertyAsBoolean(SOLR_CONFIG_NAME, "solr.query.cache.enabled", true);
+    private static final UtilCache<String, Map<String, Object>> RESULT_CACHE = UtilCache.createUtilCache("solr.QueryResult",
+            UtilProperties.getPropertyAsInteger(SOLR_CONFIG_NAME, "solr.query.cache.maxSize", 1000),
+            UtilProperties.getPropertyAsLong(SOLR_CONFIG_NAME, "solr.query.cache.expireTime", 0));
+
+    private static final Map<String, AtomicLong> INDEX_GENERATIONS = new ConcurrentHashMap<>();
+    private static final Map<String, QueryTypeStatistics> STATISTICS = new ConcurrentHashMap<>();
+
+    private SolrQueryCache() { }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the current generation of an index, to be read when the lookup of a query starts and passed to
+     * {@link #makeKey} and {@link #put}.
+     */
+    public static long getIndexGeneration(String indexName) {
+        AtomicLong generation = indexName != null ? INDEX_GENERATIONS.get(indexName) : null;
+        return generation != null ? generation.get() : 0;
+    }
+
+    /**
+     * Builds the cache key of a query from the given context parameters; empty parameters are ignored.
+     */
+    public static String makeKey(String queryType, String indexName, long generation, Map<String, ? extends Object> context,
+            String... paramNames) {
+        Map<String, String> params = new TreeMap<>();
+        for (String paramName : paramNames) {
+            Object value = context.get(paramName);
+            if (value instanceof String) {
+                value = ((String) value).trim();
+            }
+            if (UtilValidate.isNotEmpty(value)) {
+                params.put(paramName, value.toString());
+            }
+        }
+        return queryType + "::" + indexName + "::" + generation + "::" + params;
+    }
+
+    /**
+     * Returns a copy of the cached result of a query, or null if it is not cached.
+     */
+    public static Map<String, Object> get(String queryType, String key) {
+        Map<String, Object> result = RESULT_CACHE.get(key);
+        QueryTypeStatistics statistics = STATISTICS.computeIfAbsent(queryType, k -> new QueryTypeStatistics());
+        if (result == null) {
+            statistics.misses.increment();
+            return null;
+        }
+        statistics.hits.increment();
+        return copyResult(result);
+    }
+
+    /**
+     * Caches the result of a query, unless the index changed since the lookup started: the result of a query
+     * started before {@link #indexChanged(String)} may be computed against the former version of the index.
+     * @param generation the generation of the index read when the lookup started
+     */
+    public static void put(String key, String indexName, long generation, Map<String, Object> result) {
+        if (generation != getIndexGeneration(indexName)) {
+            return;
+        }
+        RESULT_CACHE.put(key, copyResult(result));
+        if (generation != getIndexGeneration(indexName)) {
+            // the index changed while the result was put, after the stale results were dropped
+            RESULT_CACHE.remove(key);
+        }
+    }
+
+    /**
+     * Marks the index as changed; results cached for earlier versions of the index are dropped.
+     */
+    public static void indexChanged(String indexName) {
+        if (indexName == null) {
+            return;
+        }
+        INDEX_GENERATIONS.computeIfAbsent(indexName, k -> new AtomicLong()).incrementAndGet();
+        String indexKeyPart = "::" + indexName + "::";
+        List<String> staleKeys = new ArrayList<>();
+        for (String key : RESULT_CACHE.getCacheLineKeys()) {
+            if (key.contains(indexKeyPart)) {
+                staleKeys.add(key);
+            }
+        }
+        for (String key : staleKeys) {
+            RESULT_CACHE.remove(key);
+        }
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Solr: Dropped " + staleKeys.size() + " cached results of index " + indexName, MODULE);
+        }
+    }
+
+    public static void clear() {
+        RESULT_CACHE.clear();
+    }
+
+    /**
+     * Returns hits, misses and hit ratio per query type, along with the overall cache size.
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        Map<String, Map<String, Object>> queryTypes = new HashMap<>();
+        for (Map.Entry<String, QueryTypeStatistics> entry : STATISTICS.entrySet()) {
+            long hits = entry.getValue().hits.sum();
+            long misses = entry.getValue().misses.sum();
+            Map<String, Object> typeStatistics = new HashMap<>();
+            typeStatistics.put("hits", hits);
+            typeStatistics.put("misses", misses);
+            typeStatistics.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+            queryTypes.put(entry.getKey(), typeStatistics);
+        }
+        statistics.put("enabled", ENABLED);
+        statistics.put("size", RESULT_CACHE.size());
+        statistics.put("maxSize", RESULT_CACHE.getSizeLimit());
+        statistics.put("queryTypes", queryTypes);
+        return statistics;
+    }
+
+    /**
+     * Flushes the query result cache, for all indexes or only for the given one.
+     */
+    public static Map<String, Object> flushSolrQueryCache(DispatchContext dctx, Map<String, Object> context) {
+        String indexName = (String) context.get("indexName");
+        Map<String, Object> statistics = getStatistics();
+        if (UtilValidate.isNotEmpty(indexName)) {
+            indexChanged(indexName);
+        } else {
+            clear();
+        }
+        if (Boolean.TRUE.equals(context.get("resetStatistics"))) {
+            STATISTICS.clear();
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", statistics);
+        return result;
+    }
+
+    public static Map<String, Object> getSolrQueryCacheStatistics(DispatchContext dctx, Map<String, Object> context) {
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", getStatistics());
+        return result;
+    }
+
+    private static Map<String, Object> copyResult(Map<String, Object> result) {
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<String, Object> entry : result.entrySet()) {
+            copy.put(entry.getKey(), copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof SolrDocumentList) {
+            SolrDocumentList documents = (SolrDocumentList) value;
+            SolrDocumentList copy = new SolrDocumentList();
+            copy.setNumFound(documents.getNumFound());
+            copy.setStart(documents.getStart());
+            copy.setMaxScore(documents.getMaxScore());
+            for (SolrDocument document : documents) {
+                copy.add(copyDocument(document));
+            }
+            return copy;
+        } else if (value instanceof SolrDocument) {
+            return copyDocument((SolrDocument) value);
+        } else if (value instanceof Map<?, ?>) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof Collection<?>) {
+            List<Object> copy = new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static SolrDocument copyDocument(SolrDocument document) {
+        SolrDocument copy = new SolrDocument();
+        for (Map.Entry<String, Object> field : document) {
+            copy.setField(field.getKey(), copyValue(field.getValue()));
+        }
+        if (document.hasChildDocuments()) {
+            for (SolrDocument child : document.getChildDocuments()) {
+                copy.addChildDocument(copyDocument(child));
+            }
+        }
+        return copy;
+    }
+
+    private static final class QueryTypeStatistics {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.solr;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.solr.client.solrj.SolrQuery;
+
+/**
+ * Counters and latency histograms of the solr indexing and query operations.
+ * <p>
+ * Timers are named after the measured operation: <code>operation.&lt;service&gt;</code> for the solr services,
+ * <code>document.generate[.&lt;step&gt;]</code> for the document generation and its enrichment steps,
+ * <code>update.add</code>, <code>update.delete</code>, <code>update.commit</code> for update requests and
+ * <code>query.&lt;request handler&gt;</code> for queries. Errors are counted per operation.
+ * The statistics are exposed by the getSolrStatistics service and as the
+ * <code>org.apache.ofbiz.solr:type=SolrStatistics</code> JMX MXBean.
+ */
+public final class SolrStatistics implements SolrStatisticsMXBean {
+
+    private static final String MODULE = SolrStatistics.class.getName();
+    /** Upper bounds, in milliseconds, of the latency histogram buckets; a last bucket counts slower calls. */
+    private static final long[] BUCKET_BOUNDS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private static final String DEFAULT_REQUEST_HANDLER = "/select";
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> ERRORS = new ConcurrentHashMap<>();
+    private static final SolrStatistics INSTANCE = new SolrStatistics();
+
+    static {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("org.apache.ofbiz.solr:type=SolrStatistics");
+            if (!mbs.isRegistered(objectName)) {
+                mbs.registerMBean(INSTANCE, objectName);
+            }
+        } catch (JMException e) {
+            Debug.logWarning(e, "Solr: Could not register the solr statistics MBean", MODULE);
+        }
+    }
+
+    private SolrStatistics() { }
+
+    /**
+     * Records the duration of an operation started at the given {@link System#nanoTime()}.
+     */
+    public static void recordTime(String name, long startNanos) {
+        TIMERS.computeIfAbsent(name, k -> new Timer()).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the duration of a query under the name of its request handler.
+     */
+    public static void recordQueryTime(SolrQuery solrQuery, long startNanos) {
+        String requestHandler = solrQuery.getRequestHandler();
+        recordTime("query." + (requestHandler != null ? requestHandler : DEFAULT_REQUEST_HANDLER), startNanos);
+    }
+
+    /**
+     * Records the duration of a solr service and counts it as error when it returned an error or a failure.
+     */
+    public static void recordOperation(String operation, long startNanos, Map<String, Object> result) {
+        recordTime("operation." + operation, startNanos);
+        if (ServiceUtil.isError(result) || ServiceUtil.isFailure(result)) {
+            recordError(operation);
+        }
+    }
+
+    public static void recordError(String operation) {
+        ERRORS.computeIfAbsent(operation, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns the count, total, mean and max latency and the latency histogram of each timer, and the error counts.
+     */
+    public static Map<String, Object> getStatistics() {
+        Map<String, Object> timers = new TreeMap<>();
+        for (Map.Entry<String, Timer> entry : TIMERS.entrySet()) {
+            timers.put(entry.getKey(), entry.getValue().toMap());
+        }
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("timers", timers);
+        statistics.put("errors", INSTANCE.getErrorCounts());
+        return statistics;
+    }
+
+    public static void reset() {
+        TIMERS.clear();
+        ERRORS.clear();
+    }
+
+    /**
+     * Returns the solr indexing and query statistics, along with the query result cache statistics.
+     */
+    public static Map<String, Object> getSolrStatistics(DispatchContext dctx, Map<String, Object> context) {
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("statistics", getStatistics());
+        result.put("queryCacheStatistics", SolrQueryCache.getStatistics());
+        if (Boolean.TRUE.equals(context.get("reset"))) {
+            reset();
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> counts.put(name, timer.count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanMillis() {
+        Map<String, Double> means = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> means.put(name, timer.getMeanMillis()));
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getMaxMillis() {
+        Map<String, Long> maxima = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> maxima.put(name, TimeUnit.NANOSECONDS.toMillis(timer.maxNanos.get())));
+        return maxima;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getHistograms() {
+        Map<String, Map<String, Long>> histograms = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> histograms.put(name, timer.getHistogram()));
+        return histograms;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> errors = new TreeMap<>();
+        ERRORS.forEach((operation, count) -> errors.put(operation, count.sum()));
+        return errors;
+    }
+
+    @Override
+    public void resetStatistics() {
+        reset();
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+
+        private Timer() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        private double getMeanMillis() {
+            long n = count.sum();
+            return n > 0 ? totalNanos.sum() / (n * 1000000.0) : 0.0;
+        }
+
+        private Map<String, Long> getHistogram() {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                histogram.put("le" + BUCKET_BOUNDS[i], buckets[i].sum());
+            }
+            histogram.put("gt" + BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1], buckets[BUCKET_BOUNDS.length].sum());
+            return histogram;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> timer = new LinkedHashMap<>();
+            timer.put("count", count.sum());
+            timer.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()));
+            timer.put("meanMillis", getMeanMillis());
+            timer.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            timer.put("histogram", getHistogram());
+            return timer;
+        }
+    }
+}
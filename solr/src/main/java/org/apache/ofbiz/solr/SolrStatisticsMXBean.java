@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.solr;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link SolrStatistics}, keyed by timer or operation name.
+ */
+public interface SolrStatisticsMXBean {
+
+    Map<String, Long> getCounts();
+
+    Map<String, Double> getMeanMillis();
+
+    Map<String, Long> getMaxMillis();
+
+    /**
+     * Returns the latency histogram of each timer: the count of calls per bucket, <code>le&lt;n&gt;</code> for the
+     * calls of at most n milliseconds, and <code>gt&lt;n&gt;</code> for the slower ones.
+     */
+    Map<String, Map<String, Long>> getHistograms();
+
+    Map<String, Long> getErrorCounts();
+
+    void resetStatistics();
+}
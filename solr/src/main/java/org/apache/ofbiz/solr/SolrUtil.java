@@ -19,11 +19,14 @@
 package org.apache.ofbiz.solr;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.config.RequestConfig;
@@ -34,9 +37,13 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest.METHOD;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.ofbiz.base.component.ComponentConfig;
 import org.apache.ofbiz.base.component.ComponentConfig.WebappInfo;
 import org.apache.ofbiz.base.component.ComponentException;
@@ -57,6 +64,8 @@ public final class SolrUtil {
     private static final String[] SOLR_PRODUCT_ATTRIBUTE = {"productId", "internalName", "manu", "size", "smallImage", "mediumImage", "largeImage",
             "listPrice", "defaultPrice", "inStock", "isVirtual" };
 
+    private static final String SOLR_UNIQUE_KEY = "productId";
+
     private static final String SOLR_CONFIG_NAME = "solrconfig.properties";
     private static final String SOLR_URL = makeSolrWebappUrl();
 
@@ -281,15 +290,120 @@ public final class SolrUtil {
             if (Debug.verboseOn()) {
                 Debug.logVerbose("solr: solrQuery: " + solrQuery, MODULE);
             }
+            long queryNanos = System.nanoTime();
             returnMap = client.query(solrQuery, METHOD.POST);
+            SolrStatistics.recordQueryTime(solrQuery, queryNanos);
             result.put("rows", returnMap);
             result.put("numFound", returnMap.getResults().getNumFound());
         } catch (Exception e) {
+            SolrStatistics.recordError("categoriesAvailable");
             Debug.logError(e.getMessage(), MODULE);
         }
         return result;
     }
 
+    /**
+     * Adds the uniqueKey of the product index as last sort clause, as required by cursor based paging.
+     * Without a sort, the results are sorted by relevance first, as they are without cursor.
+     */
+    public static void addCursorSort(SolrQuery solrQuery) {
+        if (solrQuery.getSorts().isEmpty()) {
+            solrQuery.addSort("score", SolrQuery.ORDER.desc);
+        }
+        for (SolrQuery.SortClause sortClause : solrQuery.getSorts()) {
+            if (SOLR_UNIQUE_KEY.equals(sortClause.getItem())) {
+                return;
+            }
+        }
+        solrQuery.addSort(SOLR_UNIQUE_KEY, SolrQuery.ORDER.asc);
+    }
+
+    /**
+     * Turns a solr cursorMark into the opaque, URL safe cursor token handed out by the search services.
+     */
+    public static String encodeCursor(String cursorMark) {
+        if (cursorMark == null || CursorMarkParams.CURSOR_MARK_START.equals(cursorMark)) {
+            return cursorMark;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursorMark.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Turns a cursor token back into a solr cursorMark; "*" denotes the first page.
+     * @throws IllegalArgumentException if the token is not a cursor handed out by the search services
+     */
+    public static String decodeCursor(String cursor) {
+        if (cursor == null || CursorMarkParams.CURSOR_MARK_START.equals(cursor)) {
+            return cursor;
+        }
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Walks the whole result of a query with a solr cursor, streaming each page so that memory use does not
+     * depend on the result size, and passes each document to the consumer.
+     * @return the number of documents passed to the consumer
+     */
+    public static long exportDocuments(String solrIndexName, SolrQuery query, int batchSize, Consumer<SolrDocument> consumer)
+            throws IOException, SolrServerException {
+        SolrQuery solrQuery = query.getCopy();
+        solrQuery.setStart(null);
+        solrQuery.setRows(batchSize);
+        addCursorSort(solrQuery);
+
+        long numExported = 0;
+        HttpSolrClient client = null;
+        try {
+            client = getHttpSolrClient(solrIndexName);
+            String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+            ExportCallback callback = new ExportCallback(consumer);
+            while (true) {
+                solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                long queryNanos = System.nanoTime();
+                QueryResponse rsp = client.queryAndStreamResponse(solrQuery, callback);
+                SolrStatistics.recordQueryTime(solrQuery, queryNanos);
+                String nextCursorMark = rsp.getNextCursorMark();
+                if (nextCursorMark == null || cursorMark.equals(nextCursorMark)) {
+                    break;
+                }
+                cursorMark = nextCursorMark;
+            }
+            numExported = callback.getCount();
+        } finally {
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // do nothing
+                }
+            }
+        }
+        return numExported;
+    }
+
+    private static final class ExportCallback extends StreamingResponseCallback {
+        private final Consumer<SolrDocument> consumer;
+        private long count = 0;
+
+        private ExportCallback(Consumer<SolrDocument> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void streamSolrDocument(SolrDocument doc) {
+            consumer.accept(doc);
+            count++;
+        }
+
+        @Override
+        public void streamDocListInfo(long numFound, long start, Float maxScore) {
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+
     public static SolrUtil getInstance() {
         return new SolrUtil();
     }